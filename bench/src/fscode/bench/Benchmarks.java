@@ -0,0 +1,56 @@
+package fscode.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks at 1, 2, 4 and so on threads up to the number of
+ * cores, with the GC profiler on so that every result comes with its
+ * allocation rate.  Run it from the project directory, since that is where
+ * the sample document is.
+ *
+ * <pre>Benchmarks [regexp [threads]]</pre>
+ *
+ * Only benchmarks matching <code>regexp</code> are run, and
+ * <code>threads</code> changes the most threads to run them at.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+public class Benchmarks {
+
+	public static void main(String[] args) throws RunnerException {
+		String include = args.length>0 ? args[0] : ".*";
+		int max = args.length>1&&Integer.parseInt(args[1])>0
+				? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		for(int threads:threadCounts(max)) {
+			Options opts = new OptionsBuilder()
+					.include(include)
+					.threads(threads)
+					.forks(1)
+					.warmupIterations(5)
+					.measurementIterations(5)
+					.addProfiler(GCProfiler.class)
+					.build();
+			new Runner(opts).run();
+		}
+	}
+
+	/**
+	 * 1, 2, 4 and so on, ending with <code>max</code>.
+	 */
+	private static List<Integer> threadCounts(int max) {
+		List<Integer> counts = new ArrayList<Integer>();
+		for(int t=1;t<max;t*=2)
+			counts.add(t);
+		counts.add(max);
+		return counts;
+	}
+
+}
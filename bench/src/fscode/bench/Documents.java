@@ -0,0 +1,122 @@
+package fscode.bench;
+
+import fscode.CorpusGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * The documents the benchmarks run on: the sample document, a much larger one
+ * made by repeating its body, made-up ones of any size, and ones built for a
+ * particular tag.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+public final class Documents {
+
+	/**
+	 * The sample document, relative to the project directory.
+	 */
+	public static final String SAMPLE_FILE = "fscode_test_text.fscode.xml";
+
+	/**
+	 * How many copies of the sample's body are in the large document.
+	 */
+	public static final int LARGE_COPIES = 64;
+
+	private Documents() {
+	}
+
+	/**
+	 * The sample document.
+	 *
+	 * @since 0.2
+	 */
+	public static String sample() throws IOException {
+		return new String(Files.readAllBytes(new File(SAMPLE_FILE).toPath()),
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The sample's body over and over, about half a megabyte of it.
+	 *
+	 * @since 0.2
+	 */
+	public static String large() throws IOException {
+		String sample = sample();
+		String body = sample.substring(sample.indexOf("<fscode>")+8,
+				sample.lastIndexOf("</fscode>"));
+		StringBuilder code = new StringBuilder("<fscode>");
+		for(int i=0;i!=LARGE_COPIES;++i)
+			code.append(body);
+		return code.append("</fscode>").toString();
+	}
+
+	/**
+	 * A made-up document of about <code>size</code> characters, the same
+	 * every time.
+	 *
+	 * @see CorpusGenerator
+	 * @since 0.2
+	 */
+	public static String generated(long size) {
+		CorpusGenerator gen = new CorpusGenerator(1);
+		gen.setSize(size);
+		return gen.generate();
+	}
+
+	/**
+	 * A document by name, as used for benchmark parameters.
+	 *
+	 * @param name <code>sample</code>, <code>large</code>, or
+	 *		<code>generated-</code> followed by a size in kilobytes ending in
+	 *		<code>k</code> or megabytes ending in <code>m</code>.
+	 * @since 0.2
+	 */
+	public static String named(String name) throws IOException {
+		if(name.equals("sample"))
+			return sample();
+		if(name.equals("large"))
+			return large();
+		if(name.startsWith("generated-")&&name.length()>11) {
+			String size = name.substring(10, name.length()-1);
+			if(name.endsWith("k"))
+				return generated(Long.parseLong(size)*1024);
+			if(name.endsWith("m"))
+				return generated(Long.parseLong(size)*1024*1024);
+		}
+		throw new IllegalArgumentException("no document named " + name);
+	}
+
+	/**
+	 * A table of contents followed by nothing but headings three levels
+	 * deep, with a line of text under each.
+	 *
+	 * @since 0.2
+	 */
+	public static String headings(int count) {
+		StringBuilder code = new StringBuilder("<fscode><macro:toc/>");
+		for(int i=0;i!=count;++i)
+			code.append("<h level=\"").append(i%3+1).append("\">Section ")
+					.append(i).append("</h>Text under section ").append(i)
+					.append(".\n");
+		return code.append("</fscode>").toString();
+	}
+
+	/**
+	 * One long run of text full of characters which have to be escaped.
+	 *
+	 * @since 0.2
+	 */
+	public static String text(int length) {
+		String line = "Fish &amp; chips &lt; 5 \"quid\" & it's a 'deal' > "
+				+ "nothing.\n";
+		StringBuilder code = new StringBuilder("<fscode><![CDATA[");
+		while(code.length()<length)
+			code.append(line);
+		return code.append("]]></fscode>").toString();
+	}
+
+}
@@ -0,0 +1,153 @@
+package fscode.bench;
+
+import fscode.FSCode;
+import fscode.macro.TOCMacro;
+import fscode.tags.Text;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xml.sax.SAXException;
+
+/**
+ * Writing HTML out of parsed documents.  Each thread has its own documents,
+ * since emitting keeps fragments in the tree, and writes into the same buffer
+ * every time so that only the emitters' own garbage shows up in the
+ * allocation rate.
+ *
+ * <code>emit</code> renders the same document over and over, so after the
+ * first time its static subtrees come from their kept fragments.
+ * <code>emitFirst</code> parses a new document before every call to measure
+ * the first emit, so it only runs on documents which take long enough to
+ * emit that JMH's work around each call doesn't show up.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EmitBenchmark {
+
+	private final StringBuilder out = new StringBuilder(1<<20);
+
+	/**
+	 * A whole document.
+	 */
+	@State(Scope.Thread)
+	public static class Whole {
+
+		@Param({"sample", "large", "generated-5m"})
+		public String document;
+
+		FSCode doc;
+
+		@Setup
+		public void setup() throws IOException, SAXException {
+			doc = FSCode.parseStream(Documents.named(document), null);
+		}
+
+	}
+
+	/**
+	 * A whole document which has never been emitted, parsed again before
+	 * every call.  Parsing it is not timed.  Only the big documents are used,
+	 * since emitting them takes milliseconds; setting up every call of a
+	 * smaller one would cost about as much as the call itself.
+	 */
+	@State(Scope.Thread)
+	public static class Fresh {
+
+		@Param({"large", "generated-5m"})
+		public String document;
+
+		String code;
+
+		FSCode doc;
+
+		@Setup
+		public void setup() throws IOException {
+			code = Documents.named(document);
+		}
+
+		@Setup(Level.Invocation)
+		public void parse() throws SAXException {
+			doc = FSCode.parseStream(code, null);
+		}
+
+	}
+
+	/**
+	 * One long run of text.
+	 */
+	@State(Scope.Thread)
+	public static class LongText {
+
+		@Param({"65536"})
+		public int length;
+
+		Text text;
+
+		@Setup
+		public void setup() throws SAXException {
+			text = (Text)FSCode.parseStream(Documents.text(length), null)
+					.getChildren().get(0);
+		}
+
+	}
+
+	/**
+	 * A table of contents over many headings.
+	 */
+	@State(Scope.Thread)
+	public static class Contents {
+
+		@Param({"100", "1000"})
+		public int headings;
+
+		TOCMacro toc;
+
+		@Setup
+		public void setup() throws SAXException {
+			toc = FSCode.parseStream(Documents.headings(headings), null)
+					.getIndex().getAll(TOCMacro.class).get(0);
+		}
+
+	}
+
+	@Benchmark
+	public int emit(Whole w) throws IOException {
+		out.setLength(0);
+		w.doc.emitHtml(out);
+		return out.length();
+	}
+
+	@Benchmark
+	public int emitFirst(Fresh f) throws IOException {
+		out.setLength(0);
+		f.doc.emitHtml(out);
+		return out.length();
+	}
+
+	@Benchmark
+	public int emitText(LongText t) throws IOException {
+		out.setLength(0);
+		t.text.emitHtml(out);
+		return out.length();
+	}
+
+	@Benchmark
+	public int emitToc(Contents c) throws IOException {
+		out.setLength(0);
+		c.toc.emitHtml(out);
+		return out.length();
+	}
+
+}
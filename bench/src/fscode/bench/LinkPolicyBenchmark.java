@@ -0,0 +1,82 @@
+package fscode.bench;
+
+import fscode.LinkPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Checking links against large sets of forbidden link rules, one policy
+ * shared by every thread as an engine would.  The rules are a mix of
+ * prefixes, substrings and general regular expressions, as a spam list
+ * collects over the years.
+ *
+ * <code>popular</code> checks the same few URLs over and over, which the
+ * policy remembers; <code>distinct</code> never checks a URL twice.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LinkPolicyBenchmark {
+
+	@Param({"10", "1000", "10000"})
+	public int rules;
+
+	private LinkPolicy policy;
+
+	private String[] popular;
+
+	/**
+	 * Which URL each thread checks next.
+	 */
+	@State(Scope.Thread)
+	public static class Counter {
+
+		long next;
+
+	}
+
+	@Setup
+	public void setup() {
+		List<String> list = new ArrayList<String>(rules);
+		for(int i=0;i!=rules;++i)
+			switch(i%3) {
+				case 0:
+					list.add("http://spam" + i + "\\.example/.*");
+					break;
+				case 1:
+					list.add(".*casino" + i + ".*");
+					break;
+				default:
+					list.add("https?://([a-z]+\\.)*ads" + i + "\\.net(/.*)?");
+			}
+		policy = LinkPolicy.compile(list);
+		popular = new String[64];
+		for(int i=0;i!=popular.length;++i)
+			popular[i] = i%8==0 ? "http://spam0.example/p" + i
+					: "http://www.example.org/wiki/Page_" + i;
+	}
+
+	@Benchmark
+	public boolean popular(Counter c) {
+		return policy.isForbidden(popular[(int)(c.next++&(popular.length-1))]);
+	}
+
+	@Benchmark
+	public boolean distinct(Counter c) {
+		return policy.isForbidden("http://www.example.org/post?id="
+				+ Thread.currentThread().getId() + "-" + c.next++);
+	}
+
+}
@@ -0,0 +1,81 @@
+package fscode.bench;
+
+import fscode.AmpersandEscapingReader;
+import fscode.BinaryDocument;
+import fscode.Dialect;
+import fscode.FSCode;
+import fscode.RenderOptions;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xml.sax.SAXException;
+
+/**
+ * Getting from source to a parsed document: escaping stray ampersands,
+ * parsing through the DOM in the <code>FSCode</code> constructors or through
+ * the streaming parser, and building the emitter tree alone from an already
+ * compiled binary document, which is mostly <code>Emitter.parse</code>
+ * looking up each tag in the dialect.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ParseBenchmark {
+
+	@Param({"sample", "large", "generated-5m"})
+	public String document;
+
+	private String code;
+
+	private char[] buffer;
+
+	private ByteBuffer binary;
+
+	@Setup
+	public void setup() throws IOException, SAXException {
+		code = Documents.named(document);
+		buffer = new char[8192];
+		binary = ByteBuffer.wrap(BinaryDocument.compile(code));
+	}
+
+	@Benchmark
+	public long escape() throws IOException {
+		Reader in = new AmpersandEscapingReader(new StringReader(code));
+		long read = 0;
+		int n;
+		while((n = in.read(buffer))>0)
+			read += n;
+		return read;
+	}
+
+	@Benchmark
+	public FSCode domParse() throws SAXException {
+		return new FSCode(code);
+	}
+
+	@Benchmark
+	public FSCode streamParse() throws SAXException {
+		return FSCode.parseStream(new StringReader(code), RenderOptions.DEFAULT,
+				Dialect.DEFAULT);
+	}
+
+	@Benchmark
+	public FSCode dispatch() throws IOException {
+		return BinaryDocument.load(binary, RenderOptions.DEFAULT,
+				Dialect.DEFAULT);
+	}
+
+}
@@ -0,0 +1,189 @@
+package fscode;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Turns bare <code>&amp;</code>s into <code>&amp;amp;</code> as the text is
+ * read, so that FSCode can be handed to an XML parser without first copying
+ * the whole document into a string to escape it.  Ampersands which already
+ * start a character reference (<code>&amp;#38;</code>,
+ * <code>&amp;#x26;</code>) or one of the entities XML knows about
+ * (<code>&amp;lt;</code>, <code>&amp;gt;</code>, <code>&amp;amp;</code>,
+ * <code>&amp;quot;</code>, <code>&amp;apos;</code>) are left alone.  Anything
+ * else, including HTML entities such as <code>&amp;nbsp;</code> which an XML
+ * parser would reject, is escaped and comes out as literal text.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+public class AmpersandEscapingReader extends FilterReader {
+
+	/**
+	 * What gets written after an ampersand.
+	 */
+	private static final char[] ESCAPE = {'a', 'm', 'p', ';'};
+
+	/**
+	 * Entities which can be left alone, without the ampersand.
+	 */
+	private static final String[] ENTITIES = {"lt;", "gt;", "amp;", "quot;",
+			"apos;"};
+
+	/**
+	 * The most characters after an ampersand that have to be looked at to
+	 * decide whether it starts a reference: <code>#x10FFFF;</code>, with room
+	 * for leading zeroes.
+	 */
+	private static final int LOOKAHEAD = 16;
+
+	/**
+	 * Characters read from the underlying reader but not handed out yet.
+	 */
+	private final char[] buf = new char[8192];
+
+	private int pos = 0;
+
+	private int limit = 0;
+
+	/**
+	 * How much of <code>ESCAPE</code> still has to be handed out.
+	 */
+	private int escaped = ESCAPE.length;
+
+	public AmpersandEscapingReader(Reader in) {
+		super(in);
+	}
+
+	@Override
+	public int read() throws IOException {
+		char[] one = new char[1];
+		return read(one, 0, 1)==-1 ? -1 : one[0];
+	}
+
+	@Override
+	public int read(char[] cbuf, int off, int len) throws IOException {
+		if(len==0)
+			return 0;
+		int n = 0;
+		char c;
+		while(n<len) {
+			if(escaped<ESCAPE.length) {
+				cbuf[off+n++] = ESCAPE[escaped++];
+				continue;
+			}
+			if(pos==limit) {
+				// only block on the underlying reader if we have nothing yet
+				if(n>0&&!in.ready())
+					break;
+				if(!fill(1))
+					break;
+			}
+			c = buf[pos++];
+			cbuf[off+n++] = c;
+			if(c=='&') {
+				fill(LOOKAHEAD);
+				if(!isReference())
+					escaped = 0;
+			}
+		}
+		return n==0 ? -1 : n;
+	}
+
+	/**
+	 * Tries to have at least <code>need</code> characters buffered, moving
+	 * what is left to the front of the buffer first.  Returns whether there
+	 * is anything buffered at all.
+	 */
+	private boolean fill(int need) throws IOException {
+		if(limit-pos>=need)
+			return true;
+		if(pos>0) {
+			System.arraycopy(buf, pos, buf, 0, limit-pos);
+			limit -= pos;
+			pos = 0;
+		}
+		int read;
+		while(limit<need&&(read = in.read(buf, limit, buf.length-limit))!=-1)
+			limit += read;
+		return limit>pos;
+	}
+
+	/**
+	 * Whether the buffered characters following an ampersand make it the
+	 * start of a character or entity reference.
+	 */
+	private boolean isReference() {
+		int end = Math.min(limit, pos+LOOKAHEAD);
+		if(pos<end&&buf[pos]=='#') {
+			int i = pos+1;
+			boolean hex = i<end&&buf[i]=='x';
+			if(hex)
+				i++;
+			int digits = i, value = 0, digit;
+			for(;i<end;++i) {
+				digit = buf[i]<128 ? Character.digit(buf[i], hex ? 16 : 10)
+						: -1;
+				if(digit<0)
+					break;
+				value = Math.min(value*(hex ? 16 : 10)+digit, 0x110000);
+			}
+			return i>digits&&i<end&&buf[i]==';'&&isXmlChar(value);
+		}
+		for(String entity:ENTITIES)
+			if(startsWith(entity, end))
+				return true;
+		return false;
+	}
+
+	private boolean startsWith(String s, int end) {
+		if(pos+s.length()>end)
+			return false;
+		for(int i=0;i!=s.length();++i)
+			if(buf[pos+i]!=s.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Whether a character reference to this code point would be accepted by
+	 * an XML parser.
+	 */
+	private static boolean isXmlChar(int c) {
+		return c==0x9||c==0xA||c==0xD||(c>=0x20&&c<=0xD7FF)
+				||(c>=0xE000&&c<=0xFFFD)||(c>=0x10000&&c<=0x10FFFF);
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		char[] skipped = new char[(int)Math.min(n, 8192)];
+		long total = 0;
+		int read;
+		while(total<n&&(read = read(skipped, 0,
+				(int)Math.min(n-total, skipped.length)))!=-1)
+			total += read;
+		return total;
+	}
+
+	@Override
+	public boolean ready() throws IOException {
+		return escaped<ESCAPE.length||pos<limit||in.ready();
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void mark(int readAheadLimit) throws IOException {
+		throw new IOException("mark() not supported");
+	}
+
+	@Override
+	public void reset() throws IOException {
+		throw new IOException("reset() not supported");
+	}
+
+}
@@ -0,0 +1,491 @@
+package fscode;
+
+import fscode.exception.MalformedMarkupException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.xml.sax.SAXException;
+
+/**
+ * A compact binary form of a document, so that archived content can be
+ * parsed once when it is saved and loaded later without running the XML
+ * parser at all.
+ *
+ * What is stored is the markup inside the <code>fscode</code> tag, exactly as
+ * the tags see it: tag names, attribute values with their entities resolved,
+ * and coalesced text.  Loading hands it to <code>Emitter.parse</code> as
+ * <code>Markup</code> read straight out of the buffer, which rebuilds the same
+ * tree and reports the same problems as parsing the source would, for
+ * whatever dialect and options the document is loaded with.
+ *
+ * The format, all numbers being unsigned varints unless said otherwise:
+ * <pre>
+ *   "FSCB"                     magic
+ *   u2 version, u2 flags       big-endian, flags are 0
+ *   count, then count strings  each a byte length and UTF-8 bytes
+ *   the root element
+ * </pre>
+ * where an element is the byte 1, its name, how many attributes it has, the
+ * name and value of each, a big-endian <code>u4</code> with the length in
+ * bytes of its children, and the children; and text is the byte 2 followed by
+ * the text.  Names, values and text are indexes into the strings.
+ *
+ * Buffers are only ever read with absolute gets, so one loaded buffer, such
+ * as a mapped file, can be shared by any number of threads.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+public final class BinaryDocument {
+
+	/**
+	 * The version written, and the only one that can be read.
+	 *
+	 * @since 0.2
+	 */
+	public static final int VERSION = 1;
+
+	private static final byte[] MAGIC = {'F', 'S', 'C', 'B'};
+
+	private static final byte ELEMENT = 1;
+
+	private static final byte TEXT = 2;
+
+	private BinaryDocument() {
+	}
+
+	/**
+	 * Parses a document and writes its binary form to <code>out</code>,
+	 * which is not closed.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed or has
+	 *		no <code>fscode</code> tag in it.
+	 * @throws java.io.IOException if <code>out</code> does
+	 * @since 0.2
+	 */
+	public static void compile(Reader in, OutputStream out)
+			throws SAXException, IOException {
+		Writer w = new Writer();
+		try {
+			XMLStreamReader reader = FSCode.openStream(in);
+			try {
+				Markup root = StreamMarkup.find(reader, "fscode");
+				if(root==null)
+					throw new SAXException(
+							"There is no fscode tag in the input");
+				w.element(root);
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException ex) {
+			throw new SAXException(ex);
+		} catch (MalformedMarkupException ex) {
+			throw new SAXException((Exception)ex.getCause());
+		}
+		w.writeTo(out);
+	}
+
+	/**
+	 * Parses a document into its binary form.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed or has
+	 *		no <code>fscode</code> tag in it.
+	 * @since 0.2
+	 */
+	public static byte[] compile(String code) throws SAXException {
+		Buffer out = new Buffer();
+		try {
+			compile(new StringReader(code), out);
+		} catch (IOException ex) {
+			// our own buffer doesn't throw IOExceptions
+			throw new IllegalStateException(ex);
+		}
+		return Arrays.copyOf(out.bytes, out.count);
+	}
+
+	/**
+	 * Builds a document from the binary form in <code>buf</code>, starting
+	 * at its position.  The buffer is read in place and kept by the
+	 * document's markup until the document is compacted.
+	 *
+	 * @throws java.io.IOException if the buffer does not hold a document in
+	 *		a version this can read, or is cut short.
+	 * @since 0.2
+	 */
+	public static FSCode load(ByteBuffer buf, RenderOptions options,
+			Dialect dialect) throws IOException {
+		int p = buf.position();
+		try {
+			for(int i=0;i!=MAGIC.length;++i)
+				if(buf.get(p+i)!=MAGIC[i])
+					throw new IOException("Not a binary FSCode document");
+			int version = (buf.get(p+4)&0xFF)<<8|buf.get(p+5)&0xFF;
+			if(version!=VERSION)
+				throw new IOException("Binary FSCode version " + version
+						+ " is not supported, only " + VERSION);
+			Cursor c = new Cursor(buf, p+8);
+			String[] strings = new String[c.count(1)];
+			byte[] bytes = new byte[64];
+			int length;
+			for(int i=0;i!=strings.length;++i) {
+				length = c.count(1);
+				if(length>bytes.length)
+					bytes = new byte[Math.max(length, bytes.length*2)];
+				for(int j=0;j!=length;++j)
+					bytes[j] = buf.get(c.pos++);
+				strings[i] = new String(bytes, 0, length,
+						StandardCharsets.UTF_8);
+			}
+			if(buf.get(c.pos++)!=ELEMENT)
+				throw new IOException("The root of the document is not a "
+						+ "tag");
+			FSCode code = FSCode.newRoot(options, dialect);
+			code.setMarkup(new BinaryMarkup(buf, strings, c));
+			code.parse();
+			return code;
+		} catch (IndexOutOfBoundsException ex) {
+			throw new IOException("Binary FSCode document is cut short", ex);
+		} catch (MalformedMarkupException ex) {
+			throw (IOException)ex.getCause();
+		}
+	}
+
+	/**
+	 * Builds a document from a file holding its binary form.  The file is
+	 * mapped into memory rather than read, so only the parts that are looked
+	 * at are ever paged in.
+	 *
+	 * @throws java.io.IOException if the file can't be read or does not hold
+	 *		a document in a version this can read.
+	 * @since 0.2
+	 */
+	public static FSCode load(Path p, RenderOptions options, Dialect dialect)
+			throws IOException {
+		FileChannel ch = FileChannel.open(p, StandardOpenOption.READ);
+		try {
+			// the mapping stays valid after the channel is closed
+			return load(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()),
+					options, dialect);
+		} finally {
+			ch.close();
+		}
+	}
+
+	/**
+	 * Reads through a buffer with absolute gets.
+	 */
+	private static class Cursor {
+
+		final ByteBuffer buf;
+
+		int pos;
+
+		Cursor(ByteBuffer buf, int pos) {
+			this.buf = buf;
+			this.pos = pos;
+		}
+
+		int varint() throws IOException {
+			int value = 0, b;
+			for(int shift=0;shift<35;shift+=7) {
+				b = buf.get(pos++);
+				value |= (b&0x7F)<<shift;
+				if((b&0x80)==0)
+					return value;
+			}
+			throw new IOException("Bad number in binary FSCode document");
+		}
+
+		/**
+		 * Reads how many of something follow, each taking at least
+		 * <code>size</code> bytes, and checks that the rest of the buffer
+		 * could hold that many.
+		 */
+		int count(int size) throws IOException {
+			int n = varint();
+			if(n<0||n>(buf.limit()-pos)/size)
+				throw new IOException("Bad count in binary FSCode document");
+			return n;
+		}
+
+		int u4() {
+			int value = 0;
+			for(int i=0;i!=4;++i)
+				value = value<<8|buf.get(pos++)&0xFF;
+			return value;
+		}
+
+	}
+
+	/**
+	 * An element or run of text in a loaded buffer.  Elements decode their
+	 * name and attributes up front and their children as they are walked,
+	 * which may be as often as anyone likes.
+	 */
+	private static class BinaryMarkup implements Markup {
+
+		private static final String[] NO_ATTRIBUTES = new String[0];
+
+		private final ByteBuffer buf;
+
+		private final String[] strings;
+
+		private final String name;
+
+		private final String text;
+
+		private final String[] attributes;
+
+		/**
+		 * Where the children start and end in the buffer.
+		 */
+		private final int from, to;
+
+		/**
+		 * Reads the element whose name is at the cursor, leaving the cursor
+		 * after the whole element.
+		 */
+		BinaryMarkup(ByteBuffer buf, String[] strings, Cursor c)
+				throws IOException {
+			this.buf = buf;
+			this.strings = strings;
+			this.text = null;
+			this.name = strings[c.varint()];
+			int count = c.count(2);
+			if(count==0) {
+				attributes = NO_ATTRIBUTES;
+			} else {
+				attributes = new String[count*2];
+				for(int i=0;i!=attributes.length;++i)
+					attributes[i] = strings[c.varint()];
+			}
+			int length = c.u4();
+			if(length<0||length>buf.limit()-c.pos)
+				throw new IOException("Bad length in binary FSCode document");
+			from = c.pos;
+			to = from+length;
+			c.pos = to;
+		}
+
+		BinaryMarkup(String text) {
+			this.buf = null;
+			this.strings = null;
+			this.name = null;
+			this.text = text;
+			this.attributes = NO_ATTRIBUTES;
+			this.from = 0;
+			this.to = 0;
+		}
+
+		public boolean isText() {
+			return text!=null;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getText() {
+			return text;
+		}
+
+		public int getAttributeCount() {
+			return attributes.length/2;
+		}
+
+		public String getAttributeName(int i) {
+			return attributes[i*2];
+		}
+
+		public String getAttributeValue(int i) {
+			return attributes[i*2+1];
+		}
+
+		public String getAttribute(String name) {
+			for(int i=0;i<attributes.length;i+=2)
+				if(attributes[i].equals(name))
+					return attributes[i+1];
+			return null;
+		}
+
+		public Iterable<Markup> getChildren() {
+			return new Iterable<Markup>() {
+				public Iterator<Markup> iterator() {
+					return new ChildIterator();
+				}
+			};
+		}
+
+		private class ChildIterator implements Iterator<Markup> {
+
+			private final Cursor c = new Cursor(buf, from);
+
+			public boolean hasNext() {
+				return c.pos<to;
+			}
+
+			public Markup next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				try {
+					byte kind = buf.get(c.pos++);
+					Markup child;
+					if(kind==TEXT)
+						child = new BinaryMarkup(strings[c.varint()]);
+					else if(kind==ELEMENT)
+						child = new BinaryMarkup(buf, strings, c);
+					else
+						child = null;
+					if(child==null||c.pos>to)
+						throw new IOException(
+								"Bad node in binary FSCode document");
+					return child;
+				} catch (IndexOutOfBoundsException ex) {
+					throw new MalformedMarkupException(new IOException(
+							"Binary FSCode document is cut short", ex));
+				} catch (IOException ex) {
+					throw new MalformedMarkupException(ex);
+				}
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+		}
+
+	}
+
+	/**
+	 * Turns markup into the binary form, collecting the strings as it goes.
+	 */
+	private static class Writer {
+
+		private final HashMap<String, Integer> ids =
+				new HashMap<String, Integer>();
+
+		private final List<String> strings = new ArrayList<String>();
+
+		private final Buffer tree = new Buffer();
+
+		void element(Markup m) {
+			tree.varint(id(m.getName()));
+			int count = m.getAttributeCount();
+			tree.varint(count);
+			for(int i=0;i!=count;++i) {
+				tree.varint(id(m.getAttributeName(i)));
+				tree.varint(id(m.getAttributeValue(i)));
+			}
+			// the length is filled in once the children are written
+			int at = tree.count;
+			tree.u4(0);
+			for(Markup child:m.getChildren()) {
+				if(child.isText()) {
+					tree.write(TEXT);
+					tree.varint(id(child.getText()));
+				} else {
+					tree.write(ELEMENT);
+					element(child);
+				}
+			}
+			tree.patch(at, tree.count-at-4);
+		}
+
+		private int id(String s) {
+			Integer id = ids.get(s);
+			if(id==null) {
+				id = strings.size();
+				ids.put(s, id);
+				strings.add(s);
+			}
+			return id;
+		}
+
+		void writeTo(OutputStream out) throws IOException {
+			Buffer header = new Buffer();
+			header.write(MAGIC, 0, MAGIC.length);
+			header.write(VERSION>>8);
+			header.write(VERSION);
+			header.write(0);
+			header.write(0);
+			header.varint(strings.size());
+			byte[] bytes;
+			for(String s:strings) {
+				bytes = s.getBytes(StandardCharsets.UTF_8);
+				header.varint(bytes.length);
+				header.write(bytes, 0, bytes.length);
+			}
+			header.write(ELEMENT);
+			out.write(header.bytes, 0, header.count);
+			out.write(tree.bytes, 0, tree.count);
+		}
+
+	}
+
+	/**
+	 * A growable byte array.
+	 */
+	private static class Buffer extends OutputStream {
+
+		byte[] bytes = new byte[256];
+
+		int count = 0;
+
+		@Override
+		public void write(int b) {
+			if(count==bytes.length)
+				bytes = Arrays.copyOf(bytes, bytes.length*2);
+			bytes[count++] = (byte)b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			if(count+len>bytes.length)
+				bytes = Arrays.copyOf(bytes,
+						Math.max(count+len, bytes.length*2));
+			System.arraycopy(b, off, bytes, count, len);
+			count += len;
+		}
+
+		void varint(int value) {
+			while((value&~0x7F)!=0) {
+				write((value&0x7F)|0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+
+		void u4(int value) {
+			write(value>>24);
+			write(value>>16);
+			write(value>>8);
+			write(value);
+		}
+
+		/**
+		 * Overwrites the <code>u4</code> at <code>at</code>.
+		 */
+		void patch(int at, int value) {
+			bytes[at] = (byte)(value>>24);
+			bytes[at+1] = (byte)(value>>16);
+			bytes[at+2] = (byte)(value>>8);
+			bytes[at+3] = (byte)value;
+		}
+
+	}
+
+}
@@ -1,15 +1,430 @@
 package fscode;
 
+import fscode.exception.NonfatalException;
+import java.io.BufferedWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.xml.sax.SAXException;
+
 /**
  * Command-line interface tool to use FSCode from things like shell-scripts.
  *
+ * Renders standard input to standard output, one file to standard output or
+ * another file, or every file under a directory into another directory,
+ * keeping the layout and swapping the suffix for <code>.html</code>.
+ * Directories are rendered on a pool of threads, one per core unless told
+ * otherwise, and every document is streamed from its file straight into its
+ * output.  Once done, how fast it went and which problems were found is
+ * written to standard error.
+ *
+ * The exit status is 0 if everything rendered, 1 if any document could not be
+ * parsed or written, and 2 if the arguments were wrong.
+ *
  * @author cmiller
  * @since 0.1
  */
 public class CLI {
 
+	private static final String USAGE =
+			"usage: fscode [options] [input [output]]\n"
+			+ "\n"
+			+ "  With no input, or -, reads standard input.  A directory is\n"
+			+ "  rendered file by file into the output directory.\n"
+			+ "\n"
+			+ "  -l, --lang LANG              language to report problems in\n"
+			+ "  -w, --wiki                   render as part of a wiki\n"
+			+ "  -f, --forbidden-links FILE   regular expressions, one per line,\n"
+			+ "                               for URLs which may not be linked\n"
+			+ "  -j, --threads N              threads for directories\n"
+			+ "  -s, --suffix SUFFIX          files to render in directories\n"
+			+ "                               (default .xml)\n"
+			+ "  -q, --quiet                  leave out the summary\n"
+			+ "  -h, --help                   show this\n";
+
+	private final FSCodeEngine engine;
+
+	private final String suffix;
+
+	private final int threads;
+
+	private long documents = 0;
+
+	private long failed = 0;
+
+	private long bytes = 0;
+
+	/**
+	 * How often each problem came up, by key, with the first message seen
+	 * for it.
+	 */
+	private final Map<String, Long> problemCounts = new HashMap<String, Long>();
+
+	private final Map<String, String> problemMessages =
+			new HashMap<String, String>();
+
+	/**
+	 * Creates a renderer.
+	 *
+	 * @param config the engine configuration, as for <code>FSCode</code>.
+	 * @param suffix the files rendered in directories.
+	 * @param threads how many documents to render at once in directories.
+	 * @since 0.2
+	 */
+	public CLI(Map<String, Object> config, String suffix, int threads) {
+		this.engine = new FSCodeEngine(config);
+		this.suffix = suffix;
+		this.threads = threads;
+	}
+
 	public static void main(String[] args) {
-		
+		Map<String, Object> config = new HashMap<String, Object>();
+		List<String> forbidden = new ArrayList<String>();
+		List<String> paths = new ArrayList<String>();
+		String suffix = ".xml";
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean quiet = false;
+		try {
+			for(int i=0;i!=args.length;++i) {
+				String a = args[i];
+				if(a.equals("-l")||a.equals("--lang"))
+					config.put("lang", value(args, ++i));
+				else if(a.equals("-w")||a.equals("--wiki"))
+					config.put("isWiki", "yes");
+				else if(a.equals("-f")||a.equals("--forbidden-links"))
+					forbidden.addAll(readRules(Paths.get(value(args, ++i))));
+				else if(a.equals("-j")||a.equals("--threads"))
+					threads = Integer.parseInt(value(args, ++i));
+				else if(a.equals("-s")||a.equals("--suffix"))
+					suffix = value(args, ++i);
+				else if(a.equals("-q")||a.equals("--quiet"))
+					quiet = true;
+				else if(a.equals("-h")||a.equals("--help")) {
+					System.out.print(USAGE);
+					return;
+				} else if(a.startsWith("-")&&!a.equals("-"))
+					throw new IllegalArgumentException("unknown option " + a);
+				else
+					paths.add(a);
+			}
+			if(paths.size()>2)
+				throw new IllegalArgumentException("too many arguments");
+			if(threads<1)
+				throw new IllegalArgumentException(
+						"there has to be at least one thread");
+			if(!forbidden.isEmpty())
+				config.put("forbiddenLinks", forbidden);
+		} catch (IllegalArgumentException ex) {
+			System.err.println("fscode: " + ex.getMessage());
+			System.err.print(USAGE);
+			System.exit(2);
+			return;
+		} catch (IOException ex) {
+			System.err.println("fscode: " + ex);
+			System.exit(2);
+			return;
+		}
+
+		String in = paths.isEmpty() ? "-" : paths.get(0);
+		String out = paths.size()<2 ? "-" : paths.get(1);
+		boolean tree = !in.equals("-")&&Files.isDirectory(Paths.get(in));
+		if(tree&&out.equals("-")) {
+			System.err.println("fscode: a directory needs an output directory");
+			System.err.print(USAGE);
+			System.exit(2);
+			return;
+		}
+
+		CLI cli = new CLI(config, suffix, threads);
+		long start = System.nanoTime();
+		try {
+			if(in.equals("-"))
+				cli.renderStream(System.in, out, "-");
+			else if(tree)
+				cli.renderTree(Paths.get(in), Paths.get(out));
+			else
+				cli.renderStream(Files.newInputStream(Paths.get(in)), out, in);
+		} catch (IOException ex) {
+			System.err.println("fscode: " + ex);
+			System.exit(1);
+			return;
+		} catch (InterruptedException ex) {
+			System.exit(1);
+			return;
+		}
+		if(!quiet)
+			cli.printSummary(System.err, System.nanoTime()-start);
+		if(cli.getFailed()!=0)
+			System.exit(1);
+	}
+
+	private static String value(String[] args, int i) {
+		if(i>=args.length)
+			throw new IllegalArgumentException(args[i-1] + " needs a value");
+		return args[i];
+	}
+
+	/**
+	 * Reads forbidden link rules, skipping blank lines and ones starting with
+	 * <code>#</code>.
+	 */
+	private static List<String> readRules(Path p) throws IOException {
+		List<String> rules = new ArrayList<String>();
+		for(String line:Files.readAllLines(p, StandardCharsets.UTF_8)) {
+			line = line.trim();
+			if(!line.isEmpty()&&!line.startsWith("#"))
+				rules.add(line);
+		}
+		return rules;
+	}
+
+	/**
+	 * Renders one document, to standard output if <code>out</code> is
+	 * <code>-</code>.  Closes <code>in</code>.
+	 *
+	 * @since 0.2
+	 */
+	public void renderStream(InputStream in, String out, String name)
+			throws IOException {
+		if(out.equals("-")) {
+			Writer w = new BufferedWriter(new OutputStreamWriter(System.out,
+					StandardCharsets.UTF_8));
+			render(in, w, name);
+			w.flush();
+		} else {
+			renderTo(in, Paths.get(out), name);
+		}
+	}
+
+	/**
+	 * Renders every file under <code>in</code> ending in the suffix into the
+	 * same place under <code>out</code>, several at a time.  A file which
+	 * can't be rendered is reported and counted, and the rest carry on.
+	 *
+	 * @since 0.2
+	 */
+	public void renderTree(final Path in, final Path out)
+			throws IOException, InterruptedException {
+		// a short queue keeps millions of files from piling up in memory;
+		// once it is full the walking thread renders one itself
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0,
+				TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(threads*16),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		try (Stream<Path> walk = Files.walk(in)) {
+			Iterator<Path> files = walk.iterator();
+			while(files.hasNext()) {
+				final Path file = files.next();
+				if(!file.getFileName().toString().endsWith(suffix)
+						||!Files.isRegularFile(file))
+					continue;
+				pool.execute(new Runnable() {
+					public void run() {
+						renderFile(file, outputFor(in, out, file));
+					}
+				});
+			}
+		} finally {
+			pool.shutdown();
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.SECONDS);
+		}
+	}
+
+	private Path outputFor(Path in, Path out, Path file) {
+		String name = file.getFileName().toString();
+		name = name.substring(0, name.length()-suffix.length()) + ".html";
+		return out.resolve(in.relativize(file).toString())
+				.resolveSibling(name);
+	}
+
+	private void renderFile(Path file, Path output) {
+		try {
+			Files.createDirectories(output.getParent());
+			renderTo(Files.newInputStream(file), output, file.toString());
+		} catch (IOException ex) {
+			System.err.println(file + ": " + ex);
+			count(0, null, true);
+		}
+	}
+
+	/**
+	 * Renders one document into a file, which is removed again if the
+	 * document can't be rendered so that no half-written HTML is left.
+	 */
+	private void renderTo(InputStream in, Path output, String name)
+			throws IOException {
+		boolean rendered = false;
+		try (Writer w = Files.newBufferedWriter(output,
+				StandardCharsets.UTF_8)) {
+			rendered = render(in, w, name);
+		} finally {
+			if(!rendered)
+				Files.deleteIfExists(output);
+		}
+	}
+
+	/**
+	 * Parses a document straight from its bytes and emits it straight into
+	 * <code>out</code>, counting what was read and the problems found.
+	 *
+	 * @return whether the document could be rendered.
+	 */
+	private boolean render(InputStream in, Writer out, String name)
+			throws IOException {
+		CountingInputStream counted = new CountingInputStream(in);
+		try {
+			FSCode doc = engine.parse(counted, StandardCharsets.UTF_8);
+			doc.emitHtml(out);
+			count(counted.count, doc.getProblems(), false);
+			return true;
+		} catch (SAXException ex) {
+			System.err.println(name + ": " + ex.getMessage());
+			count(counted.count, null, true);
+			return false;
+		} catch (RuntimeException ex) {
+			// a tag which choked on an attribute, such as rowspan="x"
+			System.err.println(name + ": " + ex);
+			count(counted.count, null, true);
+			return false;
+		} finally {
+			counted.close();
+		}
+	}
+
+	private synchronized void count(long read,
+			List<NonfatalException> problems, boolean fail) {
+		documents++;
+		bytes += read;
+		if(fail)
+			failed++;
+		if(problems==null)
+			return;
+		String key;
+		Long n;
+		for(NonfatalException p:problems) {
+			key = p.getKey()!=null ? p.getKey() : p.getMessage();
+			n = problemCounts.get(key);
+			problemCounts.put(key, n==null ? 1 : n+1);
+			if(n==null)
+				problemMessages.put(key, p.getMessage());
+		}
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public synchronized long getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * How many documents could not be parsed or written.
+	 *
+	 * @since 0.2
+	 */
+	public synchronized long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * How many bytes of FSCode were read.
+	 *
+	 * @since 0.2
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * How often each problem came up, by key.
+	 *
+	 * @since 0.2
+	 */
+	public synchronized Map<String, Long> getProblemCounts() {
+		return new HashMap<String, Long>(problemCounts);
+	}
+
+	/**
+	 * Writes how many documents were rendered how fast, and the problems
+	 * found in them, most common first.
+	 *
+	 * @param nanos how long the rendering took.
+	 * @since 0.2
+	 */
+	public synchronized void printSummary(Appendable out, long nanos) {
+		double seconds = Math.max(nanos, 1)/1e9;
+		try {
+			out.append(String.format("%d documents, %d failed, in %.2f s: "
+					+ "%.1f docs/s, %.2f MB/s%n", documents, failed, seconds,
+					documents/seconds, bytes/seconds/(1024*1024)));
+			List<Map.Entry<String, Long>> counts =
+					new ArrayList<Map.Entry<String, Long>>(
+					problemCounts.entrySet());
+			Collections.sort(counts, new Comparator<Map.Entry<String, Long>>() {
+				public int compare(Map.Entry<String, Long> a,
+						Map.Entry<String, Long> b) {
+					int c = b.getValue().compareTo(a.getValue());
+					return c!=0 ? c : a.getKey().compareTo(b.getKey());
+				}
+			});
+			for(Map.Entry<String, Long> e:counts)
+				out.append(String.format("%8d  %s: %s%n", e.getValue(),
+						e.getKey(), problemMessages.get(e.getKey())));
+		} catch (IOException ex) {
+			System.err.println("fscode: " + ex);
+		}
+	}
+
+	/**
+	 * Counts the bytes read through it.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		long count = 0;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b>=0)
+				count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if(n>0)
+				count += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
 	}
 
 }
@@ -0,0 +1,583 @@
+package fscode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Makes up FSCode documents of any size and shape for load and scale
+ * testing.  The same settings and seed always make the same document, so a
+ * slow one can be made again anywhere from its seed.
+ *
+ * Documents are a run of paragraphs of made-up words, nested formatting and
+ * links, broken up by headings and tables, with tables of contents spread
+ * evenly through them.  Every knob has a default, so only the ones a test
+ * cares about need setting:
+ *
+ * <pre>
+ * CorpusGenerator gen = new CorpusGenerator(42);
+ * gen.setSize(5*1024*1024);
+ * gen.setMalformedShare(0.01);
+ * String code = gen.generate();
+ * </pre>
+ *
+ * It can also be run from the command line; see <code>main</code>.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+public class CorpusGenerator {
+
+	private static final String[] WORDS = {"the", "wiki", "page", "of",
+		"fish", "and", "chips", "is", "a", "long", "story", "about", "markup",
+		"which", "nobody", "reads", "twice", "so", "we", "render", "it",
+		"again", "tables", "headings", "links", "&amp;", "&lt;", "quotes",
+		"\"quoted\"", "it's", "café", "naïve", "中文"};
+
+	private static final String[] INLINE_TAGS = {"b", "i", "super", "sub",
+		"code", "center"};
+
+	private long seed;
+
+	private long size = 64*1024;
+
+	private int depth = 3;
+
+	private int headingInterval = 4*1024;
+
+	private int tocs = 1;
+
+	private int tableRows = 5;
+
+	private int tableColumns = 4;
+
+	private int tableInterval = 16*1024;
+
+	private double linkDensity = 0.1;
+
+	private int textSize = 80;
+
+	private double malformedShare = 0;
+
+	/**
+	 * Creates a generator with the default shape.
+	 *
+	 * @since 0.2
+	 */
+	public CorpusGenerator(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Roughly how many characters each document should be.  Documents stop
+	 * at the first paragraph, heading or table which reaches it.  Defaults
+	 * to 64K.
+	 *
+	 * @since 0.2
+	 */
+	public void setSize(long size) {
+		if(size<0)
+			throw new IllegalArgumentException("size can't be negative");
+		this.size = size;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	/**
+	 * How deep formatting tags may be nested inside each other.  Defaults to
+	 * 3.
+	 *
+	 * @since 0.2
+	 */
+	public void setDepth(int depth) {
+		if(depth<0)
+			throw new IllegalArgumentException("depth can't be negative");
+		this.depth = depth;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public int getHeadingInterval() {
+		return headingInterval;
+	}
+
+	/**
+	 * Roughly how many characters come between headings, or 0 for no
+	 * headings.  Defaults to 4K.
+	 *
+	 * @since 0.2
+	 */
+	public void setHeadingInterval(int headingInterval) {
+		if(headingInterval<0)
+			throw new IllegalArgumentException(
+					"headingInterval can't be negative");
+		this.headingInterval = headingInterval;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public int getTocs() {
+		return tocs;
+	}
+
+	/**
+	 * How many tables of contents to put in each document.  The first goes
+	 * at the top and the rest are spread evenly after it.  Defaults to 1.
+	 *
+	 * @since 0.2
+	 */
+	public void setTocs(int tocs) {
+		if(tocs<0)
+			throw new IllegalArgumentException("tocs can't be negative");
+		this.tocs = tocs;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public int getTableRows() {
+		return tableRows;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public int getTableColumns() {
+		return tableColumns;
+	}
+
+	/**
+	 * How big each table is.  Defaults to 5 rows of 4 cells.
+	 *
+	 * @since 0.2
+	 */
+	public void setTableSize(int rows, int columns) {
+		if(rows<1||columns<1)
+			throw new IllegalArgumentException(
+					"tables need at least one cell");
+		this.tableRows = rows;
+		this.tableColumns = columns;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public int getTableInterval() {
+		return tableInterval;
+	}
+
+	/**
+	 * Roughly how many characters come between tables, or 0 for no tables.
+	 * Defaults to 16K.
+	 *
+	 * @since 0.2
+	 */
+	public void setTableInterval(int tableInterval) {
+		if(tableInterval<0)
+			throw new IllegalArgumentException(
+					"tableInterval can't be negative");
+		this.tableInterval = tableInterval;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public double getLinkDensity() {
+		return linkDensity;
+	}
+
+	/**
+	 * The share of runs of text which are links, half to other sites and
+	 * half to wiki pages.  Defaults to 0.1.
+	 *
+	 * @since 0.2
+	 */
+	public void setLinkDensity(double linkDensity) {
+		if(linkDensity<0||linkDensity>1)
+			throw new IllegalArgumentException(
+					"linkDensity has to be between 0 and 1");
+		this.linkDensity = linkDensity;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public int getTextSize() {
+		return textSize;
+	}
+
+	/**
+	 * About how many characters are in each run of text; each one is
+	 * somewhere between half and one and a half times this.  Defaults to 80.
+	 *
+	 * @since 0.2
+	 */
+	public void setTextSize(int textSize) {
+		if(textSize<1)
+			throw new IllegalArgumentException("textSize has to be positive");
+		this.textSize = textSize;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public double getMalformedShare() {
+		return malformedShare;
+	}
+
+	/**
+	 * The share of tags with attributes, namely tables, images and links,
+	 * whose attributes are wrong in a way that gets reported as a problem.
+	 * Defaults to none.
+	 *
+	 * @since 0.2
+	 */
+	public void setMalformedShare(double malformedShare) {
+		if(malformedShare<0||malformedShare>1)
+			throw new IllegalArgumentException(
+					"malformedShare has to be between 0 and 1");
+		this.malformedShare = malformedShare;
+	}
+
+	/**
+	 * Makes a document.
+	 *
+	 * @since 0.2
+	 */
+	public String generate() {
+		StringBuilder out = new StringBuilder((int)Math.min(size+1024,
+				Integer.MAX_VALUE-8));
+		try {
+			generate(out);
+		} catch (IOException ex) {
+			throw new IllegalStateException("StringBuilders don't throw", ex);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Writes a document to <code>out</code>.
+	 *
+	 * @throws IOException if <code>out</code> does
+	 * @since 0.2
+	 */
+	public void generate(Appendable out) throws IOException {
+		new Document(out).write();
+	}
+
+	/**
+	 * The state of one document being written.
+	 */
+	private class Document {
+
+		final Appendable out;
+
+		final Random random = new Random(seed);
+
+		final StringBuilder block = new StringBuilder();
+
+		long written = 0;
+
+		long nextHeading = headingInterval;
+
+		long nextTable = tableInterval;
+
+		int tocsLeft = tocs;
+
+		int headings = 0;
+
+		Document(Appendable out) {
+			this.out = out;
+		}
+
+		void write() throws IOException {
+			flush("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<fscode>\n");
+			if(size>0)
+				flush("<title>Generated document " + seed + "</title>\n");
+			while(written<size) {
+				if(tocsLeft>0&&written>=(tocs-tocsLeft)*size/tocs) {
+					tocsLeft--;
+					flush("<macro:toc" + (random.nextBoolean()
+							? " align=\"right\" inline=\"no\"" : "") + "/>\n");
+				}
+				if(headingInterval>0&&written>=nextHeading) {
+					nextHeading += headingInterval;
+					heading();
+				} else if(tableInterval>0&&written>=nextTable) {
+					nextTable += tableInterval;
+					table();
+				} else
+					paragraph();
+			}
+			flush("</fscode>\n");
+		}
+
+		void flush(CharSequence s) throws IOException {
+			out.append(s);
+			written += s.length();
+		}
+
+		void heading() throws IOException {
+			headings++;
+			block.setLength(0);
+			block.append("<h level=\"").append(1+random.nextInt(3))
+					.append("\">Section ").append(headings).append(' ');
+			words(12);
+			block.append("</h>\n");
+			flush(block);
+		}
+
+		void table() throws IOException {
+			block.setLength(0);
+			block.append("<table");
+			if(malformed())
+				block.append(" border=\"-").append(1+random.nextInt(3))
+						.append('"');
+			else if(random.nextBoolean())
+				block.append(" border=\"").append(random.nextInt(3))
+						.append('"');
+			block.append(">\n");
+			for(int r=0;r!=tableRows;++r) {
+				block.append("<row>");
+				for(int c=0;c!=tableColumns;++c) {
+					block.append("<cell>");
+					inline(Math.min(depth, 1), textSize/4+1);
+					block.append("</cell>");
+				}
+				block.append("</row>\n");
+			}
+			block.append("</table>\n");
+			flush(block);
+		}
+
+		void paragraph() throws IOException {
+			block.setLength(0);
+			int items = 1+random.nextInt(5);
+			for(int i=0;i!=items;++i) {
+				inline(depth, textSize);
+				block.append(' ');
+			}
+			if(random.nextInt(20)==0)
+				image();
+			block.append(random.nextBoolean() ? "<br/>\n" : "\n\n");
+			flush(block);
+		}
+
+		/**
+		 * A run of text, perhaps a link, perhaps wrapped in up to
+		 * <code>levels</code> formatting tags.
+		 */
+		void inline(int levels, int chars) {
+			int wrap = levels==0 ? 0 : random.nextInt(levels+1);
+			String[] tags = new String[wrap];
+			for(int i=0;i!=wrap;++i) {
+				tags[i] = INLINE_TAGS[random.nextInt(INLINE_TAGS.length)];
+				block.append('<').append(tags[i]).append('>');
+			}
+			if(random.nextDouble()<linkDensity)
+				link(chars);
+			else
+				words(chars);
+			for(int i=wrap-1;i>=0;--i)
+				block.append("</").append(tags[i]).append('>');
+		}
+
+		void link(int chars) {
+			boolean bad = malformed();
+			if(random.nextBoolean()) {
+				block.append("<url");
+				if(!bad)
+					block.append(" location=\"http://www.example.org/")
+							.append(random.nextInt(100000)).append('"');
+				block.append('>');
+				words(chars/2+1);
+				block.append("</url>");
+			} else {
+				block.append("<link");
+				if(!bad)
+					block.append(" page=\"Page_").append(random.nextInt(1000))
+							.append('"');
+				block.append('>');
+				words(chars/2+1);
+				block.append("</link>");
+			}
+		}
+
+		void image() {
+			block.append("<image src=\"http://images.example.org/")
+					.append(random.nextInt(100000)).append(".png\"");
+			if(malformed())
+				switch(random.nextInt(3)) {
+					case 0:
+						block.append(" width=\"wide\"");
+						break;
+					case 1:
+						block.append(" vertical-align=\"sideways\"");
+						break;
+					default:
+						block.append(" margin-left=\"lots\"");
+				}
+			else
+				block.append(" width=\"").append(16+random.nextInt(240))
+						.append("px\"");
+			block.append("/>");
+		}
+
+		/**
+		 * Somewhere between half and one and a half times <code>chars</code>
+		 * characters of words.
+		 */
+		void words(int chars) {
+			int target = block.length()+chars/2+random.nextInt(chars+1);
+			block.append(WORDS[random.nextInt(WORDS.length)]);
+			while(block.length()<target)
+				block.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+		}
+
+		boolean malformed() {
+			return malformedShare>0&&random.nextDouble()<malformedShare;
+		}
+
+	}
+
+	/**
+	 * Makes documents from the command line, to standard output or as
+	 * numbered files in a directory.
+	 *
+	 * <pre>
+	 * CorpusGenerator [--seed N] [--count N] [--out DIR] [--size N]
+	 *		[--depth N] [--heading-interval N] [--tocs N]
+	 *		[--table-size ROWSxCOLUMNS] [--table-interval N]
+	 *		[--link-density D] [--text-size N] [--malformed D]
+	 * </pre>
+	 *
+	 * Sizes may end in <code>k</code> or <code>m</code>.  The documents in a
+	 * directory are seeded one after another starting at the given seed.
+	 *
+	 * @since 0.2
+	 */
+	public static void main(String[] args) {
+		CorpusGenerator gen = new CorpusGenerator(0);
+		int count = 1;
+		String dir = null;
+		try {
+			for(int i=0;i!=args.length;++i) {
+				String a = args[i];
+				if(i+1==args.length)
+					throw new IllegalArgumentException(a + " needs a value");
+				String v = args[++i];
+				if(a.equals("--seed"))
+					gen.setSeed(Long.parseLong(v));
+				else if(a.equals("--count"))
+					count = Integer.parseInt(v);
+				else if(a.equals("--out"))
+					dir = v;
+				else if(a.equals("--size"))
+					gen.setSize(parseSize(v));
+				else if(a.equals("--depth"))
+					gen.setDepth(Integer.parseInt(v));
+				else if(a.equals("--heading-interval"))
+					gen.setHeadingInterval((int)parseSize(v));
+				else if(a.equals("--tocs"))
+					gen.setTocs(Integer.parseInt(v));
+				else if(a.equals("--table-size")) {
+					int x = v.indexOf('x');
+					if(x<0)
+						throw new IllegalArgumentException(
+								"--table-size is ROWSxCOLUMNS");
+					gen.setTableSize(Integer.parseInt(v.substring(0, x)),
+							Integer.parseInt(v.substring(x+1)));
+				} else if(a.equals("--table-interval"))
+					gen.setTableInterval((int)parseSize(v));
+				else if(a.equals("--link-density"))
+					gen.setLinkDensity(Double.parseDouble(v));
+				else if(a.equals("--text-size"))
+					gen.setTextSize((int)parseSize(v));
+				else if(a.equals("--malformed"))
+					gen.setMalformedShare(Double.parseDouble(v));
+				else
+					throw new IllegalArgumentException("unknown option " + a);
+			}
+			if(count<1)
+				throw new IllegalArgumentException("--count has to be positive");
+			if(dir==null&&count>1)
+				throw new IllegalArgumentException(
+						"more than one document needs --out");
+		} catch (IllegalArgumentException ex) {
+			System.err.println("CorpusGenerator: " + ex.getMessage());
+			System.exit(2);
+			return;
+		}
+
+		try {
+			if(dir==null) {
+				Writer w = new BufferedWriter(new OutputStreamWriter(
+						System.out, StandardCharsets.UTF_8));
+				gen.generate(w);
+				w.flush();
+				return;
+			}
+			Path out = Paths.get(dir);
+			Files.createDirectories(out);
+			long first = gen.getSeed();
+			for(int i=0;i!=count;++i) {
+				gen.setSeed(first+i);
+				try (Writer w = Files.newBufferedWriter(out.resolve(
+						String.format("doc-%06d.xml", i)),
+						StandardCharsets.UTF_8)) {
+					gen.generate(w);
+				}
+			}
+		} catch (IOException ex) {
+			System.err.println("CorpusGenerator: " + ex);
+			System.exit(1);
+		}
+	}
+
+	private static long parseSize(String s) {
+		long unit = 1;
+		String lower = s.toLowerCase();
+		if(lower.endsWith("k"))
+			unit = 1024;
+		else if(lower.endsWith("m"))
+			unit = 1024*1024;
+		if(unit!=1)
+			s = s.substring(0, s.length()-1);
+		return Long.parseLong(s)*unit;
+	}
+
+}
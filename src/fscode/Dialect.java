@@ -0,0 +1,164 @@
+package fscode;
+
+import fscode.macro.TOCMacro;
+import fscode.tags.*;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * An immutable set of tags which documents can be parsed with, such as one
+ * for a forum and another for a wiki.  Looking up a tag is a single hash
+ * lookup, and since a dialect never changes it can be shared between any
+ * number of threads without locking.
+ *
+ * New dialects are made from old ones with <code>with</code> and
+ * <code>without</code>, which copy the tag list rather than changing it.  A
+ * render which already has a dialect keeps using it when a new one is
+ * published.
+ *
+ * @see FSCodeEngine#setDialect(fscode.Dialect)
+ * @author cmiller
+ * @since 0.2
+ */
+public final class Dialect {
+
+	/**
+	 * The tags that come with FSCode.  Their factories say which class they
+	 * make, for the deprecated <code>Emitter.getEmitters</code>.
+	 *
+	 * @since 0.2
+	 */
+	public static final Dialect DEFAULT;
+
+	static {
+		HashMap<String, EmitterFactory> tags =
+				new HashMap<String, EmitterFactory>();
+		tags.put("b", EmitterFactory.forClass(Bold.class, Bold::new));
+		tags.put("i", EmitterFactory.forClass(Italic.class, Italic::new));
+		tags.put("h", EmitterFactory.forClass(Heading.class, Heading::new));
+		tags.put("h1", EmitterFactory.forClass(Heading.class, Heading::new));
+		tags.put("h2", EmitterFactory.forClass(Heading.class, Heading::new));
+		tags.put("h3", EmitterFactory.forClass(Heading.class, Heading::new));
+		tags.put("h4", EmitterFactory.forClass(Heading.class, Heading::new));
+		tags.put("h5", EmitterFactory.forClass(Heading.class, Heading::new));
+		tags.put("h6", EmitterFactory.forClass(Heading.class, Heading::new));
+		tags.put("center", EmitterFactory.forClass(Center.class, Center::new));
+		tags.put("title", EmitterFactory.forClass(Title.class, Title::new));
+		tags.put("super", EmitterFactory.forClass(Super.class, Super::new));
+		tags.put("sub", EmitterFactory.forClass(Sub.class, Sub::new));
+		tags.put("br", EmitterFactory.forClass(Break.class, Break::new));
+		tags.put("code", EmitterFactory.forClass(Code.class, Code::new));
+		tags.put("link", EmitterFactory.forClass(InternalLink.class,
+				InternalLink::new));
+		tags.put("url", EmitterFactory.forClass(ExternalLink.class,
+				ExternalLink::new));
+		tags.put("table", EmitterFactory.forClass(Table.class, Table::new));
+		tags.put("row", EmitterFactory.forClass(Row.class, Row::new));
+		tags.put("cell", EmitterFactory.forClass(Cell.class, Cell::new));
+		tags.put("image", EmitterFactory.forClass(EmbeddedImage.class,
+				EmbeddedImage::new));
+		tags.put("macro:toc", EmitterFactory.forClass(TOCMacro.class,
+				TOCMacro::new));
+		DEFAULT = new Dialect(tags);
+	}
+
+	/**
+	 * Never modified after construction.
+	 */
+	private final HashMap<String, EmitterFactory> tags;
+
+	/**
+	 * What <code>RenderCache</code> keys this dialect by, worked out the
+	 * first time it is needed.
+	 */
+	volatile byte[] fingerprint;
+
+	private Dialect(HashMap<String, EmitterFactory> tags) {
+		this.tags = tags;
+	}
+
+	/**
+	 * A dialect with exactly the given tags.  The map is copied.
+	 *
+	 * @since 0.2
+	 */
+	public static Dialect of(Map<String, ? extends EmitterFactory> tags) {
+		for(Map.Entry<String, ? extends EmitterFactory> e:tags.entrySet())
+			if(e.getKey()==null||e.getValue()==null)
+				throw new IllegalArgumentException(
+						"Tag names and factories must not be null");
+		return new Dialect(new HashMap<String, EmitterFactory>(tags));
+	}
+
+	/**
+	 * The factory for a tag, or <code>null</code> if the tag is not part of
+	 * this dialect.
+	 *
+	 * @since 0.2
+	 */
+	public EmitterFactory get(String tagName) {
+		return tags.get(tagName);
+	}
+
+	/**
+	 * Whether the tag is part of this dialect.
+	 *
+	 * @since 0.2
+	 */
+	public boolean contains(String tagName) {
+		return tags.containsKey(tagName);
+	}
+
+	/**
+	 * The names of every tag in this dialect, sorted.
+	 *
+	 * @since 0.2
+	 */
+	public Set<String> getTagNames() {
+		return Collections.unmodifiableSet(new TreeSet<String>(tags.keySet()));
+	}
+
+	/**
+	 * A read-only view of the tags in this dialect.
+	 *
+	 * @since 0.2
+	 */
+	public Map<String, EmitterFactory> asMap() {
+		return Collections.unmodifiableMap(tags);
+	}
+
+	/**
+	 * A copy of this dialect with the tag bound to <code>factory</code>,
+	 * replacing whatever it was bound to before.
+	 *
+	 * @since 0.2
+	 */
+	public Dialect with(String tagName, EmitterFactory factory) {
+		if(tagName==null||factory==null)
+			throw new IllegalArgumentException(
+					"Tag names and factories must not be null");
+		HashMap<String, EmitterFactory> copy =
+				new HashMap<String, EmitterFactory>(tags);
+		copy.put(tagName, factory);
+		return new Dialect(copy);
+	}
+
+	/**
+	 * A copy of this dialect without the tag, which will then be parsed like
+	 * any other unknown tag.
+	 *
+	 * @since 0.2
+	 */
+	public Dialect without(String tagName) {
+		if(!tags.containsKey(tagName))
+			return this;
+		HashMap<String, EmitterFactory> copy =
+				new HashMap<String, EmitterFactory>(tags);
+		copy.remove(tagName);
+		return new Dialect(copy);
+	}
+
+}
@@ -0,0 +1,193 @@
+package fscode;
+
+import fscode.macro.TOCElement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every emitter created underneath a document's root, kept up to date as the
+ * document is parsed so that tags and macros can ask about the rest of the
+ * document without walking the tree.  Emitters are listed in the order they
+ * were created, which for a parsed document is document order.  Emitters which
+ * refuse to be parsed are taken back out along with their children.
+ *
+ * Compacting a document drops the list of every emitter, keeping only the
+ * lists by class that tags look things up in.  The full list is put back
+ * together from the tree, in document order, the first time it is asked for
+ * again.
+ *
+ * Like the rest of the tree, an index belongs to the thread that parsed it.
+ *
+ * @see Emitter#getIndex()
+ * @author cmiller
+ * @since 0.2
+ */
+public final class DocumentIndex {
+
+	private final Emitter root;
+
+	/**
+	 * Every emitter in the order it was created, or <code>null</code> since
+	 * the document was compacted.
+	 */
+	private ArrayList<Emitter> all = new ArrayList<Emitter>();
+
+	/**
+	 * Emitters by their exact class.
+	 */
+	private final HashMap<Class<?>, ArrayList<Emitter>> byType =
+			new HashMap<Class<?>, ArrayList<Emitter>>();
+
+	private final Outline outline = new Outline();
+
+	DocumentIndex(Emitter root) {
+		this.root = root;
+	}
+
+	void add(Emitter em) {
+		if(em instanceof TOCElement)
+			outline.add((TOCElement)em);
+		if(all!=null)
+			all.add(em);
+		ArrayList<Emitter> ofType = byType.get(em.getClass());
+		if(ofType==null) {
+			ofType = new ArrayList<Emitter>();
+			byType.put(em.getClass(), ofType);
+		}
+		ofType.add(em);
+	}
+
+	/**
+	 * Drops the list of every emitter and trims the rest to size.
+	 */
+	void compact() {
+		all = null;
+		for(ArrayList<Emitter> ofType:byType.values())
+			ofType.trimToSize();
+		outline.trimToSize();
+	}
+
+	/**
+	 * Takes out an emitter and everything underneath it.  These are almost
+	 * always the most recently added, so the lists are searched from the end.
+	 */
+	void remove(Emitter em) {
+		for(Emitter child:em.getChildren())
+			remove(child);
+		if(em instanceof TOCElement)
+			outline.remove((TOCElement)em);
+		if(all!=null)
+			removeLast(all, em);
+		ArrayList<Emitter> ofType = byType.get(em.getClass());
+		if(ofType!=null)
+			removeLast(ofType, em);
+	}
+
+	private static void removeLast(ArrayList<Emitter> list, Emitter em) {
+		for(int i=list.size()-1;i>=0;--i)
+			if(list.get(i)==em) {
+				list.remove(i);
+				return;
+			}
+	}
+
+	/**
+	 * The list of every emitter, put back together from the tree if the
+	 * document was compacted.  Emitters added to the tree by hand were never
+	 * indexed, so only those in the lists by class are taken.
+	 */
+	private ArrayList<Emitter> all() {
+		if(all==null) {
+			IdentityHashMap<Emitter, Boolean> indexed =
+					new IdentityHashMap<Emitter, Boolean>();
+			for(ArrayList<Emitter> ofType:byType.values())
+				for(Emitter em:ofType)
+					indexed.put(em, Boolean.TRUE);
+			ArrayList<Emitter> found =
+					new ArrayList<Emitter>(indexed.size());
+			for(Emitter em:root.getDescendants())
+				if(indexed.containsKey(em))
+					found.add(em);
+			all = found;
+		}
+		return all;
+	}
+
+	/**
+	 * The document's headings, or anything else which belongs in a table of
+	 * contents.
+	 *
+	 * @since 0.2
+	 */
+	public Outline getOutline() {
+		return outline;
+	}
+
+	/**
+	 * How many emitters there are in the document, not counting the root.
+	 *
+	 * @since 0.2
+	 */
+	public int size() {
+		int size = 0;
+		for(ArrayList<Emitter> ofType:byType.values())
+			size += ofType.size();
+		return size;
+	}
+
+	/**
+	 * Every emitter in the document in document order, not counting the root.
+	 *
+	 * @since 0.2
+	 */
+	public List<Emitter> getAll() {
+		return Collections.unmodifiableList(all());
+	}
+
+	/**
+	 * Every emitter of the given type, including subclasses and implementors,
+	 * in document order.  When only one class of emitter matches, which is
+	 * the usual case, no copy is made.
+	 *
+	 * @since 0.2
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> getAll(Class<T> type) {
+		ArrayList<Emitter> only = null;
+		int matches = 0;
+		for(Map.Entry<Class<?>, ArrayList<Emitter>> e:byType.entrySet())
+			if(type.isAssignableFrom(e.getKey())&&!e.getValue().isEmpty()) {
+				only = e.getValue();
+				matches++;
+			}
+		if(matches==0)
+			return Collections.<T>emptyList();
+		if(matches==1)
+			return Collections.unmodifiableList((List<T>)only);
+		ArrayList<T> found = new ArrayList<T>();
+		for(Emitter em:all())
+			if(type.isInstance(em))
+				found.add(type.cast(em));
+		return Collections.unmodifiableList(found);
+	}
+
+	/**
+	 * How many emitters of the given type, including subclasses and
+	 * implementors, there are in the document.  This only looks at the
+	 * classes of emitter in the document, not at the emitters.
+	 *
+	 * @since 0.2
+	 */
+	public int count(Class<?> type) {
+		int count = 0;
+		for(Map.Entry<Class<?>, ArrayList<Emitter>> e:byType.entrySet())
+			if(type.isAssignableFrom(e.getKey()))
+				count += e.getValue().size();
+		return count;
+	}
+
+}
@@ -0,0 +1,115 @@
+package fscode;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Markup backed by a node in a DOM tree.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+public class DomMarkup implements Markup {
+
+	private final Node node;
+
+	public DomMarkup(Node node) {
+		this.node = node;
+	}
+
+	/**
+	 * The DOM node underneath this markup.
+	 *
+	 * @since 0.2
+	 */
+	public Node getNode() {
+		return node;
+	}
+
+	public boolean isText() {
+		return node.getNodeType()==Node.TEXT_NODE;
+	}
+
+	public String getName() {
+		return isText() ? null : node.getNodeName();
+	}
+
+	public String getText() {
+		return isText() ? node.getNodeValue() : null;
+	}
+
+	public int getAttributeCount() {
+		NamedNodeMap nnm = node.getAttributes();
+		return nnm==null ? 0 : nnm.getLength();
+	}
+
+	public String getAttributeName(int i) {
+		return node.getAttributes().item(i).getNodeName();
+	}
+
+	public String getAttributeValue(int i) {
+		return node.getAttributes().item(i).getTextContent();
+	}
+
+	public String getAttribute(String name) {
+		NamedNodeMap nnm = node.getAttributes();
+		if(nnm==null)
+			return null;
+		Node n = nnm.getNamedItem(name);
+		return n==null ? null : n.getTextContent();
+	}
+
+	public Iterable<Markup> getChildren() {
+		return new Iterable<Markup>() {
+			public Iterator<Markup> iterator() {
+				return new ChildIterator(node.getChildNodes());
+			}
+		};
+	}
+
+	/**
+	 * Walks a <code>NodeList</code>, skipping anything which is neither an
+	 * element nor text.
+	 */
+	private static class ChildIterator implements Iterator<Markup> {
+
+		private final NodeList nl;
+
+		private int i = 0;
+
+		ChildIterator(NodeList nl) {
+			this.nl = nl;
+			skip();
+		}
+
+		private void skip() {
+			int type;
+			for(;i<nl.getLength();++i) {
+				type = nl.item(i).getNodeType();
+				if(type==Node.ELEMENT_NODE||type==Node.TEXT_NODE)
+					break;
+			}
+		}
+
+		public boolean hasNext() {
+			return i<nl.getLength();
+		}
+
+		public Markup next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			Markup m = new DomMarkup(nl.item(i++));
+			skip();
+			return m;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
@@ -2,23 +2,39 @@ package fscode;
 
 import fscode.exception.EmitterAlreadyRegisteredForTagNameException;
 import fscode.exception.NonfatalException;
-import fscode.macro.TOCMacro;
-import fscode.tags.*;
-import java.lang.reflect.InvocationTargetException;
+import fscode.tags.Text;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.ResourceBundle;
+import java.util.NoSuchElementException;
 import java.util.TreeMap;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.xml.xpath.XPathFactory;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * The nuts and bolts of parsing abstracted for the use of every tag.
  *
+ * Tags written for 0.1 took an <code>org.w3c.dom.Node</code>.  Since 0.2 they
+ * take a <code>Markup</code>, so that they work the same whether the document
+ * came out of a DOM tree or off of a streaming parser.  The
+ * <code>Node</code> constructor, <code>parse</code> and
+ * <code>getContents</code> still work, but only for documents parsed through
+ * the DOM.  To move a tag over, change its constructor to
+ * <code>(Emitter parent, Markup contents)</code>, read attributes with
+ * <code>Markup.getAttribute</code> and children with
+ * <code>Markup.getChildren</code>, use <code>getMarkup</code> in place of
+ * <code>getContents</code>, and register it with a factory such as
+ * <code>MyTag::new</code>.  Code which still has a <code>Node</code> can wrap
+ * it in a <code>DomMarkup</code>.
+ *
+ * @see Markup
+ * @see EmitterFactory
  * @author cmiller
  * @since 0.1
  */
@@ -30,14 +46,32 @@ public class Emitter {
 	protected Emitter parent;
 
 	/**
-	 * All child nodes.
+	 * All child nodes.  Up to 0.1 this was a protected
+	 * <code>LinkedList</code>; now that leaves share one empty list it is
+	 * private, and children are only changed through
+	 * <code>appendChild</code> and <code>setChildren</code>.
 	 */
-	protected LinkedList<Emitter> children;
+	private List<Emitter> children;
 
 	/**
 	 * All nodes need to know about their contents from the XML markup.
 	 */
-	protected Node contents;
+	protected Markup contents;
+
+	/**
+	 * The root of the tree this emitter is in, which may be itself.
+	 */
+	private Emitter root;
+
+	/**
+	 * Only kept by root emitters.
+	 */
+	private DocumentIndex index;
+
+	/**
+	 * Only kept by root emitters.
+	 */
+	private RenderOptions options;
 
 	/**
 	 * Configuration mapping for this node.
@@ -51,17 +85,48 @@ public class Emitter {
 	 */
 	protected LinkedList<NonfatalException> problems;
 
+	/**
+	 * The HTML this emitter and its children wrote the last time, kept only
+	 * for static subtrees which have been emitted more than once.
+	 */
+	private String fragment;
+
+	/**
+	 * Whether this emitter and everything underneath it is static, or
+	 * <code>null</code> if that hasn't been worked out yet.
+	 */
+	private Boolean staticSubtree;
+
+	/**
+	 * Whether this emitter has been written out since it was last changed.
+	 */
+	private boolean emitted;
+
 	/**
 	 * Used in the creation of XPath queries, good for simple, clean code
-	 * to manipulate and search through the DOM XML tree.
+	 * to manipulate and search through the DOM XML tree.  XPath factories are
+	 * not thread-safe, so there is one per thread.
+	 */
+	protected static final ThreadLocal<XPathFactory> queryFactory =
+			new ThreadLocal<XPathFactory>() {
+		@Override
+		protected XPathFactory initialValue() {
+			return XPathFactory.newInstance();
+		}
+	};
+
+	/**
+	 * The global dialect, used by documents which are not given one of their
+	 * own.  Replaced, never modified; writers hold the class lock.
 	 */
-	protected static XPathFactory queryFactory;
+	private static volatile Dialect dialect = Dialect.DEFAULT;
 
 	/**
-	 * A complete list of all registered Emitters that can then be
-	 * automagically added to the generic parsing list.
+	 * Shared by every emitter which has no children, so that leaves don't
+	 * each carry an empty list.
 	 */
-	private static TreeMap<String, Class<? extends Emitter>> emitters;
+	protected static final List<Emitter> NO_CHILDREN =
+			Collections.<Emitter>emptyList();
 
 	/**
 	 * Creates a new Emitter with an empty child list.
@@ -69,19 +134,37 @@ public class Emitter {
 	 * @since 0.1
 	 */
 	private Emitter() {
-		children = new LinkedList<Emitter>();
+		children = NO_CHILDREN;
+		root = this;
 	}
 
 	/**
 	 * Creates a new Emitter with a parent node and XML contents.  Does
 	 * <i>not</i> parse it.
 	 *
-	 * @since 0.1
+	 * @since 0.2
 	 */
-	public Emitter(Emitter parent, Node contents) {
+	public Emitter(Emitter parent, Markup contents) {
 		this();
 		this.contents = contents;
 		this.parent = parent;
+		if(parent!=null) {
+			root = parent.root;
+			root.getIndex().add(this);
+		}
+	}
+
+	/**
+	 * Creates a new Emitter with a parent node and a DOM node as its
+	 * contents.  Does <i>not</i> parse it.
+	 *
+	 * @deprecated tags are made with <code>Markup</code> now; see above for
+	 *		moving them over.
+	 * @since 0.1
+	 */
+	@Deprecated
+	public Emitter(Emitter parent, Node contents) {
+		this(parent, contents==null ? null : new DomMarkup(contents));
 	}
 
 	/**
@@ -98,16 +181,28 @@ public class Emitter {
 	 * @since 0.1
 	 */
 	public void setParent(Emitter parent) {
+		if(this.parent!=null)
+			this.parent.invalidate();
 		this.parent = parent;
+		setRoot(parent==null ? this : parent.root);
+		invalidate();
+	}
+
+	private void setRoot(Emitter root) {
+		this.root = root;
+		for(Emitter em:children)
+			em.setRoot(root);
 	}
 
 	/**
-	 * A list of all the Emitter's child nodes.
+	 * A list of all the Emitter's child nodes.  The list can't be changed;
+	 * use <code>appendChild</code> or <code>setChildren</code> instead.
 	 *
 	 * @since 0.1
 	 */
 	public List<Emitter> getChildren() {
-		return children;
+		return children==NO_CHILDREN ? NO_CHILDREN
+				: Collections.unmodifiableList(children);
 	}
 	/**
 	 * Set all the Emitter's child nodes all at once.  This operation is
@@ -116,11 +211,11 @@ public class Emitter {
 	 * @since 0.1
 	 */
 	public void setChildren(List<Emitter> children) {
-		if(children instanceof LinkedList) {
-			this.children = (LinkedList<Emitter>)children;
-		} else {
-			this.children = new LinkedList<Emitter>(children);
-		}
+		invalidate();
+		if(children.isEmpty())
+			this.children = NO_CHILDREN;
+		else
+			this.children = new ArrayList<Emitter>(children);
 	}
 
 	/**
@@ -129,24 +224,73 @@ public class Emitter {
 	 * @since 0.1
 	 */
 	public void appendChild(Emitter child) {
+		invalidate();
+		if(children==NO_CHILDREN)
+			children = new ArrayList<Emitter>(4);
 		children.add(child);
 	}
 
+	/**
+	 * Lets go of the markup this emitter and everything underneath it were
+	 * parsed from, and trims their child lists to size.  A root also lets its
+	 * index drop the list of every emitter until it is asked for.  Markup
+	 * read from a DOM tree holds on to the whole tree, so this is worth doing
+	 * before a parsed document is kept around, for instance in a cache.
+	 * Afterwards <code>getContents</code> returns <code>null</code> and the
+	 * document can still be emitted, but not parsed again.
+	 *
+	 * @since 0.2
+	 */
+	public void compact() {
+		contents = null;
+		trimChildren();
+		for(Emitter em:children)
+			em.compact();
+		if(index!=null)
+			index.compact();
+	}
+
 	/**
 	 * Get the XML contents of this node.
 	 *
-	 * @since 0.1
+	 * @since 0.2
 	 */
-	public Node getContents() {
+	public Markup getMarkup() {
 		return contents;
 	}
 
 	/**
 	 * Set the XML contents of this node.  Generally discouraged.
+	 *
+	 * @since 0.2
+	 */
+	public void setMarkup(Markup contents) {
+		this.contents = contents;
+	}
+
+	/**
+	 * The DOM node this emitter was made from, or <code>null</code> if it
+	 * was parsed some other way, such as off of a streaming parser.
+	 *
+	 * @deprecated use <code>getMarkup</code>.
+	 * @since 0.1
+	 */
+	@Deprecated
+	public Node getContents() {
+		return contents instanceof DomMarkup
+				? ((DomMarkup)contents).getNode() : null;
+	}
+
+	/**
+	 * Set the XML contents of this node to a DOM node.  Generally
+	 * discouraged.
+	 *
+	 * @deprecated use <code>setMarkup</code>.
 	 * @since 0.1
 	 */
+	@Deprecated
 	public void setContents(Node contents) {
-		this.contents = contents;
+		setMarkup(contents==null ? null : new DomMarkup(contents));
 	}
 
 	/**
@@ -158,126 +302,344 @@ public class Emitter {
 	 * @since 0.1
 	 */
 	public Emitter parse() {
-		NodeList nl = contents.getChildNodes();
-
-		for(int i = 0; i!=nl.getLength(); i++) {
-			appendChild(Emitter.parse(this, nl.item(i)));
+		Emitter em;
+		invalidate();
+		for(Markup m:contents.getChildren()) {
+			em = Emitter.parse(this, m);
+			if(em!=null)
+				appendChild(em);
 		}
+		trimChildren();
 
 		return this;
 	}
 
+	/**
+	 * Trims the child list to size once it is complete.
+	 */
+	void trimChildren() {
+		if(children instanceof ArrayList)
+			((ArrayList<Emitter>)children).trimToSize();
+	}
+
 	/**
 	 * Used by <code>Emitter</code>s to report problems that aren't caught by
-	 * the XML parser.
+	 * the XML parser.  Only the key is kept; the message is looked up in the
+	 * language's bundle when someone reads it.
 	 *
-	 * @param localizedProblem the text in a resource bundle.
+	 * @param localizedProblem the key of the text in a resource bundle.
+	 * @param args filled into the text with <code>MessageFormat</code>.
 	 * @since 0.1
 	 */
-	protected void reportProblem(String localizedProblem) {
-		getRootEmitter().appendProblem(
-						new NonfatalException(this, ResourceBundle
-						.getBundle((String)getConfig().get("lang"))
-						.getString(localizedProblem)));
+	protected void reportProblem(String localizedProblem, Object... args) {
+		getRootEmitter().appendProblem(new NonfatalException(this,
+				getOptions(), localizedProblem, args));
 	}
 
 	/**
 	 * The default parser.  Differentiates between all known nodes specified by
 	 * <code>getEmitters</code>.
 	 *
-	 * @since 0.1
+	 * @since 0.2
 	 */
-	public static Emitter parse(Emitter parent, Node n) {
-		int type = n.getNodeType();
-
-        switch (type) {
-        case Node.ELEMENT_NODE:
-			// run through the supported tags and macros
-			Class c = null;
+	public static Emitter parse(Emitter parent, Markup n) {
+		if(n.isText())
+			return new Text(parent, n);
 
-			c = getEmitters().get(n.getNodeName());
+		// run through the supported tags and macros
+		EmitterFactory factory = dialectFor(parent).get(n.getName());
 
-			if(c == null) {
-				return new Emitter(parent, n).parse();
-			}
+		if(factory == null) {
+			return new Emitter(parent, n).parse();
+		}
 
-			try {
-				try {
-					return ((Emitter)c.getConstructor(
-							Emitter.class,
-							Node.class).newInstance(parent, n)).parse();
-				} catch (InstantiationException ex) {
-					Logger.getLogger(Emitter.class.getName()).log(
-							Level.SEVERE, null, ex);
-				} catch (IllegalAccessException ex) {
-					Logger.getLogger(Emitter.class.getName()).log(
-							Level.SEVERE, null, ex);
-				} catch (IllegalArgumentException ex) {
-					Logger.getLogger(Emitter.class.getName()).log(
-							Level.SEVERE, null, ex);
-				} catch (InvocationTargetException ex) {
-					Logger.getLogger(Emitter.class.getName()).log(
-							Level.SEVERE, null, ex);
-				}
-			} catch (NoSuchMethodException ex) {
-				Logger.getLogger(Emitter.class.getName()).log(Level.SEVERE,
-						"Apparently we lost a constructor in there " +
-						"somewhere.", ex);
-			} catch (SecurityException ex) {
-				Logger.getLogger(Emitter.class.getName()).log(Level.SEVERE,
-						"I haven't got a clue how to respond to this", ex);
-			}
+		Emitter em = factory.newEmitter(parent, n);
+		if(em==null)
+			return null;
+		Emitter parsed = em.parse();
+		if(parsed==null)
+			em.getIndex().remove(em);
+		return parsed;
+	}
 
-            break;
-        case Node.TEXT_NODE:
-            return new Text(parent, n);
-        default:
-            // it gets ignored
-            break;
-        }
+	/**
+	 * Parses a DOM node underneath <code>parent</code>.
+	 *
+	 * @deprecated use <code>parse(Emitter, Markup)</code>.
+	 * @since 0.1
+	 */
+	@Deprecated
+	public static Emitter parse(Emitter parent, Node n) {
+		return parse(parent, new DomMarkup(n));
+	}
 
-		return null;
+	/**
+	 * The tags to parse with underneath the given parent.  Documents carry
+	 * the dialect they started parsing with; loose emitters use the global
+	 * one.
+	 */
+	private static Dialect dialectFor(Emitter parent) {
+		Emitter root = parent==null ? null : parent.getRootEmitter();
+		if(root instanceof FSCode)
+			return ((FSCode)root).getDialect();
+		return getGlobalDialect();
 	}
 
 	/**
-	 * Anti-null accessor to the <code>XPathFactory</code>.
+	 * Anti-null accessor to this thread's <code>XPathFactory</code>.
 	 * 
 	 * @since 0.1
 	 */
 	protected static XPathFactory getQueryFactory() {
-		if(queryFactory==null)
-			queryFactory = XPathFactory.newInstance();
-		return queryFactory;
+		return queryFactory.get();
 	}
 
 	/**
-	 * Finds the root emitter in the current Emitter tree.  Note that if the
-	 * root node has itself as its parent and not <code>null</code> then this
-	 * will infinitely loop.
+	 * Finds the root emitter in the current Emitter tree.  This is remembered
+	 * when the emitter is created or given a new parent, so it costs nothing
+	 * to call.
 	 * 
 	 * @since 0.1
 	 */
 	public Emitter getRootEmitter() {
-		if(getParent()!=null)
-			return getParent().getRootEmitter();
-		else
-			return this;
+		return root;
 	}
 
 	/**
-	 * Get an ordered list of all child emitters to this node.
+	 * The index of every emitter created underneath this one's root while
+	 * parsing.  Emitters put together by hand with <code>setParent</code> and
+	 * <code>appendChild</code> are not in it.
 	 *
+	 * @since 0.2
+	 */
+	public DocumentIndex getIndex() {
+		if(root!=this)
+			return root.getIndex();
+		if(index==null)
+			index = new DocumentIndex(this);
+		return index;
+	}
+
+	/**
+	 * Indexes this root's tree again from scratch, in document order, after
+	 * parts of it have been swapped out.
+	 */
+	void rebuildIndex() {
+		DocumentIndex fresh = new DocumentIndex(this);
+		for(Emitter em:getDescendants())
+			fresh.add(em);
+		index = fresh;
+	}
+
+	/**
+	 * Get an ordered list of all child emitters to this node.  This copies
+	 * the tree; <code>getDescendants</code> walks it without copying.
+	 *
+	 * @see #getDescendants()
 	 * @since 0.1
 	 */
 	public LinkedList<Emitter> getAllChildEmitters() {
 		LinkedList<Emitter> childEmitters = new LinkedList<Emitter>();
-
-		for(Emitter em:getChildren()) {
+		for(Emitter em:getDescendants())
 			childEmitters.add(em);
-			childEmitters.addAll(em.getAllChildEmitters());
+		return childEmitters;
+	}
+
+	/**
+	 * Every emitter underneath this one, in document order, walked lazily.
+	 *
+	 * @since 0.2
+	 */
+	public Iterable<Emitter> getDescendants() {
+		return new Iterable<Emitter>() {
+			public Iterator<Emitter> iterator() {
+				return new PreorderIterator(Emitter.this, false);
+			}
+		};
+	}
+
+	/**
+	 * Every emitter of the given type underneath this one, in document order,
+	 * walked lazily.
+	 *
+	 * @since 0.2
+	 */
+	public <T> Iterable<T> getDescendants(final Class<T> type) {
+		return new Iterable<T>() {
+			public Iterator<T> iterator() {
+				final Iterator<Emitter> all =
+						new PreorderIterator(Emitter.this, false);
+				return new Iterator<T>() {
+					private T next;
+
+					public boolean hasNext() {
+						Emitter em;
+						while(next==null&&all.hasNext()) {
+							em = all.next();
+							if(type.isInstance(em))
+								next = type.cast(em);
+						}
+						return next!=null;
+					}
+
+					public T next() {
+						if(!hasNext())
+							throw new NoSuchElementException();
+						T found = next;
+						next = null;
+						return found;
+					}
+
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * Every emitter underneath this one as a stream, in document order.  A
+	 * parallel stream is split between subtrees.
+	 *
+	 * @since 0.2
+	 */
+	public Stream<Emitter> streamDescendants() {
+		return StreamSupport.stream(new PreorderSpliterator(children, 0,
+				children.size()), false);
+	}
+
+	/**
+	 * Walks this emitter and everything underneath it in document order,
+	 * until the visitor says to stop.  Returns <code>false</code> if it did.
+	 *
+	 * @since 0.2
+	 */
+	public boolean accept(EmitterVisitor visitor) {
+		PreorderIterator it = new PreorderIterator(this, true);
+		while(it.hasNext()) {
+			switch(visitor.visit(it.next())) {
+				case STOP:
+					return false;
+				case SKIP_CHILDREN:
+					it.skipChildren();
+					break;
+				default:
+					break;
+			}
 		}
+		return true;
+	}
 
-		return childEmitters;
+	/**
+	 * Writes the HTML for each child that is an <code>HtmlEmitter</code>, in
+	 * order, to <code>out</code>.
+	 *
+	 * @since 0.2
+	 */
+	protected void emitChildrenHtml(Appendable out) throws IOException {
+		for(Emitter em:children)
+			emitChildHtml(em, out);
+	}
+
+	/**
+	 * Writes the HTML for one child, if it is an <code>HtmlEmitter</code>.
+	 * Tags which pick out their children themselves should use this rather
+	 * than calling <code>emitHtml</code> on them, so that static children
+	 * are only rendered once.
+	 *
+	 * A static subtree is written straight to <code>out</code> the first
+	 * time; from the second time on its HTML is kept and copied out as is.
+	 * Only the largest static subtrees keep their HTML, so nothing is kept
+	 * twice.
+	 *
+	 * @see #isStatic()
+	 * @since 0.2
+	 */
+	protected void emitChildHtml(Emitter child, Appendable out)
+			throws IOException {
+		if(!(child instanceof HtmlEmitter))
+			return;
+		String html = child.fragment;
+		if(html!=null) {
+			out.append(html);
+			return;
+		}
+		// our own HTML is being kept further up, so the child's isn't
+		boolean keep = child.emitted&&child.isStaticSubtree()
+				&&!(parent!=null&&isStaticSubtree());
+		if(keep) {
+			html = ((HtmlEmitter)child).emitHtml().toString();
+			child.fragment = html;
+			out.append(html);
+		} else {
+			((HtmlEmitter)child).emitHtml(out);
+			child.emitted = true;
+		}
+	}
+
+	/**
+	 * Whether this emitter's HTML depends on nothing but what was parsed into
+	 * it and on its children, so that it comes out the same every time it is
+	 * emitted.  Emitters whose HTML depends on the rest of the document or on
+	 * anything outside it, such as a table of contents or a wiki link,
+	 * return <code>false</code>, and so does this default, so a tag is
+	 * always emitted afresh unless it says otherwise.
+	 *
+	 * @since 0.2
+	 */
+	public boolean isStatic() {
+		return false;
+	}
+
+	/**
+	 * Whether parsing this emitter depends on the emitters before it, or
+	 * parsing later ones depends on it, as with titles, headings and tables
+	 * of contents.  An incremental parse which would add or take away one of
+	 * these parses the whole document again instead.
+	 *
+	 * @see IncrementalDocument
+	 * @since 0.2
+	 */
+	public boolean isPositional() {
+		return false;
+	}
+
+	/**
+	 * Whether this emitter and everything underneath it is static.
+	 *
+	 * @since 0.2
+	 */
+	public boolean isStaticSubtree() {
+		Boolean b = staticSubtree;
+		if(b==null) {
+			b = isStatic();
+			if(b)
+				for(Emitter em:children)
+					if(!em.isStaticSubtree()) {
+						b = false;
+						break;
+					}
+			staticSubtree = b;
+		}
+		return b;
+	}
+
+	/**
+	 * Forgets the HTML kept for this emitter and everything above it.  Tags
+	 * call this when something they emit changes after they were parsed;
+	 * changes to the tree itself do so on their own.
+	 *
+	 * @since 0.2
+	 */
+	public void invalidate() {
+		for(Emitter em = this;em!=null;em = em.parent) {
+			// nothing above was worked out from an emitter with nothing kept
+			if(em!=this&&em.fragment==null&&em.staticSubtree==null)
+				break;
+			em.fragment = null;
+			em.staticSubtree = null;
+		}
 	}
 
 	/**
@@ -311,73 +673,145 @@ public class Emitter {
 	}
 
 	/**
-	 * Gets the configuration mapping for this node.
+	 * Gets the configuration mapping for this node, which unless it has one
+	 * of its own is its root's.
 	 *
+	 * @see #getOptions()
 	 * @since 0.1
 	 */
 	public Map<String, Object> getConfig() {
 		if(config == null)
-			if(parent!=null)
-				return parent.getConfig();
+			if(root!=this)
+				return root.getConfig();
 			else
 				return null;
 		return config;
 	}
 
+	/**
+	 * The root's configuration, checked and compiled.  The root compiles its
+	 * configuration map the first time this is called, unless it was given
+	 * compiled options to begin with.
+	 *
+	 * @throws IllegalArgumentException if the configuration is invalid.
+	 * @since 0.2
+	 */
+	public RenderOptions getOptions() {
+		if(root!=this)
+			return root.getOptions();
+		if(options==null)
+			options = config==null ? RenderOptions.DEFAULT
+					: RenderOptions.fromMap(config);
+		return options;
+	}
+
+	/**
+	 * Gives a root compiled options along with the matching map.
+	 */
+	void setOptions(RenderOptions options) {
+		this.options = options;
+		this.config = options.asMap();
+	}
+
+	/**
+	 * The global dialect, which documents are parsed with unless they are
+	 * given another one.
+	 *
+	 * @since 0.2
+	 */
+	public static Dialect getGlobalDialect() {
+		return dialect;
+	}
+
+	/**
+	 * Replaces the global dialect.  Documents which are already being parsed
+	 * keep the dialect they started with.
+	 *
+	 * @since 0.2
+	 */
+	public static synchronized void setGlobalDialect(Dialect dialect) {
+		if(dialect==null)
+			throw new IllegalArgumentException("dialect must not be null");
+		Emitter.dialect = dialect;
+	}
+
 	/**
 	 * Generally you should not deviate from the default Emitter list, however,
-	 * this is included so that you can use <code>getEmitters</code> to take
-	 * a snapshot of the Emitter list before you reset it.  In that way you
-	 * could toggle between different parsing modes for different modules, such
-	 * as a forum and a wiki.
+	 * this is included so that you can use <code>getEmitterFactories</code>
+	 * to take a snapshot of the Emitter list before you reset it.  In that way
+	 * you could toggle between different parsing modes for different modules,
+	 * such as a forum and a wiki.  Rather than toggling one global list, give
+	 * each module its own <code>Dialect</code> and <code>FSCodeEngine</code>.
+	 *
+	 * @see #setGlobalDialect(fscode.Dialect)
+	 * @since 0.2
+	 */
+	public static void setEmitterFactories(
+			TreeMap<String, EmitterFactory> emitters) {
+		setGlobalDialect(Dialect.of(emitters));
+	}
+
+	/**
+	 * A snapshot of all emitters and what tags they are bound to.  Changing
+	 * it does not change the global dialect.
 	 *
+	 * @since 0.2
+	 */
+	public static TreeMap<String, EmitterFactory> getEmitterFactories() {
+		return new TreeMap<String, EmitterFactory>(
+				getGlobalDialect().asMap());
+	}
+
+	/**
+	 * Replaces the global dialect with one made from emitter classes.  Every
+	 * class needs a public <code>(Emitter, Markup)</code> constructor.
+	 *
+	 * @throws IllegalArgumentException if one of them doesn't have one.
+	 * @deprecated use <code>setEmitterFactories</code> or
+	 *		<code>setGlobalDialect</code>.
 	 * @since 0.1
 	 */
+	@Deprecated
 	public static void setEmitters(
 			TreeMap<String, Class<? extends Emitter>> emitters) {
-		Emitter.emitters = emitters;
+		TreeMap<String, EmitterFactory> factories =
+				new TreeMap<String, EmitterFactory>();
+		for(Map.Entry<String, Class<? extends Emitter>> e:emitters.entrySet())
+			factories.put(e.getKey(), EmitterFactory.forClass(e.getValue()));
+		setEmitterFactories(factories);
 	}
 
 	/**
-	 * A map of all emitters and what tags they are bound to.
+	 * A snapshot of the emitter classes bound to each tag.  Tags whose
+	 * factory doesn't say what class it makes, such as a lambda, are left
+	 * out.
 	 *
+	 * @see EmitterFactory#getEmitterClass()
+	 * @deprecated use <code>getEmitterFactories</code>.
 	 * @since 0.1
 	 */
+	@Deprecated
 	public static TreeMap<String, Class<? extends Emitter>> getEmitters() {
-		if(emitters==null) {
-			emitters = new TreeMap<String, Class<? extends Emitter>>();
-			// list of all default emitters
-			emitters.put("b", Bold.class);
-			emitters.put("i", Italic.class);
-			emitters.put("h", Heading.class);
-			emitters.put("h1", Heading.class);
-			emitters.put("h2", Heading.class);
-			emitters.put("h3", Heading.class);
-			emitters.put("h4", Heading.class);
-			emitters.put("h5", Heading.class);
-			emitters.put("h6", Heading.class);
-			emitters.put("center", Center.class);
-			emitters.put("title", Title.class);
-			emitters.put("super", Super.class);
-			emitters.put("sub", Sub.class);
-			emitters.put("br", Break.class);
-			emitters.put("code", Code.class);
-			emitters.put("link", InternalLink.class);
-			emitters.put("url", ExternalLink.class);
-			emitters.put("table", Table.class);
-			emitters.put("row", Row.class);
-			emitters.put("cell", Cell.class);
-			emitters.put("image", EmbeddedImage.class);
-			emitters.put("macro:toc", TOCMacro.class);
+		TreeMap<String, Class<? extends Emitter>> classes =
+				new TreeMap<String, Class<? extends Emitter>>();
+		Class<? extends Emitter> c;
+		for(Map.Entry<String, EmitterFactory> e:
+				getGlobalDialect().asMap().entrySet()) {
+			c = e.getValue().getEmitterClass();
+			if(c!=null)
+				classes.put(e.getKey(), c);
 		}
- 		return emitters;
+		return classes;
 	}
 
 	/**
-	 * Add your own custom emitter to the default parser.
+	 * Add your own custom emitter to the default parser.  The class needs a
+	 * public constructor taking an <code>Emitter</code> and a
+	 * <code>Markup</code>.
 	 *
 	 * @throws fscode.EmitterAlreadyRegisteredForTagNameException if you attempt
 	 *		to bind an Emitter to a tag that is already in use.
+	 * @see EmitterFactory#forClass(java.lang.Class)
 	 * @since 0.1
 	 */
 	public static void addEmitter(
@@ -385,9 +819,25 @@ public class Emitter {
 			Class<? extends Emitter> emitter)
 		throws
 			EmitterAlreadyRegisteredForTagNameException {
-		if(getEmitters().containsKey(tagName))
+		addEmitter(tagName, EmitterFactory.forClass(emitter));
+	}
+
+	/**
+	 * Add your own custom emitter to the default parser, created by
+	 * <code>factory</code>.
+	 *
+	 * @throws fscode.EmitterAlreadyRegisteredForTagNameException if you attempt
+	 *		to bind an Emitter to a tag that is already in use.
+	 * @since 0.2
+	 */
+	public static synchronized void addEmitter(
+			String tagName,
+			EmitterFactory emitter)
+		throws
+			EmitterAlreadyRegisteredForTagNameException {
+		if(dialect.contains(tagName))
 			throw new EmitterAlreadyRegisteredForTagNameException();
-		getEmitters().put(tagName, emitter);
+		dialect = dialect.with(tagName, emitter);
 	}
 
 	/**
@@ -395,8 +845,8 @@ public class Emitter {
 	 *
 	 * @since 0.1
 	 */
-	public static void resetEmitterList() {
-		emitters=null;
+	public static synchronized void resetEmitterList() {
+		dialect = Dialect.DEFAULT;
 	}
 
 }
@@ -0,0 +1,102 @@
+package fscode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Creates the <code>Emitter</code> for a tag.  Usually this is just the
+ * emitter's constructor, as in <code>Bold::new</code>.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+public interface EmitterFactory {
+
+	/**
+	 * Creates an unparsed emitter for <code>contents</code>.
+	 *
+	 * @since 0.2
+	 */
+	public Emitter newEmitter(Emitter parent, Markup contents);
+
+	/**
+	 * The class of the emitters this makes, or <code>null</code> if that
+	 * isn't known, which is the case for lambdas and constructor references.
+	 * Only the deprecated <code>Emitter.getEmitters</code> needs it.
+	 *
+	 * @since 0.2
+	 */
+	public default Class<? extends Emitter> getEmitterClass() {
+		return null;
+	}
+
+	/**
+	 * A factory which says it makes <code>c</code> but leaves making them to
+	 * <code>factory</code>, such as <code>Bold::new</code>.
+	 *
+	 * @since 0.2
+	 */
+	public static EmitterFactory forClass(final Class<? extends Emitter> c,
+			final EmitterFactory factory) {
+		return new EmitterFactory() {
+			public Emitter newEmitter(Emitter parent, Markup contents) {
+				return factory.newEmitter(parent, contents);
+			}
+
+			@Override
+			public Class<? extends Emitter> getEmitterClass() {
+				return c;
+			}
+		};
+	}
+
+	/**
+	 * A factory which calls the <code>(Emitter, Markup)</code> constructor of
+	 * <code>c</code>.  The constructor is looked up once, here, rather than
+	 * every time a tag is parsed.
+	 *
+	 * @throws IllegalArgumentException if <code>c</code> has no public
+	 *		constructor taking an <code>Emitter</code> and a
+	 *		<code>Markup</code>.
+	 * @since 0.2
+	 */
+	public static EmitterFactory forClass(final Class<? extends Emitter> c) {
+		final MethodHandle constructor;
+		try {
+			constructor = MethodHandles.publicLookup().findConstructor(c,
+					MethodType.methodType(void.class, Emitter.class,
+					Markup.class)).asType(MethodType.methodType(
+					Emitter.class, Emitter.class, Markup.class));
+		} catch (NoSuchMethodException ex) {
+			throw new IllegalArgumentException(c.getName()
+					+ " has no (Emitter, Markup) constructor", ex);
+		} catch (IllegalAccessException ex) {
+			throw new IllegalArgumentException(c.getName()
+					+ " has no public (Emitter, Markup) constructor", ex);
+		}
+		return new EmitterFactory() {
+			public Emitter newEmitter(Emitter parent, Markup contents) {
+				try {
+					return (Emitter)constructor.invokeExact(parent, contents);
+				} catch (RuntimeException ex) {
+					throw ex;
+				} catch (Error ex) {
+					throw ex;
+				} catch (Throwable ex) {
+					Logger.getLogger(EmitterFactory.class.getName()).log(
+							Level.SEVERE, null, ex);
+					return null;
+				}
+			}
+
+			@Override
+			public Class<? extends Emitter> getEmitterClass() {
+				return c;
+			}
+		};
+	}
+
+}
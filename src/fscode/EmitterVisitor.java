@@ -0,0 +1,34 @@
+package fscode;
+
+/**
+ * Called for each emitter in a tree, in document order, by
+ * <code>Emitter.accept</code>.
+ *
+ * @see Emitter#accept(fscode.EmitterVisitor)
+ * @author cmiller
+ * @since 0.2
+ */
+public interface EmitterVisitor {
+
+	/**
+	 * What to do after visiting an emitter.
+	 *
+	 * @since 0.2
+	 */
+	public enum Result {
+		/** Go on to the emitter's children, then the rest of the tree. */
+		CONTINUE,
+		/** Leave out the emitter's children but go on with the rest. */
+		SKIP_CHILDREN,
+		/** Stop the walk altogether. */
+		STOP
+	}
+
+	/**
+	 * Visits one emitter.
+	 *
+	 * @since 0.2
+	 */
+	public Result visit(Emitter em);
+
+}
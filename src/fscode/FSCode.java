@@ -1,9 +1,21 @@
 package fscode;
 
+import fscode.exception.MalformedMarkupException;
+import fscode.tags.InternalLink;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.TreeMap;
 import java.util.Map;
 import java.util.logging.Level;
@@ -11,11 +23,14 @@ import java.util.logging.Logger;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
@@ -54,11 +69,12 @@ import org.xml.sax.SAXException;
  *	</tr>
  *	<tr>
  *		<td><code>isWiki</code></td>
- *		<td><code>java.lang.String</code></td>
+ *		<td><code>java.lang.String</code> or <code>java.lang.Boolean</code>
+ *			</td>
  *		<td><code>{YES|NO|TRUE|FALSE}</code></td>
  *		<td>Defines whether or not the parsed FSCode is part of a wiki
  *			on an Internet site.  This affects some link tags.  Defaults to
- *			<code>NO</code>.  This is case-sensitive.</td>
+ *			<code>NO</code>.  This is not case-sensitive.</td>
  *	</tr>
  *	<tr>
  *		<td><code>wikiProviders</code></td>
@@ -68,19 +84,37 @@ import org.xml.sax.SAXException;
  *			the wiki</center></i></td>
  *		<td>A list of wikis that the FSCode parser will be aware of.  This
  *			affects the behavior of some tags.  The <code>WikiProvider</code>
- *			that represents the current wiki will be at "" in the map.</td>
+ *			that represents the current wiki will be at "" in the map.
+ *			<code>CachingWikiProvider.wrapAll</code> puts a cache in front
+ *			of each of them.</td>
  *	</tr>
  *	<tr>
  *		<td><code>forbiddenLinks</code></td>
- *		<td><code>java.util.Collection&lt;String&gt;</code></td>
+ *		<td><code>java.util.Collection&lt;String&gt;</code> or
+ *			<code>fscode.LinkPolicy</code></td>
  *		<td><i><center>collection of regular expressions defining urls that
  *			may not be linked to</center></i></td>
  *		<td>A collection of regular expressions that define URLs that will be
  *			specifically prevented from appearing.  Useful for preventing spam
- *			or other such activities.</td>
+ *			or other such activities.  A compiled <code>LinkPolicy</code> can
+ *			be given instead, to share one between engines.</td>
  *	</tr>
  * </table>
  *
+ * The map is checked and compiled into <code>RenderOptions</code> once per
+ * document, or once per <code>FSCodeEngine</code>, and an
+ * <code>IllegalArgumentException</code> is thrown if a setting is invalid.
+ *
+ * <br/>
+ *
+ * <b>STREAMING</b>:
+ *
+ * The constructors build a DOM tree of the whole document before
+ * <code>parse()</code> turns it into a tree of <code>Emitter</code>s.  If you
+ * do not need the DOM tree, <code>FSCode.parseStream</code> builds the
+ * <code>Emitter</code> tree straight off of a StAX parser instead, which only
+ * keeps one copy of the document in memory.
+ *
  * <br/>
  *
  * <b>TROUBLESHOOTING</b>:
@@ -97,16 +131,72 @@ import org.xml.sax.SAXException;
 public class FSCode extends Emitter implements HtmlEmitter {
 
 	/**
-	 * Static document builder so that we don't have massive garbage collection
-	 * problems associated with tons of document builders lying around.
+	 * One document builder per thread so that we don't have massive garbage
+	 * collection problems associated with tons of document builders lying
+	 * around, and so that two threads never parse with the same one.
 	 */
-	private static DocumentBuilder docBuilder;
+	private static final ThreadLocal<DocumentBuilder> docBuilder =
+			new ThreadLocal<DocumentBuilder>() {
+		@Override
+		protected DocumentBuilder initialValue() {
+			try {
+				return DocumentBuilderFactory.newInstance()
+						.newDocumentBuilder();
+			} catch (ParserConfigurationException ex) {
+				Logger.getLogger(FSCode.class.getName())
+						.log(Level.SEVERE, "Unable to create a new document" +
+						"builder, which is strange and not supposed to happen",
+						ex);
+				return null;
+			}
+		}
+	};
 
 	/**
 	 * Precompiled XPath query for accessing the child nodes of the root
-	 * <code>fscode</code> tag.
+	 * <code>fscode</code> tag.  Compiled expressions are not thread-safe, so
+	 * every thread gets its own.
+	 */
+	private static final ThreadLocal<XPathExpression> rootXPath =
+			new ThreadLocal<XPathExpression>() {
+		@Override
+		protected XPathExpression initialValue() {
+			try {
+				return getQueryFactory().newXPath().compile("//fscode");
+			} catch (XPathExpressionException ex) {
+				Logger.getLogger(FSCode.class.getName()).log(Level.SEVERE,
+						"Apparently my query is bogus", ex);
+				return null;
+			}
+		}
+	};
+
+	/**
+	 * Factory for the streaming parsers used by <code>parseStream</code>, one
+	 * per thread.  Namespaces are turned off so that tags like
+	 * <code>macro:toc</code> come through with their whole name, the same as
+	 * they do from the document builder.
+	 */
+	private static final ThreadLocal<XMLInputFactory> inputFactory =
+			new ThreadLocal<XMLInputFactory>() {
+		@Override
+		protected XMLInputFactory initialValue() {
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE,
+					Boolean.FALSE);
+			factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+			return factory;
+		}
+	};
+
+	/**
+	 * The tags this document is parsed with.  Taken from the global dialect
+	 * the first time it is needed if it was not given up front.
+	 *
+	 * @see FSCodeEngine
 	 */
-	private static XPathExpression rootXPath;
+	private Dialect dialect;
 
 	/**
 	 * Default constructor nulls out or empty-initializes everything.
@@ -114,11 +204,19 @@ public class FSCode extends Emitter implements HtmlEmitter {
 	 * @since 0.1
 	 */
 	private FSCode() {
-		super(null, null);
-		config = new TreeMap<String, Object>();
+		super(null, (Markup)null);
+		config = defaultConfig();
+	}
+
+	/**
+	 * A fresh copy of the configuration used when none is given.
+	 */
+	static Map<String, Object> defaultConfig() {
+		Map<String, Object> config = new TreeMap<String, Object>();
 			config.put("isWiki", "NO");
 			config.put("lang", "en_us");
 			config.put("tagset", "default_tagset");
+		return config;
 	}
 
 	/**
@@ -132,8 +230,7 @@ public class FSCode extends Emitter implements HtmlEmitter {
 	public FSCode(String code) throws SAXException {
 		this();
 		try {
-			contents = getDocBuilder().parse(new InputSource(
-					new StringReader(code.replaceAll("&", "&amp;"))));
+			load(new StringReader(code));
 		} catch (IOException ex) {
 			Logger.getLogger(FSCode.class.getName()).log(Level.SEVERE,
 					"Since it's just a stupid iterator wrapper around" +
@@ -154,6 +251,7 @@ public class FSCode extends Emitter implements HtmlEmitter {
 
 	/**
 	 * Yet another constructor that supports reading the FSCode from a file.
+	 * The file is read as UTF-8.
 	 *
 	 * @throws org.xml.sax.SAXException If there is an error parsing the XML.
 	 * @since 0.1
@@ -161,25 +259,79 @@ public class FSCode extends Emitter implements HtmlEmitter {
 	public FSCode(File f) throws SAXException {
 		this();
 		try {
-			StringBuffer sb = new StringBuffer();
-			int tmp;
-			FileInputStream in = new FileInputStream(f);
-			while(in.available()>0) {
-				tmp = in.read();
-				if(tmp=='&')
-					sb.append("&amp;");
-				else
-					sb.append(((char)tmp));
-
-			}
-			contents = getDocBuilder().parse(new InputSource(
-					new StringReader(sb.toString())));
+			load(f.toPath(), StandardCharsets.UTF_8);
 		} catch (IOException ex) {
 			Logger.getLogger(FSCode.class.getName()).log(Level.SEVERE,
 					"Reading from file failed.", ex);
 		}
 	}
 
+	/**
+	 * Reads the FSCode from a file in the given encoding.
+	 *
+	 * @throws org.xml.sax.SAXException If there is an error parsing the XML.
+	 * @throws IOException if the file can't be read.
+	 * @since 0.2
+	 */
+	public FSCode(File f, Charset cs) throws SAXException, IOException {
+		this(f.toPath(), cs);
+	}
+
+	/**
+	 * Reads the FSCode from a file in the given encoding.  The file is fed
+	 * to the parser through a buffer as it is decoded rather than being read
+	 * into memory first.
+	 *
+	 * @throws org.xml.sax.SAXException If there is an error parsing the XML.
+	 * @throws IOException if the file can't be read.
+	 * @since 0.2
+	 */
+	public FSCode(Path p, Charset cs) throws SAXException, IOException {
+		this();
+		load(p, cs);
+	}
+
+	/**
+	 * Reads the FSCode from a stream in the given encoding.  The stream is
+	 * not closed.
+	 *
+	 * @throws org.xml.sax.SAXException If there is an error parsing the XML.
+	 * @throws IOException if the stream does.
+	 * @since 0.2
+	 */
+	public FSCode(InputStream in, Charset cs)
+			throws SAXException, IOException {
+		this();
+		load(openReader(in, cs));
+	}
+
+	/**
+	 * Reads the FSCode from a channel in the given encoding.  The channel is
+	 * not closed.
+	 *
+	 * @throws org.xml.sax.SAXException If there is an error parsing the XML.
+	 * @throws IOException if the channel does.
+	 * @since 0.2
+	 */
+	public FSCode(ReadableByteChannel ch, Charset cs)
+			throws SAXException, IOException {
+		this();
+		load(openReader(ch, cs));
+	}
+
+	/**
+	 * Reads the FSCode from already decoded characters.  The reader is not
+	 * closed.
+	 *
+	 * @throws org.xml.sax.SAXException If there is an error parsing the XML.
+	 * @throws IOException if the reader does.
+	 * @since 0.2
+	 */
+	public FSCode(Reader in) throws SAXException, IOException {
+		this();
+		load(in);
+	}
+
 	/**
 	 * Creates a new FSCode parser from a <code>String</code> with the given
 	 * configuration settings.  May throw an exception if the XML is
@@ -211,27 +363,193 @@ public class FSCode extends Emitter implements HtmlEmitter {
 		this.config = config;
 	}
 
+	/**
+	 * @see FSCode#FSCode(java.nio.file.Path, java.nio.charset.Charset)
+	 * @since 0.2
+	 */
+	public FSCode(Path p, Charset cs, Map<String, Object> config)
+			throws SAXException, IOException {
+		this(p, cs);
+		this.config = config;
+	}
+
+	/**
+	 * @see FSCode#FSCode(java.io.InputStream, java.nio.charset.Charset)
+	 * @since 0.2
+	 */
+	public FSCode(InputStream in, Charset cs, Map<String, Object> config)
+			throws SAXException, IOException {
+		this(in, cs);
+		this.config = config;
+	}
+
+	/**
+	 * @see FSCode#FSCode(java.io.Reader)
+	 * @since 0.2
+	 */
+	public FSCode(Reader in, Map<String, Object> config)
+			throws SAXException, IOException {
+		this(in);
+		this.config = config;
+	}
+
+	/**
+	 * Builds the DOM tree from the reader, escaping ampersands on the way
+	 * through.
+	 */
+	private void load(Path p, Charset cs) throws SAXException, IOException {
+		ReadableByteChannel ch = Files.newByteChannel(p);
+		try {
+			load(openReader(ch, cs));
+		} finally {
+			ch.close();
+		}
+	}
+
+	private void load(Reader in) throws SAXException, IOException {
+		contents = findRoot(getDocBuilder().parse(new InputSource(
+				new AmpersandEscapingReader(in))));
+	}
+
+	/**
+	 * Decodes a stream, replacing anything which is not valid in the given
+	 * encoding rather than failing part of the way through.
+	 */
+	static Reader openReader(InputStream in, Charset cs) {
+		return new InputStreamReader(in, newDecoder(cs));
+	}
+
+	/**
+	 * Decodes a channel through a buffer, replacing anything which is not
+	 * valid in the given encoding rather than failing part of the way
+	 * through.
+	 */
+	static Reader openReader(ReadableByteChannel ch, Charset cs) {
+		return Channels.newReader(ch, newDecoder(cs), -1);
+	}
+
+	private static CharsetDecoder newDecoder(Charset cs) {
+		return cs.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Builds the <code>Emitter</code> tree straight off of a streaming parser,
+	 * without building a DOM tree or running any XPath queries first.  The
+	 * returned document has already been parsed.  The reader is not closed.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed or has no
+	 *		<code>fscode</code> tag in it.
+	 * @since 0.2
+	 */
+	public static FSCode parseStream(Reader in, Map<String, Object> config)
+			throws SAXException {
+		return parseStream(in, config, null);
+	}
+
+	/**
+	 * Streaming parse with the given dialect in place of the global one.
+	 *
+	 * @see #parseStream(java.io.Reader, java.util.Map)
+	 * @since 0.2
+	 */
+	public static FSCode parseStream(Reader in, Map<String, Object> config,
+			Dialect dialect)
+			throws SAXException {
+		return parseStream(in, config==null ? null
+				: RenderOptions.fromMap(config), dialect);
+	}
+
+	/**
+	 * Streaming parse with compiled options, which are not checked again,
+	 * and the given dialect in place of the global one.
+	 *
+	 * @see #parseStream(java.io.Reader, java.util.Map)
+	 * @since 0.2
+	 */
+	public static FSCode parseStream(Reader in, RenderOptions options,
+			Dialect dialect)
+			throws SAXException {
+		FSCode code = newRoot(options, dialect);
+		try {
+			XMLStreamReader reader = openStream(in);
+			try {
+				code.contents = StreamMarkup.find(reader, "fscode");
+				if(code.contents==null)
+					throw new SAXException(
+							"There is no fscode tag in the input");
+				code.parse();
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException ex) {
+			throw new SAXException(ex);
+		} catch (MalformedMarkupException ex) {
+			throw new SAXException((Exception)ex.getCause());
+		}
+		return code;
+	}
+
+	/**
+	 * An empty root which has not been given any markup yet.
+	 */
+	static FSCode newRoot(RenderOptions options, Dialect dialect) {
+		FSCode code = new FSCode();
+		if(options!=null)
+			code.setOptions(options);
+		code.dialect = dialect;
+		return code;
+	}
+
+	/**
+	 * A streaming parser on this thread's factory, escaping bare ampersands
+	 * on the way in.
+	 */
+	static XMLStreamReader openStream(Reader in) throws XMLStreamException {
+		return getInputFactory().createXMLStreamReader(
+				new AmpersandEscapingReader(in));
+	}
+
+	/**
+	 * @see #parseStream(java.io.Reader, java.util.Map)
+	 * @since 0.2
+	 */
+	public static FSCode parseStream(String code, Map<String, Object> config)
+			throws SAXException {
+		return parseStream(new StringReader(code), config);
+	}
+
 	/**
 	 * Overriden in order to break out of the <code>fscode</code> tag.
 	 */
 	@Override
 	public FSCode parse() {
+		if(contents==null) {
+			Logger.getLogger(FSCode.class.getName()).log(Level.SEVERE,
+					"There is no fscode tag in the input");
+			return null;
+		}
+		super.parse();
+
+		return this;
+	}
+
+	/**
+	 * Finds the <code>fscode</code> tag in a freshly built DOM tree.
+	 */
+	private static Markup findRoot(Document doc) {
 		Node fcontents = null;
 		try {
 			fcontents = (Node)getRootXPath()
-					.evaluate(contents, XPathConstants.NODE);
+					.evaluate(doc, XPathConstants.NODE);
 		} catch (XPathExpressionException ex) {
 			Logger.getLogger(FSCode.class.getName()).log(Level.SEVERE,
 					"There is no fscode tag in the input", ex);
-			return null;
 		}
-		NodeList nl = fcontents.getChildNodes();
-
-		for(int i = 0; i!=nl.getLength(); i++) {
-			appendChild(Emitter.parse(this, nl.item(i)));
-		}
-
-		return this;
+		if(fcontents==null)
+			return null;
+		return new DomMarkup(fcontents);
 	}
 
 	/**
@@ -239,46 +557,54 @@ public class FSCode extends Emitter implements HtmlEmitter {
 	 * it.
 	 */
 	private static XPathExpression getRootXPath() {
-		if(rootXPath == null) {
-			try {
-				rootXPath = getQueryFactory().newXPath().compile("//fscode");
-			} catch (XPathExpressionException ex) {
-				Logger.getLogger(FSCode.class.getName()).log(Level.SEVERE,
-						"Apparently my query is bogus", ex);
-			}
-		}
-		return rootXPath;
+		return rootXPath.get();
 	}
 
 	/**
+	 * The tags this document is parsed with.
+	 *
+	 * @since 0.2
+	 */
+	public Dialect getDialect() {
+		if(dialect==null)
+			dialect = getGlobalDialect();
+		return dialect;
+	}
+
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
+
+	/**
+	 * Wiki links are looked up in bulk first, where their wiki allows it.
+	 *
+	 * @see InternalLink#resolveAll(fscode.Emitter)
 	 * @since 0.1
 	 */
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
-		for(Emitter em:getChildren()) {
-			if(em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
+	public void emitHtml(Appendable out) throws IOException {
+		boolean resolved = getOptions().isWiki()
+				&&InternalLink.resolveAll(this);
+		try {
+			emitChildrenHtml(out);
+		} finally {
+			if(resolved)
+				InternalLink.forgetAll(this);
 		}
-		return emission;
 	}
 
 	/**
-	 * Static-singleton accessor to the document builder to prevent it from
-	 * being <code>null</code> when accessed.
+	 * Accessor to this thread's document builder.
 	 */
 	private static DocumentBuilder getDocBuilder() {
-		if(docBuilder == null) {
-			try {
-				docBuilder = DocumentBuilderFactory.newInstance()
-						.newDocumentBuilder();
-			} catch (ParserConfigurationException ex) {
-				Logger.getLogger(FSCode.class.getName())
-						.log(Level.SEVERE, "Unable to create a new document" +
-						"builder, which is strange and not supposed to happen",
-						ex);
-			}
-		}
-		return docBuilder;
+		return docBuilder.get();
+	}
+
+	/**
+	 * Accessor to this thread's streaming parser factory.
+	 */
+	private static XMLInputFactory getInputFactory() {
+		return inputFactory.get();
 	}
 
 }
@@ -0,0 +1,438 @@
+package fscode;
+
+import fscode.tags.InternalLink;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import org.xml.sax.SAXException;
+
+/**
+ * A reusable FSCode renderer which any number of threads may share.
+ *
+ * The configuration is copied when the engine is created and never changes
+ * afterwards.  The engine's <code>Dialect</code> is taken from the global one
+ * when it is created, so later calls to <code>Emitter.addEmitter</code> and
+ * friends do not affect it, and can be replaced at any time with
+ * <code>setDialect</code>; each document keeps the dialect it started with.
+ * Every document is parsed with a streaming parser belonging to the calling
+ * thread, so nothing is locked while parsing or emitting.
+ *
+ * Many documents can be rendered at once with <code>renderAll</code>, which
+ * spreads them over a fork-join pool or any other executor.
+ *
+ * Given a <code>RenderCache</code>, documents rendered from strings are only
+ * parsed the first time they are seen with the engine's current dialect,
+ * unless they link into a wiki.
+ *
+ * Anything you put into the configuration, such as the
+ * <code>WikiProvider</code>s, is shared between every thread using the
+ * engine and has to be thread-safe itself.
+ *
+ * @see FSCode
+ * @author cmiller
+ * @since 0.2
+ */
+public class FSCodeEngine {
+
+	/**
+	 * Configuration shared by every document, compiled once.
+	 */
+	private final RenderOptions options;
+
+	/**
+	 * The tags new documents are parsed with.
+	 */
+	private volatile Dialect dialect;
+
+	/**
+	 * Where finished renderings are kept, or <code>null</code> to render
+	 * every document afresh.
+	 */
+	private volatile RenderCache cache;
+
+	/**
+	 * Creates an engine with the default configuration and the current
+	 * global tag list.
+	 *
+	 * @since 0.2
+	 */
+	public FSCodeEngine() {
+		this(null);
+	}
+
+	/**
+	 * Creates an engine with the given configuration and the current global
+	 * tag list.  Settings which are left out take their default values.
+	 *
+	 * @see FSCode
+	 * @since 0.2
+	 */
+	public FSCodeEngine(Map<String, Object> config) {
+		this(config, Emitter.getGlobalDialect());
+	}
+
+	/**
+	 * Creates an engine with the given configuration and dialect.
+	 *
+	 * @see FSCode
+	 * @since 0.2
+	 */
+	public FSCodeEngine(Map<String, Object> config, Dialect dialect) {
+		this(RenderOptions.fromMap(config), dialect);
+	}
+
+	/**
+	 * Creates an engine with the given options and dialect.
+	 *
+	 * @since 0.2
+	 */
+	public FSCodeEngine(RenderOptions options, Dialect dialect) {
+		if(options==null)
+			throw new IllegalArgumentException("options must not be null");
+		this.options = options;
+		setDialect(dialect);
+	}
+
+	/**
+	 * The configuration every document is rendered with.
+	 *
+	 * @since 0.2
+	 */
+	public Map<String, Object> getConfig() {
+		return options.asMap();
+	}
+
+	/**
+	 * The compiled options every document is rendered with.
+	 *
+	 * @since 0.2
+	 */
+	public RenderOptions getOptions() {
+		return options;
+	}
+
+	/**
+	 * The tags new documents are parsed with.
+	 *
+	 * @since 0.2
+	 */
+	public Dialect getDialect() {
+		return dialect;
+	}
+
+	/**
+	 * Switches the tags new documents are parsed with.  Documents which are
+	 * already being parsed or rendered are not affected.
+	 *
+	 * @since 0.2
+	 */
+	public void setDialect(Dialect dialect) {
+		if(dialect==null)
+			throw new IllegalArgumentException("dialect must not be null");
+		this.dialect = dialect;
+	}
+
+	/**
+	 * The cache renderings are kept in, or <code>null</code> if there isn't
+	 * one.
+	 *
+	 * @since 0.2
+	 */
+	public RenderCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Keeps finished renderings in a cache, which may be shared with other
+	 * engines, or stops caching if given <code>null</code>.  Only
+	 * <code>render(String)</code>, <code>renderDocument</code> and
+	 * <code>renderAll</code> use the cache.
+	 *
+	 * @since 0.2
+	 */
+	public void setCache(RenderCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * Parses a document.  The result belongs to the calling thread.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed.
+	 * @since 0.2
+	 */
+	public FSCode parse(String code) throws SAXException {
+		return parse(new StringReader(code));
+	}
+
+	/**
+	 * Parses a document from a reader, which is not closed.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed.
+	 * @since 0.2
+	 */
+	public FSCode parse(Reader in) throws SAXException {
+		return FSCode.parseStream(in, options, dialect);
+	}
+
+	/**
+	 * Parses a document which is going to be edited, so that after each edit
+	 * only the part which changed has to be parsed again.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed.
+	 * @since 0.2
+	 */
+	public IncrementalDocument parseIncrementally(String code)
+			throws SAXException {
+		return new IncrementalDocument(code, options, dialect);
+	}
+
+	/**
+	 * Loads a document saved by <code>BinaryDocument.compile</code> without
+	 * parsing any XML.
+	 *
+	 * @throws java.io.IOException if the buffer does not hold a document in
+	 *		a version that can be read.
+	 * @see BinaryDocument
+	 * @since 0.2
+	 */
+	public FSCode load(ByteBuffer buf) throws IOException {
+		return BinaryDocument.load(buf, options, dialect);
+	}
+
+	/**
+	 * Loads a document saved by <code>BinaryDocument.compile</code> from a
+	 * file, which is mapped into memory.
+	 *
+	 * @throws java.io.IOException if the file can't be read or does not hold
+	 *		a document in a version that can be read.
+	 * @see BinaryDocument
+	 * @since 0.2
+	 */
+	public FSCode load(Path p) throws IOException {
+		return BinaryDocument.load(p, options, dialect);
+	}
+
+	/**
+	 * Parses a document from a file in the given encoding.  The file is
+	 * decoded through a buffer as the parser reads it.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed.
+	 * @throws java.io.IOException Thrown if the file cannot be read.
+	 * @since 0.2
+	 */
+	public FSCode parse(Path p, Charset cs) throws SAXException, IOException {
+		ReadableByteChannel ch = Files.newByteChannel(p);
+		try {
+			return parse(ch, cs);
+		} finally {
+			ch.close();
+		}
+	}
+
+	/**
+	 * Parses a document from a stream in the given encoding.  The stream is
+	 * not closed.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed.
+	 * @since 0.2
+	 */
+	public FSCode parse(InputStream in, Charset cs) throws SAXException {
+		return parse(FSCode.openReader(in, cs));
+	}
+
+	/**
+	 * Parses a document from a channel in the given encoding.  The channel is
+	 * not closed.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed.
+	 * @since 0.2
+	 */
+	public FSCode parse(ReadableByteChannel ch, Charset cs)
+			throws SAXException {
+		return parse(FSCode.openReader(ch, cs));
+	}
+
+	/**
+	 * Parses a document and emits its HTML.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed.
+	 * @since 0.2
+	 */
+	public String render(String code) throws SAXException {
+		if(cache==null)
+			return parse(code).emitHtml().toString();
+		Rendering r = renderDocument(code);
+		if(r.getError() instanceof SAXException)
+			throw (SAXException)r.getError();
+		if(r.getError()!=null)
+			throw (RuntimeException)r.getError();
+		return r.getHtml();
+	}
+
+	/**
+	 * Parses a document and writes its HTML straight to <code>out</code>,
+	 * such as a servlet response's writer.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed.
+	 * @throws IOException if <code>out</code> does
+	 * @since 0.2
+	 */
+	public void render(Reader code, Appendable out)
+			throws SAXException, IOException {
+		parse(code).emitHtml(out);
+	}
+
+	/**
+	 * Parses a document and emits its HTML, keeping the problems found along
+	 * the way.  Malformed documents, and tags which throw on bad attributes,
+	 * do not throw; the error is kept in the result instead.  With a cache, a
+	 * document already rendered with the same dialect comes straight out of
+	 * it.  Documents with links into a wiki are never cached, since their
+	 * URLs change as pages come and go.
+	 *
+	 * @since 0.2
+	 */
+	public Rendering renderDocument(String code) {
+		RenderCache c = cache;
+		Dialect d = dialect;
+		if(c==null)
+			return renderDocument(code, d, null, null);
+		RenderCache.Key key = RenderCache.key(code, options, d);
+		Rendering r = c.get(key);
+		if(r==null)
+			r = renderDocument(code, d, c, key);
+		return r;
+	}
+
+	/**
+	 * Renders a document, putting it into <code>c</code> under
+	 * <code>key</code> if there is a cache and the document doesn't link
+	 * into a wiki.
+	 */
+	private Rendering renderDocument(String code, Dialect d, RenderCache c,
+			RenderCache.Key key) {
+		try {
+			FSCode doc = FSCode.parseStream(new StringReader(code), options,
+					d);
+			String html = doc.emitHtml().toString();
+			Rendering r = new Rendering(html, doc.getProblems());
+			if(c==null||options.isWiki()
+					&&doc.getIndex().count(InternalLink.class)>0)
+				return r;
+			return c.put(key, r);
+		} catch (SAXException ex) {
+			return new Rendering(ex);
+		} catch (RuntimeException ex) {
+			// a tag which choked on an attribute, such as a number which
+			// isn't one; it shouldn't take the rest of a batch down with it
+			return new Rendering(ex);
+		}
+	}
+
+	/**
+	 * Renders many documents in parallel on the common fork-join pool.
+	 *
+	 * @see #renderAll(java.util.Collection, java.util.concurrent.ForkJoinPool)
+	 * @since 0.2
+	 */
+	public List<Rendering> renderAll(Collection<String> sources) {
+		return renderAll(sources, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Renders many documents in parallel on the given fork-join pool.  The
+	 * results come back in the same order as the sources, and one malformed
+	 * document does not keep the rest from being rendered.
+	 *
+	 * @since 0.2
+	 */
+	public List<Rendering> renderAll(Collection<String> sources,
+			ForkJoinPool pool) {
+		String[] in = sources.toArray(new String[sources.size()]);
+		Rendering[] out = new Rendering[in.length];
+		if(in.length!=0)
+			pool.invoke(new RenderTask(in, out, 0, in.length));
+		return Arrays.asList(out);
+	}
+
+	/**
+	 * Renders documents on the given executor as they come out of
+	 * <code>sources</code>, which may be a lazily produced sequence.  Returns
+	 * once every document has been rendered, with the results in the same
+	 * order as the sources.
+	 *
+	 * @throws java.lang.InterruptedException If interrupted while waiting.
+	 * @since 0.2
+	 */
+	public List<Rendering> renderAll(Iterable<String> sources,
+			ExecutorService executor) throws InterruptedException {
+		List<Future<Rendering>> pending = new ArrayList<Future<Rendering>>();
+		for(final String code:sources)
+			pending.add(executor.submit(new Callable<Rendering>() {
+				public Rendering call() {
+					return renderDocument(code);
+				}
+			}));
+		List<Rendering> results = new ArrayList<Rendering>(pending.size());
+		for(Future<Rendering> f:pending) {
+			try {
+				results.add(f.get());
+			} catch (ExecutionException ex) {
+				throw new IllegalStateException("Rendering failed",
+						ex.getCause());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Splits a range of documents in half until there is one left to render.
+	 */
+	private class RenderTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String[] in;
+
+		private final Rendering[] out;
+
+		private final int from, to;
+
+		RenderTask(String[] in, Rendering[] out, int from, int to) {
+			this.in = in;
+			this.out = out;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to-from==1) {
+				out[from] = renderDocument(in[from]);
+			} else {
+				int middle = (from+to)>>>1;
+				invokeAll(new RenderTask(in, out, from, middle),
+						new RenderTask(in, out, middle, to));
+			}
+		}
+
+	}
+
+}
@@ -1,5 +1,9 @@
 package fscode;
 
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
  * Contract for emitting HTML code from the provided FSCode.
  *
@@ -9,12 +13,31 @@ package fscode;
 public interface HtmlEmitter {
 
 	/**
-	 * Emit the HTML code for this object and all of its children.  This
-	 * requires that you differentiate between <code>Emitter</code>s that aren't
-	 * also <code>HtmlEmitter</code>s.
+	 * Write the HTML code for this object and all of its children to
+	 * <code>out</code>.  This requires that you differentiate between
+	 * <code>Emitter</code>s that aren't also <code>HtmlEmitter</code>s.
+	 *
+	 * @throws IOException if <code>out</code> does
+	 * @since 0.2
+	 */
+	public void emitHtml(Appendable out) throws IOException;
+
+	/**
+	 * Emit the HTML code for this object and all of its children.
 	 *
+	 * @see #emitHtml(Appendable)
 	 * @since 0.1
 	 */
-	public StringBuilder emitHtml();
+	public default StringBuilder emitHtml() {
+		StringBuilder emission = new StringBuilder();
+		try {
+			emitHtml(emission);
+		} catch(IOException ex) {
+			// StringBuilder doesn't throw IOExceptions
+			Logger.getLogger(HtmlEmitter.class.getName()).log(Level.SEVERE,
+					null, ex);
+		}
+		return emission;
+	}
 
 }
@@ -0,0 +1,74 @@
+package fscode;
+
+/**
+ * Escapes text from a parsed document for use in HTML.  Entities in the input
+ * have already been turned into plain characters by the XML parser, so they
+ * have to be turned back into entities on the way out.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+public final class HtmlEscaper {
+
+	private HtmlEscaper() {
+	}
+
+	/**
+	 * Escapes <code>&amp;</code>, <code>&lt;</code> and <code>&gt;</code> for
+	 * use as the text of an element.
+	 *
+	 * @since 0.2
+	 */
+	public static String escapeText(String s) {
+		return escape(s, false);
+	}
+
+	/**
+	 * Escapes <code>&amp;</code>, <code>&lt;</code>, <code>&gt;</code> and
+	 * <code>&quot;</code> for use inside of a double-quoted attribute.
+	 *
+	 * @since 0.2
+	 */
+	public static String escapeAttribute(String s) {
+		return escape(s, true);
+	}
+
+	private static String escape(String s, boolean quotes) {
+		if(s==null)
+			return null;
+		StringBuilder sb = null;
+		String entity;
+		char c;
+		for(int i=0;i!=s.length();++i) {
+			c = s.charAt(i);
+			switch(c) {
+				case '&':
+					entity = "&amp;";
+					break;
+				case '<':
+					entity = "&lt;";
+					break;
+				case '>':
+					entity = "&gt;";
+					break;
+				case '"':
+					entity = quotes ? "&quot;" : null;
+					break;
+				default:
+					entity = null;
+					break;
+			}
+			if(entity!=null) {
+				if(sb==null) {
+					sb = new StringBuilder(s.length()+16);
+					sb.append(s, 0, i);
+				}
+				sb.append(entity);
+			} else if(sb!=null) {
+				sb.append(c);
+			}
+		}
+		return sb==null ? s : sb.toString();
+	}
+
+}
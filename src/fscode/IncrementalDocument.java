@@ -0,0 +1,492 @@
+package fscode;
+
+import fscode.exception.MalformedMarkupException;
+import fscode.exception.NonfatalException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.xml.sax.SAXException;
+
+/**
+ * A parsed document which is kept up to date as its text is edited, such as
+ * the preview in a wiki editor.  Only the part of the document that changed
+ * is parsed again; the emitters for everything else are kept, along with any
+ * HTML they have already rendered.
+ *
+ * The text inside the <code>fscode</code> tag is split into segments: each
+ * tag directly underneath it is one, and so is each run of text, comments and
+ * so on between two of them.  Splitting is a plain scan over the characters,
+ * much cheaper than parsing.  After an edit, the segments at the start and
+ * end which did not change keep their emitters and problems, and only the
+ * ones in between go through the XML parser and <code>Emitter.parse</code>.
+ *
+ * The whole document is parsed again instead if the part outside of the
+ * segments changed, if the text can't be split (for instance because it is
+ * malformed, so that the parser can report why), or if the changed segments
+ * hold positional tags such as headings, titles and tables of contents, which
+ * affect how the rest of the document is parsed.
+ *
+ * Like a parsed document, this belongs to one thread at a time.
+ *
+ * @see Emitter#isPositional()
+ * @see FSCodeEngine#parseIncrementally(java.lang.String)
+ * @author cmiller
+ * @since 0.2
+ */
+public class IncrementalDocument {
+
+	private final RenderOptions options;
+
+	private final Dialect dialect;
+
+	private String text;
+
+	private FSCode doc;
+
+	/**
+	 * Alternating runs of text and tags, starting and ending with a (maybe
+	 * empty) run of text, or <code>null</code> if the text couldn't be split.
+	 */
+	private List<Segment> segments;
+
+	/**
+	 * Where the first segment starts and the last one ends.
+	 */
+	private int head, tail;
+
+	private int reused, reparsed;
+
+	/**
+	 * Parses a document to be edited.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed.
+	 * @since 0.2
+	 */
+	public IncrementalDocument(String code, RenderOptions options,
+			Dialect dialect) throws SAXException {
+		this.options = options==null ? RenderOptions.DEFAULT : options;
+		this.dialect = dialect;
+		parseAll(code);
+	}
+
+	/**
+	 * The document as of the last edit.
+	 *
+	 * @since 0.2
+	 */
+	public FSCode getDocument() {
+		return doc;
+	}
+
+	/**
+	 * The text as of the last edit.
+	 *
+	 * @since 0.2
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * Replaces <code>removed</code> characters at <code>offset</code> with
+	 * <code>inserted</code> and brings the document up to date.  If the new
+	 * text can't be parsed the document and text are left as they were.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed.
+	 * @since 0.2
+	 */
+	public FSCode edit(int offset, int removed, String inserted)
+			throws SAXException {
+		if(offset<0||removed<0||offset+removed>text.length())
+			throw new IndexOutOfBoundsException("Edit at " + offset + "+"
+					+ removed + " is outside of the text");
+		return setText(text.substring(0, offset) + inserted
+				+ text.substring(offset+removed));
+	}
+
+	/**
+	 * Brings the document up to date with the whole new text.  If the new
+	 * text can't be parsed the document and text are left as they were.
+	 *
+	 * @throws org.xml.sax.SAXException Thrown if the XML is malformed.
+	 * @since 0.2
+	 */
+	public FSCode setText(String code) throws SAXException {
+		int[] bounds = segments==null ? null : split(code);
+		if(bounds==null||!code.regionMatches(0, text, 0, bounds[0])
+				||bounds[0]!=head
+				||code.length()-bounds[bounds.length-1]!=text.length()-tail
+				||!code.regionMatches(bounds[bounds.length-1], text, tail,
+				text.length()-tail)) {
+			parseAll(code);
+			return doc;
+		}
+
+		// keep the segments which are the same at either end
+		int n = segments.size(), m = bounds.length-1;
+		int same = 0;
+		while(same<Math.min(n, m)&&sameAs(segments.get(same), code,
+				bounds[same], bounds[same+1]))
+			same++;
+		int sameEnd = 0;
+		while(sameEnd<Math.min(n, m)-same-1&&sameAs(
+				segments.get(n-1-sameEnd), code, bounds[m-1-sameEnd],
+				bounds[m-sameEnd]))
+			sameEnd++;
+		// the middle has to start and end with a run of text
+		int from = same&~1;
+		int keptEnd = sameEnd&~1;
+		if(same==n&&same==m) {
+			text = code;
+			reused = n;
+			reparsed = 0;
+			return doc;
+		}
+		if(hasPositional(segments.subList(from, n-keptEnd))) {
+			parseAll(code);
+			return doc;
+		}
+
+		Parse middle = parse("<fscode>" + code.substring(bounds[from],
+				bounds[m-keptEnd]) + "</fscode>", m-keptEnd-from);
+		if(middle.segments==null||hasPositional(middle.segments)) {
+			parseAll(code);
+			return doc;
+		}
+		List<Segment> spliced = new ArrayList<Segment>(m);
+		spliced.addAll(segments.subList(0, from));
+		spliced.addAll(middle.segments);
+		spliced.addAll(segments.subList(n-keptEnd, n));
+		List<Emitter> children = new ArrayList<Emitter>();
+		LinkedList<NonfatalException> problems =
+				new LinkedList<NonfatalException>();
+		Segment seg;
+		for(int i=0;i!=m;++i) {
+			seg = spliced.get(i);
+			seg.start = bounds[i];
+			seg.end = bounds[i+1];
+			for(Emitter em:seg.emitters) {
+				if(em.getParent()!=doc)
+					em.setParent(doc);
+				children.add(em);
+			}
+			problems.addAll(seg.problems);
+		}
+		doc.setChildren(children);
+		doc.problems = problems.isEmpty() ? null : problems;
+		doc.rebuildIndex();
+
+		text = code;
+		segments = spliced;
+		tail = bounds[m];
+		reused = from+keptEnd;
+		reparsed = middle.segments.size();
+		return doc;
+	}
+
+	/**
+	 * How many segments were kept by the last edit.
+	 *
+	 * @since 0.2
+	 */
+	public int getReusedSegments() {
+		return reused;
+	}
+
+	/**
+	 * How many segments were parsed by the last edit, or when the document
+	 * was created.
+	 *
+	 * @since 0.2
+	 */
+	public int getParsedSegments() {
+		return reparsed;
+	}
+
+	private void parseAll(String code) throws SAXException {
+		int[] bounds = split(code);
+		Parse all = parse(code, bounds==null ? -1 : bounds.length-1);
+		if(all.segments!=null)
+			for(int i=0;i!=bounds.length-1;++i) {
+				all.segments.get(i).start = bounds[i];
+				all.segments.get(i).end = bounds[i+1];
+			}
+		text = code;
+		doc = all.root;
+		segments = all.segments;
+		head = bounds==null ? 0 : bounds[0];
+		tail = bounds==null ? 0 : bounds[bounds.length-1];
+		reused = 0;
+		reparsed = segments==null ? 0 : segments.size();
+	}
+
+	/**
+	 * Whether a segment of the current text reads the same as part of the
+	 * new text.
+	 */
+	private boolean sameAs(Segment seg, String code, int start, int end) {
+		return seg.end-seg.start==end-start
+				&&code.regionMatches(start, text, seg.start, end-start);
+	}
+
+	private static boolean hasPositional(List<Segment> segs) {
+		for(Segment seg:segs)
+			for(Emitter em:seg.emitters) {
+				if(em.isPositional())
+					return true;
+				for(Emitter d:em.getDescendants())
+					if(d.isPositional())
+						return true;
+			}
+		return false;
+	}
+
+	/**
+	 * What parsing some text turned into.
+	 */
+	private static class Parse {
+
+		FSCode root;
+
+		/**
+		 * <code>null</code> if the parse didn't line up with the split.
+		 */
+		List<Segment> segments;
+
+	}
+
+	/**
+	 * Parses a document, keeping track of which segment each of the root's
+	 * children and problems came from.  A run of text can turn into any
+	 * number of text nodes, but each tag is one segment, so counting tags is
+	 * enough to tell where every child belongs.
+	 *
+	 * @param count how many segments the text was split into, or -1 if it
+	 *		couldn't be.
+	 */
+	private Parse parse(String code, int count) throws SAXException {
+		Parse result = new Parse();
+		result.root = FSCode.newRoot(options, dialect);
+		FSCode root = result.root;
+		List<Segment> segs = new ArrayList<Segment>(Math.max(count, 0));
+		for(int i=0;i<count;++i)
+			segs.add(new Segment());
+		int tags = 0;
+		try {
+			XMLStreamReader reader = FSCode.openStream(new StringReader(code));
+			try {
+				root.contents = StreamMarkup.find(reader, "fscode");
+				if(root.contents==null)
+					throw new SAXException(
+							"There is no fscode tag in the input");
+				Emitter em;
+				Segment seg;
+				int before;
+				for(Markup markup:root.contents.getChildren()) {
+					// text goes with the run before the next tag
+					int i = markup.isText() ? tags*2 : tags*2+1;
+					if(!markup.isText())
+						tags++;
+					seg = segs!=null&&i<count ? segs.get(i) : null;
+					if(seg==null)
+						segs = null;
+					before = root.problems==null ? 0 : root.problems.size();
+					em = Emitter.parse(root, markup);
+					if(em!=null)
+						root.appendChild(em);
+					if(segs==null)
+						continue;
+					if(em!=null)
+						seg.emitters.add(em);
+					if(root.problems!=null&&root.problems.size()>before)
+						seg.problems.addAll(root.problems.subList(before,
+								root.problems.size()));
+				}
+				root.trimChildren();
+			} finally {
+				reader.close();
+			}
+		} catch (XMLStreamException ex) {
+			throw new SAXException(ex);
+		} catch (MalformedMarkupException ex) {
+			throw new SAXException((Exception)ex.getCause());
+		}
+		if(segs!=null&&tags*2+1==count)
+			result.segments = segs;
+		return result;
+	}
+
+	/**
+	 * One tag directly underneath the root, or the run of text between two
+	 * of them.
+	 */
+	private static class Segment {
+
+		/**
+		 * Where the segment is in the current text.
+		 */
+		int start, end;
+
+		final List<Emitter> emitters = new ArrayList<Emitter>(1);
+
+		final List<NonfatalException> problems =
+				new ArrayList<NonfatalException>(0);
+
+	}
+
+	/**
+	 * Splits a document into segments, returning where each one starts
+	 * followed by where the last one ends, or <code>null</code> if the text
+	 * isn't laid out simply enough to split: the <code>fscode</code> tag
+	 * has to be the first tag in it, and everything has to be closed.
+	 */
+	static int[] split(String code) {
+		int p = skipProlog(code, 0);
+		if(p<0||!code.startsWith("<fscode", p))
+			return null;
+		int end = endOfTag(code, p);
+		if(end<0||code.charAt(end-2)=='/'
+				||!isNameEnd(code.charAt(p+"<fscode".length())))
+			return null;
+
+		int[] bounds = new int[16];
+		int count = 0;
+		bounds[count++] = end;
+		p = end;
+		int lt;
+		while(true) {
+			lt = code.indexOf('<', p);
+			if(lt<0)
+				return null;
+			p = skipMisc(code, lt);
+			if(p<0)
+				return null;
+			if(p>lt)
+				continue;
+			if(code.startsWith("</", lt))
+				break;
+			if(code.startsWith("<!", lt))
+				return null;
+			end = skipElement(code, lt);
+			if(end<0)
+				return null;
+			if(count+3>bounds.length)
+				bounds = Arrays.copyOf(bounds, bounds.length*2);
+			bounds[count++] = lt;
+			bounds[count++] = end;
+			p = end;
+		}
+		if(!code.startsWith("</fscode", lt))
+			return null;
+		bounds[count++] = lt;
+		return Arrays.copyOf(bounds, count);
+	}
+
+	/**
+	 * Skips the XML declaration, comments, processing instructions and
+	 * whitespace before the first tag.
+	 */
+	private static int skipProlog(String code, int p) {
+		int next;
+		while(p<code.length()) {
+			if(Character.isWhitespace(code.charAt(p))) {
+				p++;
+				continue;
+			}
+			next = skipMisc(code, p);
+			if(next<0)
+				return -1;
+			if(next==p)
+				return p;
+			p = next;
+		}
+		return -1;
+	}
+
+	/**
+	 * Skips a comment, CDATA section or processing instruction at
+	 * <code>p</code>, returning where it ends, <code>p</code> if there is
+	 * none there, or -1 if it is never closed.
+	 */
+	private static int skipMisc(String code, int p) {
+		String close;
+		if(code.startsWith("<!--", p))
+			close = "-->";
+		else if(code.startsWith("<![CDATA[", p))
+			close = "]]>";
+		else if(code.startsWith("<?", p))
+			close = "?>";
+		else
+			return p;
+		int end = code.indexOf(close, p+2);
+		return end<0 ? -1 : end+close.length();
+	}
+
+	/**
+	 * Skips a whole element, starting from its start tag.
+	 */
+	private static int skipElement(String code, int p) {
+		int depth = 0, end, next;
+		while(true) {
+			// p is at a start tag
+			end = endOfTag(code, p);
+			if(end<0)
+				return -1;
+			if(code.charAt(end-2)!='/')
+				depth++;
+			p = end;
+			while(depth>0) {
+				p = code.indexOf('<', p);
+				if(p<0)
+					return -1;
+				next = skipMisc(code, p);
+				if(next<0)
+					return -1;
+				if(next>p) {
+					p = next;
+				} else if(code.startsWith("</", p)) {
+					p = code.indexOf('>', p);
+					if(p<0)
+						return -1;
+					p++;
+					depth--;
+				} else if(code.startsWith("<!", p)) {
+					return -1;
+				} else {
+					break;
+				}
+			}
+			if(depth==0)
+				return p;
+		}
+	}
+
+	/**
+	 * Finds the end of the tag starting at <code>p</code>, skipping over
+	 * quoted attribute values.
+	 */
+	private static int endOfTag(String code, int p) {
+		char quote = 0, c;
+		for(int i=p+1;i<code.length();++i) {
+			c = code.charAt(i);
+			if(quote!=0) {
+				if(c==quote)
+					quote = 0;
+			} else if(c=='"'||c=='\'') {
+				quote = c;
+			} else if(c=='>') {
+				return i+1;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isNameEnd(char c) {
+		return c=='>'||c=='/'||Character.isWhitespace(c);
+	}
+
+}
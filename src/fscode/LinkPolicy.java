@@ -0,0 +1,425 @@
+package fscode;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides whether a URL may be linked to, from the regular expressions given
+ * as <code>forbiddenLinks</code>.  A URL is forbidden if any of them matches
+ * the whole of it, just as with <code>String.matches</code>.
+ *
+ * The rules are compiled once.  Rules which are plain text are looked up in a
+ * set, rules which are plain text followed by <code>.*</code> are looked up by
+ * prefix, and rules which are <code>.*</code>, plain text, <code>.*</code> are
+ * looked for with <code>indexOf</code>.  Those shortcuts are skipped for URLs
+ * with line terminators in them, which <code>.</code> doesn't match.  The
+ * rest are combined into patterns of a few dozen rules each, apart from
+ * rules which would change meaning inside a bigger pattern, such as ones in
+ * comment mode.  Recent verdicts are cached; when the cache fills up, an
+ * arbitrary slice of it is dropped, so that looking a URL up never locks.
+ *
+ * A rule which backtracks badly can take exponential time on the wrong URL.
+ * Each pattern is only given a fixed number of steps for each URL, in
+ * proportion to the URL's length, after which the URL is treated as
+ * forbidden and a warning is logged.  However many rules there are, a bad
+ * one is given up on as quickly as if it were the only one.
+ *
+ * Policies never change once compiled and can be shared by any number of
+ * threads.
+ *
+ * @see RenderOptions#getLinkPolicy()
+ * @author cmiller
+ * @since 0.2
+ */
+public final class LinkPolicy {
+
+	/**
+	 * Allows every URL.
+	 *
+	 * @since 0.2
+	 */
+	public static final LinkPolicy ALLOW_ALL =
+			compile(Collections.<String>emptyList());
+
+	/**
+	 * How many verdicts are remembered.
+	 */
+	private static final int CACHE_SIZE = 4096;
+
+	/**
+	 * How many verdicts are dropped at once when the cache is full.
+	 */
+	private static final int CACHE_DROP = CACHE_SIZE/8;
+
+	/**
+	 * URLs longer than this are not cached.
+	 */
+	private static final int MAX_CACHED_LENGTH = 2048;
+
+	/**
+	 * How many characters each pattern may read while checking one URL, per
+	 * character of the URL.
+	 */
+	private static final int STEPS_PER_CHAR = 2000;
+
+	private static final int MIN_STEPS = 100000;
+
+	/**
+	 * The most rules combined into one pattern, so that each pattern's
+	 * budget goes far enough for the rules in it.
+	 */
+	private static final int CHUNK_SIZE = 32;
+
+	private final List<String> rules;
+
+	private final HashSet<String> exact = new HashSet<String>();
+
+	private final HashSet<String> prefixes = new HashSet<String>();
+
+	/**
+	 * The lengths of the prefixes, so that each URL only needs one lookup
+	 * per length.
+	 */
+	private final int[] prefixLengths;
+
+	private final String[] substrings;
+
+	private final Pattern[] patterns;
+
+	/**
+	 * What each of <code>patterns</code> was made from, for the log.
+	 */
+	private final String[] patternRules;
+
+	/**
+	 * The prefix and substring rules, for URLs the shortcuts don't work for.
+	 */
+	private final Pattern[] shortcutPatterns;
+
+	private final ConcurrentHashMap<String, Boolean> verdicts =
+			new ConcurrentHashMap<String, Boolean>(64);
+
+	private LinkPolicy(List<String> rules) {
+		this.rules = rules;
+		TreeSet<Integer> lengths = new TreeSet<Integer>();
+		ArrayList<String> contained = new ArrayList<String>();
+		ArrayList<String> combinable = new ArrayList<String>();
+		ArrayList<Pattern> separate = new ArrayList<Pattern>();
+		ArrayList<String> separateRules = new ArrayList<String>();
+		ArrayList<Pattern> shortcuts = new ArrayList<Pattern>();
+		String literal;
+		Pattern compiled;
+		for(String rule:rules) {
+			// checks the syntax, which the shortcuts below don't
+			compiled = Pattern.compile(rule);
+			if((literal = literal(rule))!=null) {
+				exact.add(literal);
+			} else if(rule.length()>=4&&rule.startsWith(".*")
+					&&endsWithWildcard(rule)&&(literal = literal(
+					rule.substring(2, rule.length()-2)))!=null) {
+				contained.add(literal);
+				shortcuts.add(compiled);
+			} else if(endsWithWildcard(rule)&&(literal = literal(
+					rule.substring(0, rule.length()-2)))!=null) {
+				prefixes.add(literal);
+				lengths.add(literal.length());
+				shortcuts.add(compiled);
+			} else if(isCombinable(rule)) {
+				combinable.add(rule);
+			} else {
+				separate.add(compiled);
+				separateRules.add(rule);
+			}
+		}
+		prefixLengths = new int[lengths.size()];
+		int i = 0;
+		for(Integer length:lengths)
+			prefixLengths[i++] = length;
+		substrings = contained.toArray(new String[contained.size()]);
+		shortcutPatterns = shortcuts.toArray(new Pattern[shortcuts.size()]);
+		ArrayList<Pattern> all = new ArrayList<Pattern>();
+		ArrayList<String> allRules = new ArrayList<String>();
+		StringBuilder chunk = new StringBuilder();
+		for(int from=0;from<combinable.size();from+=CHUNK_SIZE) {
+			int to = Math.min(from+CHUNK_SIZE, combinable.size());
+			chunk.setLength(0);
+			for(String rule:combinable.subList(from, to)) {
+				if(chunk.length()>0)
+					chunk.append('|');
+				chunk.append("(?:").append(rule).append(')');
+			}
+			try {
+				all.add(Pattern.compile(chunk.toString()));
+				allRules.add(to-from==1 ? combinable.get(from)
+						: "one of " + (to-from) + " rules from "
+						+ combinable.get(from));
+			} catch (PatternSyntaxException ex) {
+				// each rule compiled on its own, so one of them must mean
+				// something else next to the others
+				for(String rule:combinable.subList(from, to)) {
+					all.add(Pattern.compile(rule));
+					allRules.add(rule);
+				}
+			}
+		}
+		all.addAll(separate);
+		allRules.addAll(separateRules);
+		patterns = all.toArray(new Pattern[all.size()]);
+		patternRules = allRules.toArray(new String[allRules.size()]);
+	}
+
+	/**
+	 * Compiles a set of rules.
+	 *
+	 * @throws IllegalArgumentException if a rule isn't a valid regular
+	 *		expression.
+	 * @since 0.2
+	 */
+	public static LinkPolicy compile(Collection<String> rules) {
+		try {
+			return new LinkPolicy(Collections.unmodifiableList(
+					new ArrayList<String>(rules)));
+		} catch (PatternSyntaxException ex) {
+			throw new IllegalArgumentException(
+					"Bad regular expression in forbiddenLinks", ex);
+		}
+	}
+
+	/**
+	 * The rules this policy was compiled from.
+	 *
+	 * @since 0.2
+	 */
+	public List<String> getRules() {
+		return rules;
+	}
+
+	/**
+	 * Whether the URL may not be linked to.
+	 *
+	 * @since 0.2
+	 */
+	public boolean isForbidden(String url) {
+		if(rules.isEmpty())
+			return false;
+		if(url.length()>MAX_CACHED_LENGTH)
+			return check(url);
+		Boolean verdict = verdicts.get(url);
+		if(verdict==null) {
+			verdict = check(url);
+			if(verdicts.size()>=CACHE_SIZE)
+				dropVerdicts();
+			verdicts.put(url, verdict);
+		}
+		return verdict;
+	}
+
+	/**
+	 * Makes room in the cache.  Which verdicts go depends on where they hash
+	 * to, which is as good as random.  Threads doing this at the same time
+	 * may drop a few more than needed.
+	 */
+	private void dropVerdicts() {
+		Iterator<String> it = verdicts.keySet().iterator();
+		for(int n=0;n!=CACHE_DROP&&it.hasNext();++n) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	private boolean check(String url) {
+		if(exact.contains(url))
+			return true;
+		long steps = Math.max(MIN_STEPS, (long)url.length()*STEPS_PER_CHAR);
+		if(hasLineTerminator(url)) {
+			for(Pattern p:shortcutPatterns)
+				if(p.matcher(url).matches())
+					return true;
+		} else {
+			for(int length:prefixLengths) {
+				if(length>url.length())
+					break;
+				if(prefixes.contains(url.substring(0, length)))
+					return true;
+			}
+			for(String s:substrings)
+				if(url.contains(s))
+					return true;
+		}
+		for(int i=0;i!=patterns.length;++i) {
+			try {
+				if(patterns[i].matcher(new BoundedSequence(url, steps))
+						.matches())
+					return true;
+			} catch (TooManyStepsException ex) {
+				Logger.getLogger(LinkPolicy.class.getName()).log(
+						Level.WARNING, "Gave up on matching a URL against "
+						+ "\"{0}\"; forbidding it", patternRules[i]);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether <code>.</code> would fail to match somewhere in the URL.
+	 */
+	private static boolean hasLineTerminator(String url) {
+		char c;
+		for(int i=0;i!=url.length();++i) {
+			c = url.charAt(i);
+			if(c=='\n'||c=='\r'||c=='\u0085'||c=='\u2028'||c=='\u2029')
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * The text a rule matches if it is plain text, such as
+	 * <code>http://example\.com/</code>, or <code>null</code> if it isn't.
+	 */
+	private static String literal(String rule) {
+		StringBuilder text = new StringBuilder(rule.length());
+		char c;
+		for(int i=0;i<rule.length();++i) {
+			c = rule.charAt(i);
+			if(c=='\\') {
+				if(++i==rule.length())
+					return null;
+				c = rule.charAt(i);
+				if(c=='Q') {
+					int end = rule.indexOf("\\E", i+1);
+					if(end<0)
+						end = rule.length();
+					text.append(rule, i+1, end);
+					i = end+1;
+					continue;
+				}
+				// escaped letters and digits are classes and references
+				if(Character.isLetterOrDigit(c))
+					return null;
+				text.append(c);
+			} else if("^$.|?*+()[]{}".indexOf(c)>=0) {
+				return null;
+			} else {
+				text.append(c);
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Whether a rule ends in an unescaped <code>.*</code>.
+	 */
+	private static boolean endsWithWildcard(String rule) {
+		return rule.endsWith(".*")&&(rule.length()==2
+				||rule.charAt(rule.length()-3)!='\\');
+	}
+
+	/**
+	 * Whether a rule can be put into an alternation with the others without
+	 * changing what it means.  Back references count groups, named groups
+	 * may clash, a comment in comment mode would swallow the closing
+	 * bracket, and so would a <code>\Q</code> without an <code>\E</code>.
+	 */
+	private static boolean isCombinable(String rule) {
+		char c;
+		int end;
+		for(int i=0;i<rule.length()-1;++i) {
+			c = rule.charAt(i);
+			if(c=='\\') {
+				c = rule.charAt(i+1);
+				if((c>='1'&&c<='9')||c=='k')
+					return false;
+				if(c=='Q') {
+					if((end = rule.indexOf("\\E", i+2))<0)
+						return false;
+					i = end;
+				}
+				i++;
+			} else if(c=='('&&rule.startsWith("(?<", i)&&i+3<rule.length()
+					&&rule.charAt(i+3)!='='&&rule.charAt(i+3)!='!') {
+				return false;
+			} else if(c=='('&&rule.charAt(i+1)=='?'&&turnsOnComments(rule,
+					i+2)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether the flags starting at <code>from</code>, as in
+	 * <code>(?ix)</code> or <code>(?x:</code>, turn on comment mode.
+	 */
+	private static boolean turnsOnComments(String rule, int from) {
+		char c;
+		for(int i=from;i<rule.length();++i) {
+			c = rule.charAt(i);
+			if(c=='x')
+				return true;
+			if(c=='-'||c==')'||c==':'||!Character.isLetter(c))
+				return false;
+		}
+		return false;
+	}
+
+	/**
+	 * Thrown out of a match which has read too many characters.
+	 */
+	private static class TooManyStepsException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		TooManyStepsException() {
+			super(null, null, false, false);
+		}
+
+	}
+
+	/**
+	 * A string which only lets itself be read so many times.
+	 */
+	private static class BoundedSequence implements CharSequence {
+
+		private final String s;
+
+		private long steps;
+
+		BoundedSequence(String s, long steps) {
+			this.s = s;
+			this.steps = steps;
+		}
+
+		public char charAt(int index) {
+			if(--steps<0)
+				throw new TooManyStepsException();
+			return s.charAt(index);
+		}
+
+		public int length() {
+			return s.length();
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return s.subSequence(start, end);
+		}
+
+		@Override
+		public String toString() {
+			return s;
+		}
+
+	}
+
+}
@@ -0,0 +1,79 @@
+package fscode;
+
+/**
+ * A read-only view of a single piece of FSCode markup, which is either an
+ * element (a tag with attributes and children) or a run of text.  Tags read
+ * their attributes and children through this interface so that they do not
+ * care whether the document came out of a DOM tree or straight off of a
+ * streaming parser.
+ *
+ * Markup backed by a streaming parser may only have its children walked once,
+ * in document order, while the document is being parsed.
+ *
+ * @see DomMarkup
+ * @see StreamMarkup
+ * @author cmiller
+ * @since 0.2
+ */
+public interface Markup {
+
+	/**
+	 * Whether this is a run of text rather than an element.
+	 *
+	 * @since 0.2
+	 */
+	public boolean isText();
+
+	/**
+	 * The tag name of an element, such as <code>b</code> or
+	 * <code>macro:toc</code>.  Text has no name.
+	 *
+	 * @since 0.2
+	 */
+	public String getName();
+
+	/**
+	 * The value of a run of text.  Elements have no text of their own.
+	 *
+	 * @since 0.2
+	 */
+	public String getText();
+
+	/**
+	 * Number of attributes on this element.
+	 *
+	 * @since 0.2
+	 */
+	public int getAttributeCount();
+
+	/**
+	 * Name of the attribute at the given position.
+	 *
+	 * @since 0.2
+	 */
+	public String getAttributeName(int i);
+
+	/**
+	 * Value of the attribute at the given position.
+	 *
+	 * @since 0.2
+	 */
+	public String getAttributeValue(int i);
+
+	/**
+	 * Value of the named attribute, or <code>null</code> if it is not set.
+	 * Attribute names are case sensitive.
+	 *
+	 * @since 0.2
+	 */
+	public String getAttribute(String name);
+
+	/**
+	 * The child elements and text of this element, in document order.
+	 * Comments, processing instructions and the like are skipped.
+	 *
+	 * @since 0.2
+	 */
+	public Iterable<Markup> getChildren();
+
+}
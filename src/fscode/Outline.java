@@ -0,0 +1,138 @@
+package fscode;
+
+import fscode.macro.TOCElement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The headings of a document in document order, along with where each
+ * heading's section ends.  A heading's section holds every heading after it
+ * up to the next one which is at the same level or higher, so the sections
+ * make up a tree without one having to be built.
+ *
+ * Headings are added as they are created while parsing.  Section ends are
+ * worked out in one pass over the headings, with a stack, the first time they
+ * are asked for after a change.
+ *
+ * @see DocumentIndex#getOutline()
+ * @author cmiller
+ * @since 0.2
+ */
+public final class Outline {
+
+	private final ArrayList<TOCElement> elements = new ArrayList<TOCElement>();
+
+	/**
+	 * Where each element's section ends, or <code>null</code> if elements
+	 * have been added or removed since it was worked out.
+	 */
+	private int[] ends;
+
+	Outline() {
+	}
+
+	void add(TOCElement element) {
+		elements.add(element);
+		ends = null;
+	}
+
+	void remove(TOCElement element) {
+		for(int i=elements.size()-1;i>=0;--i)
+			if(elements.get(i)==element) {
+				elements.remove(i);
+				ends = null;
+				return;
+			}
+	}
+
+	void trimToSize() {
+		elements.trimToSize();
+	}
+
+	/**
+	 * How many headings there are.
+	 *
+	 * @since 0.2
+	 */
+	public int size() {
+		return elements.size();
+	}
+
+	/**
+	 * The <code>i</code>th heading in document order.
+	 *
+	 * @since 0.2
+	 */
+	public TOCElement get(int i) {
+		return elements.get(i);
+	}
+
+	/**
+	 * Every heading in document order.
+	 *
+	 * @since 0.2
+	 */
+	public List<TOCElement> getAll() {
+		return Collections.unmodifiableList(elements);
+	}
+
+	/**
+	 * The index just past the last heading in the <code>i</code>th heading's
+	 * section.  The section is empty if this is <code>i+1</code>.
+	 *
+	 * @since 0.2
+	 */
+	public int getSectionEnd(int i) {
+		if(ends==null)
+			ends = computeEnds();
+		return ends[i];
+	}
+
+	/**
+	 * The headings from <code>from</code> up to but not including
+	 * <code>to</code> which are no deeper than <code>maxLevel</code>.
+	 *
+	 * @since 0.2
+	 */
+	public List<TOCElement> getRange(int from, int to, int maxLevel) {
+		ArrayList<TOCElement> range = new ArrayList<TOCElement>(to-from);
+		TOCElement element;
+		for(int i=from;i<to;++i) {
+			element = elements.get(i);
+			if(element.getIndentLevel()<=maxLevel)
+				range.add(element);
+		}
+		return range;
+	}
+
+	/**
+	 * The headings inside of the <code>i</code>th heading's section, not
+	 * counting the heading itself, which are no deeper than
+	 * <code>maxLevel</code>.
+	 *
+	 * @since 0.2
+	 */
+	public List<TOCElement> getSection(int i, int maxLevel) {
+		return getRange(i+1, getSectionEnd(i), maxLevel);
+	}
+
+	private int[] computeEnds() {
+		int n = elements.size();
+		int[] computed = new int[n];
+		int[] levels = new int[n];
+		int[] open = new int[n];
+		int top = 0;
+		for(int i=0;i!=n;++i) {
+			levels[i] = elements.get(i).getIndentLevel();
+			// a heading closes every open section at its level or deeper
+			while(top>0&&levels[open[top-1]]>=levels[i])
+				computed[open[--top]] = i;
+			open[top++] = i;
+		}
+		while(top>0)
+			computed[open[--top]] = n;
+		return computed;
+	}
+
+}
@@ -0,0 +1,89 @@
+package fscode;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Walks an emitter tree in document order without copying it.  Only a stack
+ * of child iterators, one per level, is kept.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+class PreorderIterator implements Iterator<Emitter> {
+
+	private final ArrayDeque<Iterator<Emitter>> stack =
+			new ArrayDeque<Iterator<Emitter>>();
+
+	/**
+	 * The emitter handed out last, whose children come next.
+	 */
+	private Emitter pending;
+
+	/**
+	 * The starting emitter, if it is to be handed out and hasn't been yet.
+	 */
+	private Emitter first;
+
+	/**
+	 * Walks <code>start</code>'s descendants, or <code>start</code> and its
+	 * descendants if <code>includeStart</code> is set.
+	 */
+	PreorderIterator(Emitter start, boolean includeStart) {
+		if(includeStart)
+			first = start;
+		else
+			stack.push(start.getChildren().iterator());
+	}
+
+	public boolean hasNext() {
+		if(first!=null)
+			return true;
+		descend();
+		while(!stack.isEmpty()) {
+			if(stack.peek().hasNext())
+				return true;
+			stack.pop();
+		}
+		return false;
+	}
+
+	public Emitter next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+		Emitter next;
+		if(first!=null) {
+			next = first;
+			first = null;
+		} else
+			next = stack.peek().next();
+		pending = next;
+		return next;
+	}
+
+	/**
+	 * Puts the children of the last emitter handed out on the stack.  This
+	 * is put off until they are needed so that the caller can skip them.
+	 */
+	private void descend() {
+		if(pending!=null) {
+			if(!pending.getChildren().isEmpty())
+				stack.push(pending.getChildren().iterator());
+			pending = null;
+		}
+	}
+
+	/**
+	 * Leaves out the children of the emitter last returned by
+	 * <code>next</code>.
+	 */
+	void skipChildren() {
+		pending = null;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+}
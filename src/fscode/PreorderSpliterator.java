@@ -0,0 +1,92 @@
+package fscode;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Splits an emitter tree between subtrees for parallel streams.  Each part
+ * covers a run of siblings, and walks each of them with a
+ * <code>PreorderIterator</code>.  A run of one sibling is split into the
+ * sibling itself and its children.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+class PreorderSpliterator implements Spliterator<Emitter> {
+
+	/**
+	 * The subtree being walked, if one has been started.
+	 */
+	private PreorderIterator current;
+
+	private List<Emitter> siblings;
+
+	/**
+	 * Positioned at <code>index</code> in <code>siblings</code>.
+	 */
+	private ListIterator<Emitter> next;
+
+	private int index;
+
+	private int fence;
+
+	/**
+	 * Covers the subtrees of <code>siblings</code> from <code>index</code>
+	 * up to but not including <code>fence</code>.
+	 */
+	PreorderSpliterator(List<Emitter> siblings, int index, int fence) {
+		this.siblings = siblings;
+		this.index = index;
+		this.fence = fence;
+	}
+
+	public boolean tryAdvance(Consumer<? super Emitter> action) {
+		while(current==null||!current.hasNext()) {
+			if(index==fence)
+				return false;
+			if(next==null)
+				next = siblings.listIterator(index);
+			index++;
+			current = new PreorderIterator(next.next(), true);
+		}
+		action.accept(current.next());
+		return true;
+	}
+
+	public Spliterator<Emitter> trySplit() {
+		if(fence-index>=2) {
+			// the first half, along with any subtree already started
+			int mid = (index+fence)>>>1;
+			PreorderSpliterator prefix =
+					new PreorderSpliterator(siblings, index, mid);
+			prefix.current = current;
+			prefix.next = next;
+			current = null;
+			next = null;
+			index = mid;
+			return prefix;
+		}
+		if(fence-index==1&&current==null) {
+			// hand off the emitter itself and keep its children
+			Emitter only = next==null ? siblings.get(index) : next.next();
+			siblings = only.getChildren();
+			next = null;
+			index = 0;
+			fence = siblings.size();
+			return Collections.singletonList(only).spliterator();
+		}
+		return null;
+	}
+
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	public int characteristics() {
+		return ORDERED|NONNULL;
+	}
+
+}
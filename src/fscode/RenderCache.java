@@ -0,0 +1,497 @@
+package fscode;
+
+import fscode.exception.NonfatalException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A bounded cache of finished renderings, so that pages which are viewed over
+ * and over are not parsed again every time.  Entries are keyed by a SHA-256
+ * digest of the source together with the options and dialect it was rendered
+ * with, and the least recently used ones are dropped once there are more than
+ * <code>maxEntries</code> of them or their estimated size passes
+ * <code>maxBytes</code>.
+ *
+ * Options and dialects are compared by what they hold rather than by
+ * identity, so options made afresh for every request from the same settings
+ * still hit, and the cache never keeps an engine's old options or dialect
+ * alive.  Strings, numbers, booleans, collections and maps in the settings
+ * are compared by value, and anything else, such as a wiki provider or a
+ * tag's factory, by identity.  The same cache can be shared by several
+ * engines.
+ *
+ * The problems kept with a cached rendering no longer point at the tag which
+ * reported them, so that the parsed document can be thrown away.
+ *
+ * Any number of threads may use a cache at once, and big caches are split
+ * into segments so that they don't all wait on one lock.  Documents are
+ * rendered outside of the lock, so two threads missing on the same page at
+ * the same time will both render it.
+ *
+ * A cache only notices changes to the source, options and dialect, so
+ * documents whose HTML depends on anything else, such as links into a wiki,
+ * should not be put into it.
+ *
+ * @see FSCodeEngine#setCache(fscode.RenderCache)
+ * @author cmiller
+ * @since 0.2
+ */
+public class RenderCache {
+
+	/**
+	 * Rough bookkeeping cost of an entry beyond its HTML, in bytes.
+	 */
+	private static final int ENTRY_OVERHEAD = 128;
+
+	/**
+	 * Rough cost of one cached problem, in bytes.
+	 */
+	private static final int PROBLEM_OVERHEAD = 48;
+
+	/**
+	 * One digest per thread, since they keep state while hashing.
+	 */
+	private static final ThreadLocal<MessageDigest> sha256 =
+			new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException ex) {
+				Logger.getLogger(RenderCache.class.getName())
+						.log(Level.SEVERE, "Every JVM is supposed to have "
+						+ "SHA-256", ex);
+				return null;
+			}
+		}
+	};
+
+	/**
+	 * Numbers the objects which fingerprints can only tell apart by
+	 * identity.  Objects which are equal share a number, and the numbers
+	 * don't keep anything alive.
+	 */
+	private static final Map<Object, Long> ids =
+			Collections.synchronizedMap(new WeakHashMap<Object, Long>());
+
+	private static final AtomicLong nextId = new AtomicLong();
+
+	/**
+	 * Options holding only a language, which cached problems are localized
+	 * with instead of the options they were rendered with.
+	 */
+	private static final ConcurrentMap<String, RenderOptions> langOptions =
+			new ConcurrentHashMap<String, RenderOptions>();
+
+	/**
+	 * Caches at least this many entries per segment, so that small caches
+	 * keep to exact least recently used order.
+	 */
+	private static final int MIN_SEGMENT_ENTRIES = 64;
+
+	/**
+	 * The most segments a cache is split into.
+	 */
+	private static final int MAX_SEGMENTS = 16;
+
+	private final Segment[] segments;
+
+	/**
+	 * Part of the cache, with its own lock and its own share of the limits.
+	 * Looking an entry up moves it to the end of the access order, so even
+	 * hits have to lock; splitting the cache lets threads looking up
+	 * different documents do so at the same time.
+	 */
+	private static final class Segment {
+
+		final int maxEntries;
+
+		final long maxBytes;
+
+		/**
+		 * Entries in access order, least recently used first.  Guarded by
+		 * <code>this</code>.
+		 */
+		final LinkedHashMap<Key, Rendering> entries =
+				new LinkedHashMap<Key, Rendering>(16, 0.75f, true);
+
+		long bytes = 0;
+
+		long hits = 0;
+
+		long misses = 0;
+
+		long evictions = 0;
+
+		Segment(int maxEntries, long maxBytes) {
+			this.maxEntries = maxEntries;
+			this.maxBytes = maxBytes;
+		}
+
+		synchronized Rendering get(Key key) {
+			Rendering r = entries.get(key);
+			if(r==null)
+				misses++;
+			else
+				hits++;
+			return r;
+		}
+
+		synchronized void put(Key key, Rendering r, long size) {
+			Rendering old = entries.put(key, r);
+			if(old!=null)
+				bytes -= sizeOf(old);
+			bytes += size;
+			Iterator<Rendering> it = entries.values().iterator();
+			while(entries.size()>maxEntries||bytes>maxBytes) {
+				bytes -= sizeOf(it.next());
+				it.remove();
+				evictions++;
+			}
+		}
+
+		synchronized void clear() {
+			entries.clear();
+			bytes = 0;
+		}
+
+	}
+
+	/**
+	 * Creates an empty cache.  Big caches are split into segments by key,
+	 * each dropping its own least recently used renderings, so the ones
+	 * dropped are only roughly the least recently used overall.
+	 *
+	 * @param maxEntries the most renderings kept at once.
+	 * @param maxBytes roughly how much memory the kept renderings may take.
+	 * @since 0.2
+	 */
+	public RenderCache(int maxEntries, long maxBytes) {
+		if(maxEntries<1||maxBytes<1)
+			throw new IllegalArgumentException(
+					"maxEntries and maxBytes have to be positive");
+		int count = 1;
+		while(count<MAX_SEGMENTS&&maxEntries/(count*2)>=MIN_SEGMENT_ENTRIES)
+			count *= 2;
+		segments = new Segment[count];
+		for(int i=0;i!=count;++i)
+			segments[i] = new Segment((maxEntries+count-1-i)/count,
+					Math.max(1, maxBytes/count));
+	}
+
+	/**
+	 * Makes the key a document is cached under.
+	 *
+	 * @since 0.2
+	 */
+	public static Key key(String source, RenderOptions options,
+			Dialect dialect) {
+		byte[] optionsPrint = fingerprint(options);
+		byte[] dialectPrint = fingerprint(dialect);
+		MessageDigest md = sha256.get();
+		md.update(source.getBytes(StandardCharsets.UTF_8));
+		md.update(optionsPrint);
+		md.update(dialectPrint);
+		return new Key(md.digest(), options.getLang());
+	}
+
+	/**
+	 * A digest of every setting in the options, worked out the first time
+	 * they are cached under.
+	 */
+	static byte[] fingerprint(RenderOptions options) {
+		byte[] print = options.fingerprint;
+		if(print==null) {
+			StringBuilder sb = new StringBuilder();
+			describe(sb, options.asMap());
+			options.fingerprint = print = digest(sb);
+		}
+		return print;
+	}
+
+	/**
+	 * A digest of every tag in the dialect and the factory it is bound to,
+	 * worked out the first time it is cached under.
+	 */
+	static byte[] fingerprint(Dialect dialect) {
+		byte[] print = dialect.fingerprint;
+		if(print==null) {
+			StringBuilder sb = new StringBuilder();
+			describe(sb, dialect.asMap());
+			dialect.fingerprint = print = digest(sb);
+		}
+		return print;
+	}
+
+	private static byte[] digest(StringBuilder sb) {
+		return sha256.get().digest(
+				sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Writes out a setting so that two settings are written the same only if
+	 * they would render the same.  Every part says what it is and strings
+	 * say how long they are, so no two settings run together into the same
+	 * text.
+	 */
+	private static void describe(StringBuilder sb, Object value) {
+		if(value==null)
+			sb.append('n');
+		else if(value instanceof String) {
+			String s = (String)value;
+			sb.append('s').append(s.length()).append(':').append(s);
+		} else if(value instanceof Boolean||value instanceof Number
+				||value instanceof Character) {
+			sb.append('v');
+			describe(sb, value.getClass().getName());
+			describe(sb, value.toString());
+		} else if(value instanceof LinkPolicy)
+			describe(sb, ((LinkPolicy)value).getRules());
+		else if(value instanceof Map) {
+			TreeMap<String, Object> sorted = new TreeMap<String, Object>();
+			boolean byName = true;
+			for(Map.Entry<?, ?> e:((Map<?, ?>)value).entrySet()) {
+				if(!(e.getKey() instanceof String)) {
+					byName = false;
+					break;
+				}
+				sorted.put((String)e.getKey(), e.getValue());
+			}
+			if(!byName) {
+				sb.append('#').append(idOf(value)).append(';');
+				return;
+			}
+			sb.append('{').append(sorted.size()).append(':');
+			for(Map.Entry<String, Object> e:sorted.entrySet()) {
+				describe(sb, e.getKey());
+				describe(sb, e.getValue());
+			}
+		} else if(value instanceof Collection) {
+			Collection<?> c = (Collection<?>)value;
+			sb.append('[').append(c.size()).append(':');
+			for(Object o:c)
+				describe(sb, o);
+		} else
+			sb.append('#').append(idOf(value)).append(';');
+	}
+
+	private static long idOf(Object o) {
+		synchronized(ids) {
+			Long id = ids.get(o);
+			if(id==null)
+				ids.put(o, id = nextId.incrementAndGet());
+			return id;
+		}
+	}
+
+	/**
+	 * Options which localize problems into <code>lang</code> and hold
+	 * nothing else.
+	 */
+	private static RenderOptions optionsFor(String lang) {
+		RenderOptions options = langOptions.get(lang);
+		if(options==null) {
+			options = RenderOptions.fromMap(
+					Collections.<String, Object>singletonMap("lang", lang));
+			RenderOptions old = langOptions.putIfAbsent(lang, options);
+			if(old!=null)
+				options = old;
+		}
+		return options;
+	}
+
+	private Segment segmentFor(Key key) {
+		int h = key.hash;
+		h ^= h>>>16;
+		return segments[h&(segments.length-1)];
+	}
+
+	/**
+	 * The rendering cached under a key, or <code>null</code> if there isn't
+	 * one.  Counts as a hit or a miss.
+	 *
+	 * @since 0.2
+	 */
+	public Rendering get(Key key) {
+		return segmentFor(key).get(key);
+	}
+
+	/**
+	 * Caches a rendering, dropping the least recently used ones if that makes
+	 * the cache too big.  Renderings of documents which could not be parsed
+	 * are not kept, and neither are ones bigger than the share of
+	 * <code>maxBytes</code> given to the segment their key falls in.
+	 *
+	 * @return the rendering as it is cached, with its problems detached from
+	 *		the document.
+	 * @since 0.2
+	 */
+	public Rendering put(Key key, Rendering r) {
+		if(!r.isParsed())
+			return r;
+		List<NonfatalException> problems =
+				new ArrayList<NonfatalException>(r.getProblems().size());
+		RenderOptions messages = r.getProblems().isEmpty()
+				? null : optionsFor(key.lang);
+		for(NonfatalException p:r.getProblems())
+			problems.add(p.getKey()==null
+					? new NonfatalException(null, p.getMessage())
+					: new NonfatalException(null, messages, p.getKey(),
+					p.getArguments()));
+		Rendering cached = new Rendering(r.getHtml(), problems);
+		Segment s = segmentFor(key);
+		long size = sizeOf(cached);
+		if(size>s.maxBytes)
+			return cached;
+		s.put(key, cached, size);
+		return cached;
+	}
+
+	private static long sizeOf(Rendering r) {
+		return ENTRY_OVERHEAD+2L*r.getHtml().length()
+				+PROBLEM_OVERHEAD*r.getProblems().size();
+	}
+
+	/**
+	 * Drops every cached rendering.  The statistics are kept.
+	 *
+	 * @since 0.2
+	 */
+	public void clear() {
+		for(Segment s:segments)
+			s.clear();
+	}
+
+	/**
+	 * How many renderings are cached.
+	 *
+	 * @since 0.2
+	 */
+	public int size() {
+		int size = 0;
+		for(Segment s:segments)
+			synchronized(s) {
+				size += s.entries.size();
+			}
+		return size;
+	}
+
+	/**
+	 * Roughly how much memory the cached renderings take, in bytes.
+	 *
+	 * @since 0.2
+	 */
+	public long getBytes() {
+		long bytes = 0;
+		for(Segment s:segments)
+			synchronized(s) {
+				bytes += s.bytes;
+			}
+		return bytes;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public long getHits() {
+		long hits = 0;
+		for(Segment s:segments)
+			synchronized(s) {
+				hits += s.hits;
+			}
+		return hits;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public long getMisses() {
+		long misses = 0;
+		for(Segment s:segments)
+			synchronized(s) {
+				misses += s.misses;
+			}
+		return misses;
+	}
+
+	/**
+	 * How many renderings were dropped to make room for others.
+	 *
+	 * @since 0.2
+	 */
+	public long getEvictions() {
+		long evictions = 0;
+		for(Segment s:segments)
+			synchronized(s) {
+				evictions += s.evictions;
+			}
+		return evictions;
+	}
+
+	/**
+	 * The fraction of lookups which were hits, or 0 if there have been none.
+	 *
+	 * @since 0.2
+	 */
+	public double getHitRate() {
+		long hits = getHits();
+		long misses = getMisses();
+		return hits+misses==0 ? 0 : (double)hits/(hits+misses);
+	}
+
+	/**
+	 * What a rendering is cached under: a digest of its source and of the
+	 * options and dialect it was rendered with.
+	 *
+	 * @since 0.2
+	 */
+	public static final class Key {
+
+		private final byte[] digest;
+
+		/**
+		 * The language problems are reported in, which is already part of
+		 * the digest.
+		 */
+		private final String lang;
+
+		private final int hash;
+
+		private Key(byte[] digest, String lang) {
+			this.digest = digest;
+			this.lang = lang;
+			this.hash = Arrays.hashCode(digest);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if(!(o instanceof Key))
+				return false;
+			Key k = (Key)o;
+			return hash==k.hash&&Arrays.equals(digest, k.digest);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+	}
+
+}
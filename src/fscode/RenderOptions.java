@@ -0,0 +1,239 @@
+package fscode;
+
+import fscode.tags.WikiProvider;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.TreeMap;
+
+/**
+ * The configuration settings described in <code>FSCode</code>, checked and
+ * compiled once into typed fields.  Options never change once made, so one
+ * instance can be shared by every document an engine renders, and tags read
+ * them without casting or parsing anything.
+ *
+ * @see FSCode
+ * @see Emitter#getOptions()
+ * @author cmiller
+ * @since 0.2
+ */
+public final class RenderOptions {
+
+	/**
+	 * The options used when no configuration is given.
+	 *
+	 * @since 0.2
+	 */
+	public static final RenderOptions DEFAULT =
+			fromMap(Collections.<String, Object>emptyMap());
+
+	/**
+	 * Everything that was configured, including keys this class does not
+	 * know about, with the defaults filled in.
+	 */
+	private final Map<String, Object> config;
+
+	private final boolean wiki;
+
+	private final String lang;
+
+	private final String tagset;
+
+	private final Map<String, WikiProvider> wikiProviders;
+
+	private final LinkPolicy linkPolicy;
+
+	/**
+	 * The bundle for <code>lang</code>, looked up the first time a problem
+	 * is read.
+	 */
+	private volatile ResourceBundle messages;
+
+	/**
+	 * What <code>RenderCache</code> keys these options by, worked out the
+	 * first time it is needed.
+	 */
+	volatile byte[] fingerprint;
+
+	private RenderOptions(Map<String, Object> config, boolean wiki,
+			String lang, String tagset,
+			Map<String, WikiProvider> wikiProviders,
+			LinkPolicy linkPolicy) {
+		this.config = config;
+		this.wiki = wiki;
+		this.lang = lang;
+		this.tagset = tagset;
+		this.wikiProviders = wikiProviders;
+		this.linkPolicy = linkPolicy;
+	}
+
+	/**
+	 * Checks and compiles a configuration map.  Settings which are left out
+	 * take their default values.
+	 *
+	 * @throws IllegalArgumentException if a setting has the wrong type or a
+	 *		value it can't have, such as an <code>isWiki</code> which isn't
+	 *		yes, no, true or false, or a forbidden link which isn't a valid
+	 *		regular expression.
+	 * @see FSCode
+	 * @since 0.2
+	 */
+	public static RenderOptions fromMap(Map<String, Object> config) {
+		Map<String, Object> merged = FSCode.defaultConfig();
+		if(config!=null)
+			merged.putAll(config);
+
+		boolean wiki = parseIsWiki(merged.get("isWiki"));
+		String lang = getString(merged, "lang");
+		String tagset = getString(merged, "tagset");
+
+		Map<String, WikiProvider> wikiProviders;
+		Object value = merged.get("wikiProviders");
+		if(value==null)
+			wikiProviders = Collections.<String, WikiProvider>emptyMap();
+		else if(value instanceof Map) {
+			HashMap<String, WikiProvider> copy =
+					new HashMap<String, WikiProvider>();
+			for(Map.Entry<?, ?> e:((Map<?, ?>)value).entrySet()) {
+				if(!(e.getKey() instanceof String)
+						||!(e.getValue() instanceof WikiProvider))
+					throw new IllegalArgumentException("wikiProviders has "
+							+ "to map names to WikiProviders");
+				copy.put((String)e.getKey(), (WikiProvider)e.getValue());
+			}
+			wikiProviders = Collections.unmodifiableMap(copy);
+		} else
+			throw new IllegalArgumentException(
+					"wikiProviders has to be a Map");
+
+		LinkPolicy linkPolicy;
+		value = merged.get("forbiddenLinks");
+		if(value==null)
+			linkPolicy = LinkPolicy.ALLOW_ALL;
+		else if(value instanceof LinkPolicy)
+			linkPolicy = (LinkPolicy)value;
+		else if(value instanceof Collection) {
+			ArrayList<String> rules = new ArrayList<String>();
+			for(Object rgx:(Collection<?>)value) {
+				if(!(rgx instanceof String))
+					throw new IllegalArgumentException(
+							"forbiddenLinks has to hold Strings");
+				rules.add((String)rgx);
+			}
+			linkPolicy = LinkPolicy.compile(rules);
+		} else
+			throw new IllegalArgumentException(
+					"forbiddenLinks has to be a Collection or a LinkPolicy");
+
+		return new RenderOptions(
+				Collections.unmodifiableMap(
+				new TreeMap<String, Object>(merged)), wiki, lang, tagset,
+				wikiProviders, linkPolicy);
+	}
+
+	private static boolean parseIsWiki(Object value) {
+		if(value instanceof Boolean)
+			return (Boolean)value;
+		if(value instanceof String) {
+			String s = (String)value;
+			if(s.equalsIgnoreCase("YES")||s.equalsIgnoreCase("TRUE"))
+				return true;
+			if(s.equalsIgnoreCase("NO")||s.equalsIgnoreCase("FALSE"))
+				return false;
+		}
+		throw new IllegalArgumentException(
+				"isWiki has to be YES, NO, TRUE or FALSE, not " + value);
+	}
+
+	private static String getString(Map<String, Object> config, String key) {
+		Object value = config.get(key);
+		if(!(value instanceof String))
+			throw new IllegalArgumentException(key + " has to be a String");
+		return (String)value;
+	}
+
+	/**
+	 * Whether the document is part of a wiki, which turns on wiki links.
+	 *
+	 * @since 0.2
+	 */
+	public boolean isWiki() {
+		return wiki;
+	}
+
+	/**
+	 * The resource bundle problems are reported from.
+	 *
+	 * @since 0.2
+	 */
+	public String getLang() {
+		return lang;
+	}
+
+	/**
+	 * The messages for <code>lang</code>.  The bundle is only looked up the
+	 * first time it is asked for, and then kept for every document rendered
+	 * with these options.
+	 *
+	 * @throws java.util.MissingResourceException if there is no bundle for
+	 *		the language.
+	 * @since 0.2
+	 */
+	public ResourceBundle getMessages() {
+		ResourceBundle bundle = messages;
+		if(bundle==null)
+			messages = bundle = ResourceBundle.getBundle(lang);
+		return bundle;
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public String getTagset() {
+		return tagset;
+	}
+
+	/**
+	 * Every wiki the document can link to, by name.  The current wiki is
+	 * named "".  Never <code>null</code>.
+	 *
+	 * @since 0.2
+	 */
+	public Map<String, WikiProvider> getWikiProviders() {
+		return wikiProviders;
+	}
+
+	/**
+	 * Decides which URLs may not be linked to, compiled from
+	 * <code>forbiddenLinks</code>.  Never <code>null</code>.
+	 *
+	 * @since 0.2
+	 */
+	public LinkPolicy getLinkPolicy() {
+		return linkPolicy;
+	}
+
+	/**
+	 * Any configured setting, by key, including ones only a custom tag knows
+	 * about.
+	 *
+	 * @since 0.2
+	 */
+	public Object get(String key) {
+		return config.get(key);
+	}
+
+	/**
+	 * Every configured setting as a read-only map, with the defaults filled
+	 * in.
+	 *
+	 * @since 0.2
+	 */
+	public Map<String, Object> asMap() {
+		return config;
+	}
+
+}
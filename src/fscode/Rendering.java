@@ -0,0 +1,79 @@
+package fscode;
+
+import fscode.exception.NonfatalException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of rendering one document: its HTML and whatever problems were
+ * found in it, or the error which kept it from being rendered at all.  That
+ * is a <code>SAXException</code> for malformed XML, or whatever a tag threw
+ * while it was parsed or emitted, such as a
+ * <code>NumberFormatException</code> for an attribute which should have been
+ * a number.
+ *
+ * @see FSCodeEngine
+ * @author cmiller
+ * @since 0.2
+ */
+public class Rendering {
+
+	private final String html;
+
+	private final List<NonfatalException> problems;
+
+	private final Exception error;
+
+	public Rendering(String html, List<NonfatalException> problems) {
+		this.html = html;
+		this.problems = problems==null
+				? Collections.<NonfatalException>emptyList()
+				: Collections.unmodifiableList(problems);
+		this.error = null;
+	}
+
+	public Rendering(Exception error) {
+		this.html = "";
+		this.problems = Collections.<NonfatalException>emptyList();
+		this.error = error;
+	}
+
+	/**
+	 * The HTML for the document, which is empty if it could not be parsed.
+	 *
+	 * @since 0.2
+	 */
+	public String getHtml() {
+		return html;
+	}
+
+	/**
+	 * Problems found while parsing and emitting the document.  Never
+	 * <code>null</code>.
+	 *
+	 * @since 0.2
+	 */
+	public List<NonfatalException> getProblems() {
+		return problems;
+	}
+
+	/**
+	 * Why the document could not be rendered, or <code>null</code> if it
+	 * was.
+	 *
+	 * @since 0.2
+	 */
+	public Exception getError() {
+		return error;
+	}
+
+	/**
+	 * Whether the document could be parsed and emitted.
+	 *
+	 * @since 0.2
+	 */
+	public boolean isParsed() {
+		return error==null;
+	}
+
+}
@@ -0,0 +1,242 @@
+package fscode;
+
+import fscode.exception.MalformedMarkupException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Markup read straight off of an <code>XMLStreamReader</code>, so that an
+ * <code>Emitter</code> tree can be built without ever building a DOM tree
+ * first.
+ *
+ * The name and attributes of an element are copied out of the reader when the
+ * element is reached.  Its children are pulled from the reader as they are
+ * iterated, which means that they can only be walked once, in order, and
+ * before the parent moves on to the next sibling.  That is exactly what the
+ * recursive <code>parse()</code> methods do.  Children which a tag does not
+ * bother to look at are skipped over when the parent moves on.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+public class StreamMarkup implements Markup {
+
+	private static final String[] NO_ATTRIBUTES = new String[0];
+
+	private final XMLStreamReader reader;
+
+	private final String name;
+
+	private final String text;
+
+	/**
+	 * Attribute names and values, interleaved.
+	 */
+	private final String[] attributes;
+
+	/**
+	 * Whether the end tag of this element has been read.
+	 */
+	private boolean closed;
+
+	/**
+	 * Whether the children have been handed out already.
+	 */
+	private boolean walked;
+
+	/**
+	 * The last child handed out, which has to be read through to its end tag
+	 * before the reader can move on.
+	 */
+	private StreamMarkup child;
+
+	/**
+	 * A child which has been read off of the reader but not handed out yet.
+	 */
+	private StreamMarkup pending;
+
+	/**
+	 * Creates markup for the element the reader is currently sitting on.
+	 */
+	private StreamMarkup(XMLStreamReader reader) {
+		this.reader = reader;
+		this.name = qualify(reader.getPrefix(), reader.getLocalName());
+		this.text = null;
+		int count = reader.getAttributeCount();
+		if(count==0) {
+			attributes = NO_ATTRIBUTES;
+		} else {
+			attributes = new String[count*2];
+			for(int i=0;i!=count;++i) {
+				attributes[i*2] = qualify(reader.getAttributePrefix(i),
+						reader.getAttributeLocalName(i));
+				attributes[i*2+1] = reader.getAttributeValue(i);
+			}
+		}
+	}
+
+	/**
+	 * Creates markup for a run of text.
+	 */
+	private StreamMarkup(String text) {
+		this.reader = null;
+		this.name = null;
+		this.text = text;
+		this.attributes = NO_ATTRIBUTES;
+		this.closed = true;
+	}
+
+	/**
+	 * Advances the reader to the first element with the given name, wherever
+	 * it is in the document, and returns the markup for it.  Returns
+	 * <code>null</code> if there is no such element.
+	 *
+	 * @since 0.2
+	 */
+	public static StreamMarkup find(XMLStreamReader reader, String name)
+			throws XMLStreamException {
+		while(reader.hasNext())
+			if(reader.next()==XMLStreamConstants.START_ELEMENT
+					&&name.equals(qualify(reader.getPrefix(),
+					reader.getLocalName())))
+				return new StreamMarkup(reader);
+		return null;
+	}
+
+	private static String qualify(String prefix, String localName) {
+		if(prefix==null||prefix.length()==0)
+			return localName;
+		return prefix + ":" + localName;
+	}
+
+	public boolean isText() {
+		return text!=null;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getText() {
+		return text;
+	}
+
+	public int getAttributeCount() {
+		return attributes.length/2;
+	}
+
+	public String getAttributeName(int i) {
+		return attributes[i*2];
+	}
+
+	public String getAttributeValue(int i) {
+		return attributes[i*2+1];
+	}
+
+	public String getAttribute(String name) {
+		for(int i=0;i<attributes.length;i+=2)
+			if(attributes[i].equals(name))
+				return attributes[i+1];
+		return null;
+	}
+
+	/**
+	 * May only be called once, and only while the reader is still inside of
+	 * this element.
+	 */
+	public Iterable<Markup> getChildren() {
+		if(walked)
+			throw new IllegalStateException(
+					"The children of streamed markup can only be read once");
+		walked = true;
+		return new Iterable<Markup>() {
+			public Iterator<Markup> iterator() {
+				return new ChildIterator();
+			}
+		};
+	}
+
+	/**
+	 * Reads through to the end tag of this element, throwing away anything
+	 * which has not been looked at.
+	 */
+	private void skip() throws XMLStreamException {
+		if(pending!=null)
+			child = pending;
+		pending = null;
+		if(child!=null)
+			child.skip();
+		int depth = 0;
+		while(!closed) {
+			switch(reader.next()) {
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+					break;
+				case XMLStreamConstants.END_ELEMENT:
+					if(depth==0)
+						closed = true;
+					else
+						depth--;
+					break;
+				case XMLStreamConstants.END_DOCUMENT:
+					closed = true;
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Pulls children off of the reader as they are asked for.
+	 */
+	private class ChildIterator implements Iterator<Markup> {
+
+		public boolean hasNext() {
+			if(pending==null&&!closed)
+				pending = advance();
+			return pending!=null;
+		}
+
+		public Markup next() {
+			if(!hasNext())
+				throw new NoSuchElementException();
+			child = pending;
+			pending = null;
+			return child;
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		private StreamMarkup advance() {
+			try {
+				if(child!=null)
+					child.skip();
+				while(true) {
+					switch(reader.next()) {
+						case XMLStreamConstants.START_ELEMENT:
+							return new StreamMarkup(reader);
+						case XMLStreamConstants.CHARACTERS:
+						case XMLStreamConstants.CDATA:
+						case XMLStreamConstants.SPACE:
+							return new StreamMarkup(reader.getText());
+						case XMLStreamConstants.END_ELEMENT:
+						case XMLStreamConstants.END_DOCUMENT:
+							closed = true;
+							return null;
+						default:
+							// comments, processing instructions and so on
+							break;
+					}
+				}
+			} catch (XMLStreamException ex) {
+				throw new MalformedMarkupException(ex);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,20 @@
+package fscode.exception;
+
+/**
+ * Thrown when a streaming parser runs into malformed XML part of the way
+ * through a document.  Since this can happen while a tag is walking its
+ * children it has to be unchecked; <code>FSCode</code> turns it back into a
+ * <code>SAXException</code> before it reaches the caller.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+public class MalformedMarkupException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	public MalformedMarkupException(Throwable cause) {
+		super(cause);
+	}
+
+}
@@ -1,10 +1,14 @@
 package fscode.exception;
 
 import fscode.Emitter;
+import fscode.RenderOptions;
+import java.text.MessageFormat;
 
 /**
  * Just an error message to display to the user when something happens that
- * shouldn't have happened.
+ * shouldn't have happened.  Problems reported by tags only keep the key of
+ * their message, which is localized the first time it is read, so documents
+ * with thousands of problems cost no more to render than clean ones.
  *
  * @author cmiller
  * @since 0.1
@@ -15,15 +19,61 @@ public class NonfatalException {
 
 	private Emitter source;
 
+	private final String key;
+
+	private final Object[] args;
+
+	private final RenderOptions options;
+
 	public NonfatalException(Emitter source, String message) {
 		this.source = source;
 		this.message = message;
+		this.key = null;
+		this.args = new Object[0];
+		this.options = null;
+	}
+
+	/**
+	 * A problem whose message is looked up later in the bundle for the
+	 * options' language.
+	 *
+	 * @since 0.2
+	 */
+	public NonfatalException(Emitter source, RenderOptions options,
+			String key, Object... args) {
+		this.source = source;
+		this.key = key;
+		this.args = args==null ? new Object[0] : args;
+		this.options = options;
 	}
 
 	public String getMessage() {
+		if(message==null&&key!=null) {
+			String text = options.getMessages().getString(key);
+			message = args.length==0 ? text : MessageFormat.format(text, args);
+		}
 		return message;
 	}
 
+	/**
+	 * The key of the message in the resource bundle, or <code>null</code> if
+	 * the message was given as is.
+	 *
+	 * @since 0.2
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * What gets filled into the message.  Never <code>null</code>.
+	 *
+	 * @since 0.2
+	 */
+	public Object[] getArguments() {
+		return args.clone();
+	}
+
 	public Emitter getSource() {
 		return source;
 	}
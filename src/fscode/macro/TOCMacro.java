@@ -3,11 +3,13 @@ package fscode.macro;
 import fscode.Const;
 import fscode.Emitter;
 import fscode.HtmlEmitter;
+import fscode.HtmlEscaper;
+import fscode.Markup;
+import fscode.Outline;
 import fscode.exception.NonfatalException;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.util.List;
 import java.util.ResourceBundle;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 
 /**
  * This is the grand showcasing of the flexibility of the Emitter system - a
@@ -25,22 +27,26 @@ public class TOCMacro extends Emitter implements HtmlEmitter {
 
 	private boolean inline = true;
 
-	public TOCMacro(Emitter parent, Node contents) {
+	/**
+	 * How many headings came before this macro in the document.
+	 */
+	private int headingsBefore;
+
+	public TOCMacro(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
 	@Override
 	public TOCMacro parse() {
-		NamedNodeMap attrs = contents.getAttributes();
+		headingsBefore = getIndex().getOutline().size();
 		String attrStr;
-		if(attrs.getNamedItem("depth")!=null) {
-			depth = Integer.parseInt(attrs.getNamedItem("depth")
-					.getTextContent());
+		if(contents.getAttribute("depth")!=null) {
+			depth = Integer.parseInt(contents.getAttribute("depth"));
 			if(depth<2)
 				depth = Integer.MAX_VALUE;
 		}
-		if(attrs.getNamedItem("align")!=null) {
-			attrStr = attrs.getNamedItem("align").getTextContent();
+		if(contents.getAttribute("align")!=null) {
+			attrStr = contents.getAttribute("align");
 			if(attrStr!=null)
 				if(attrStr.equalsIgnoreCase("RIGHT"))
 					align = Const.ALIGN_RIGHT;
@@ -49,8 +55,8 @@ public class TOCMacro extends Emitter implements HtmlEmitter {
 				else if(attrStr.equalsIgnoreCase("CENTER"))
 					align = Const.ALIGN_CENTER;
 		}
-		if(attrs.getNamedItem("inline")!=null) {
-			attrStr = attrs.getNamedItem("align").getTextContent();
+		if(contents.getAttribute("inline")!=null) {
+			attrStr = contents.getAttribute("align");
 			if(attrStr!=null) {
 				inline = false;
 				inline = Boolean.parseBoolean(attrStr);
@@ -61,103 +67,79 @@ public class TOCMacro extends Emitter implements HtmlEmitter {
 		return this;
 	}
 
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
+	/**
+	 * Remembers how many headings came before it.
+	 */
+	@Override
+	public boolean isPositional() {
+		return true;
+	}
 
-		LinkedList<TOCElement> elements = getRelevantTocElements();
+	/**
+	 * The table is built from headings elsewhere in the document.
+	 */
+	@Override
+	public boolean isStatic() {
+		return false;
+	}
 
-		for(TOCElement tc:elements)
-			if(tc.getIndentLevel()>depth)
-				elements.remove(tc);
+	public void emitHtml(Appendable out) throws IOException {
+		List<TOCElement> elements = getRelevantTocElements();
 
 		if(elements.size()==0)
 			reportProblem("MACRO_TOCMACRO_EMPTYTOC");
 
 		if(inline==false) {
-			emission.append("<div style=\"float:");
+			out.append("<div style=\"float:");
 			if(align==Const.ALIGN_CENTER)
-				emission.append("center");
+				out.append("center");
 			else if(align==Const.ALIGN_LEFT)
-				emission.append("left");
+				out.append("left");
 			else if(align==Const.ALIGN_RIGHT)
-				emission.append("right");
+				out.append("right");
 			
-			emission.append("\">\n");
+			out.append("\">\n");
 		}
-		emission.append("<b>Table of Contents</b>\n<ul>\n");
+		out.append("<b>Table of Contents</b>\n<ul>\n");
 		
 		// content
 		TOCElement last = null; int unclosedLists = 0;
 		for(TOCElement tc:elements) {
 			if(last!=null) {
 				if(tc.getIndentLevel()<last.getIndentLevel()&&unclosedLists>0) {
-					emission.append("</ul>\n");
+					out.append("</ul>\n");
 					unclosedLists--;
 				}
 				if(tc.getIndentLevel()>last.getIndentLevel()) {
-					emission.append("<ul>\n");
+					out.append("<ul>\n");
 					unclosedLists++;
 				}
 			}
-			emission.append("<li><a href=\"#");
-			emission.append(tc.getHtmlAnchor());
-			emission.append("\">");
-			emission.append(tc.getName());
-			emission.append("</a></li>\n");
+			out.append("<li><a href=\"#");
+			out.append(HtmlEscaper.escapeAttribute(tc.getHtmlAnchor()));
+			out.append("\">");
+			out.append(HtmlEscaper.escapeText(tc.getName()));
+			out.append("</a></li>\n");
 			last = tc;
 		}
 		for(;unclosedLists!=0;unclosedLists--)
-			emission.append("</ul>\n");
+			out.append("</ul>\n");
 
-		emission.append("<a href=\"#top\">return to top</a>\n</ul>\n");
+		out.append("<a href=\"#top\">return to top</a>\n</ul>\n");
 
 		if(inline==false)
-			emission.append("</div>\n");
-
-		return emission;
+			out.append("</div>\n");
 	}
 
-	private LinkedList<TOCElement> getRelevantTocElements() {
-		LinkedList<TOCElement> elements = null;
-
-		// rewind to the last toc element
-		LinkedList<Emitter> allElements = getRootEmitter()
-				.getAllChildEmitters();
-		int lastTocIdx = allElements.indexOf(this);
-		while(lastTocIdx>0)
-			if(allElements.get(lastTocIdx) instanceof TOCElement)
-				break;
-			else
-				lastTocIdx--;
-		if(allElements.get(lastTocIdx) instanceof TOCElement) {
-			// keep adding toc elements until the indent level is equal to
-			// the indent level of the last toc element
-			elements = new LinkedList<TOCElement>();
-			for(int i=lastTocIdx+1;lastTocIdx<allElements.size();++i)
-				if(allElements.get(i) instanceof TOCElement) {
-					if(((TOCElement)allElements.get(i)).getIndentLevel()
-							<=((TOCElement)allElements.get(lastTocIdx))
-							.getIndentLevel())
-						break;
-					else
-						elements.add((TOCElement)allElements.get(i));
-				}
-		} else
-			elements = getAllTocElements(getRootEmitter());
-
-		return elements;
-	}
-
-	private LinkedList<TOCElement> getAllTocElements(Emitter em) {
-		LinkedList<TOCElement> toReturn = new LinkedList<TOCElement>();
-
-		if(em instanceof TOCElement)
-			toReturn.add((TOCElement)em);
-
-		for(Emitter e:em.getChildren())
-			toReturn.addAll(getAllTocElements(e));
-
-		return toReturn;
+	/**
+	 * The section of the heading before this macro, or the whole document if
+	 * there is none, down to <code>depth</code>.
+	 */
+	private List<TOCElement> getRelevantTocElements() {
+		Outline outline = getIndex().getOutline();
+		if(headingsBefore==0)
+			return outline.getRange(0, outline.size(), depth);
+		return outline.getSection(headingsBefore-1, depth);
 	}
 
 }
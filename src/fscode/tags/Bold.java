@@ -2,7 +2,8 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
-import org.w3c.dom.Node;
+import fscode.Markup;
+import java.io.IOException;
 
 /**
  * Simple bold text tag.
@@ -12,24 +13,22 @@ import org.w3c.dom.Node;
  */
 public class Bold extends Emitter implements HtmlEmitter {
 
-	public Bold(Emitter parent, Node contents) {
+	public Bold(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
+
 	/**
 	 * @since 0.1
 	 */
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
-
-		emission.append("<b>");
-		for(Emitter em:getChildren()) {
-			if(em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
-		}
-		emission.append("</b>");
-
-		return emission;
+	public void emitHtml(Appendable out) throws IOException {
+		out.append("<b>");
+		emitChildrenHtml(out);
+		out.append("</b>");
 	}
 
 }
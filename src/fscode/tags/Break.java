@@ -2,8 +2,8 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
+import fscode.Markup;
+import java.io.IOException;
 
 /**
  * Provides for the insertion of a manual break into the document.
@@ -15,33 +15,31 @@ public class Break extends Emitter implements HtmlEmitter {
 
 	private boolean objectBreak = false;
 
-	public Break(Emitter parent, Node contents) {
+	public Break(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
 	@Override
 	public Emitter parse() {
-		NamedNodeMap nnm = contents.getAttributes();
-		Node n;
-		for(int i=0;i!=nnm.getLength();++i) {
-			n = nnm.item(i);
-			if(n.getNodeName().equalsIgnoreCase("wrap"))
-				if(n.getTextContent().equalsIgnoreCase("object"))
+		for(int i=0;i!=contents.getAttributeCount();++i) {
+			if(contents.getAttributeName(i).equalsIgnoreCase("wrap"))
+				if(contents.getAttributeValue(i).equalsIgnoreCase("object"))
 					objectBreak = true;
 		}
 
 		return super.parse();
 	}
 
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
-		emission.append("<br");
+	public void emitHtml(Appendable out) throws IOException {
+		out.append("<br");
 		if(objectBreak)
-			emission.append(" clear=\"all\"");
-		emission.append("/>");
-
-		return emission;
+			out.append(" clear=\"all\"");
+		out.append("/>");
 	}
 
 }
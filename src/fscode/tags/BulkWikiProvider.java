@@ -0,0 +1,64 @@
+package fscode.tags;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A <code>WikiProvider</code> which can answer for many pages at once, such
+ * as one backed by a database, where asking about each page by itself would
+ * mean one round trip per link.  Every <code>InternalLink</code> in a
+ * document which uses a bulk provider is resolved in one batch before the
+ * document is emitted.
+ *
+ * Only <code>getUrlsForPages</code> really needs to be implemented.  The
+ * others fall back on it or on the single-page methods, and the asynchronous
+ * one answers right away unless it is overridden.
+ *
+ * @see InternalLink#resolveAll(fscode.Emitter)
+ * @author cmiller
+ * @since 0.2
+ */
+public interface BulkWikiProvider extends WikiProvider {
+
+	/**
+	 * URLs for many pages at once, by page.  Pages left out of the map are
+	 * asked about one at a time with <code>getUrlForPage</code>.
+	 *
+	 * @since 0.2
+	 */
+	public default Map<String, String> getUrlsForPages(
+			Collection<String> pages) {
+		Map<String, String> urls = new HashMap<String, String>();
+		for(String page:pages)
+			urls.put(page, getUrlForPage(page));
+		return urls;
+	}
+
+	/**
+	 * Starts looking up URLs for many pages, so that several wikis can be
+	 * asked at the same time.
+	 *
+	 * @see #getUrlsForPages(java.util.Collection)
+	 * @since 0.2
+	 */
+	public default CompletableFuture<Map<String, String>> getUrlsForPagesAsync(
+			Collection<String> pages) {
+		return CompletableFuture.completedFuture(getUrlsForPages(pages));
+	}
+
+	/**
+	 * Whether each of many pages exists, by page.
+	 *
+	 * @see #hasPage(java.lang.String)
+	 * @since 0.2
+	 */
+	public default Map<String, Boolean> hasPages(Collection<String> pages) {
+		Map<String, Boolean> found = new HashMap<String, Boolean>();
+		for(String page:pages)
+			found.put(page, hasPage(page));
+		return found;
+	}
+
+}
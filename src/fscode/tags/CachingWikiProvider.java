@@ -0,0 +1,441 @@
+package fscode.tags;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Remembers what another <code>WikiProvider</code> said about each page for
+ * a while, so that popular pages are not looked up again on every render.
+ * Pages which do not exist are remembered too, usually for less time, since
+ * someone is likely to create them.  A link is only remembered for the full
+ * time once its page is known to exist; since links don't ask whether their
+ * page exists, that is only when something else has asked.
+ *
+ * At most <code>maxPages</code> pages are remembered.  Once there are more,
+ * arbitrary ones are dropped.  The wiki should call <code>invalidate</code>
+ * whenever a page is created or deleted, and for both names when one is
+ * renamed, so that links are right straight away rather than once the cached
+ * answer runs out.
+ *
+ * Any number of threads may use the cache at once, and looking pages up
+ * never locks.  The wrapped provider is asked outside of any lock, and an
+ * answer about a page which was asked for before that page was invalidated
+ * is not kept, so a page can't come back stale.  Pages not cached are asked
+ * for in bulk when the wrapped provider is a <code>BulkWikiProvider</code>.
+ *
+ * To put a cache in front of every wiki an engine knows about, pass the
+ * result of <code>wrapAll</code> as its <code>wikiProviders</code>.
+ *
+ * @author cmiller
+ * @since 0.2
+ */
+public class CachingWikiProvider implements BulkWikiProvider {
+
+	/**
+	 * Stands for a URL the wrapped provider said was <code>null</code>, so
+	 * that it can be remembered.
+	 */
+	private static final String NO_URL = new String();
+
+	private final WikiProvider wiki;
+
+	private final int maxPages;
+
+	private final long ttl;
+
+	private final long missingTtl;
+
+	private final ConcurrentHashMap<String, Entry> pages =
+			new ConcurrentHashMap<String, Entry>(64);
+
+	/**
+	 * Counts invalidations.  Every lookup notes it before asking the wrapped
+	 * provider, and its answer is only kept if the page hasn't been
+	 * invalidated since.
+	 */
+	private final AtomicLong ticks = new AtomicLong();
+
+	/**
+	 * When <code>invalidateAll</code> was last called.
+	 */
+	private volatile long clearedAt = 0;
+
+	/**
+	 * The latest invalidation of any page dropped to make room, since its
+	 * entry is no longer there to say so.
+	 */
+	private final AtomicLong droppedAt = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * What is known about one page.  Either half may be unknown, and both are
+	 * for a page which has just been invalidated.
+	 */
+	private static final class Entry {
+
+		final Boolean exists;
+
+		final long existsUntil;
+
+		final String url;
+
+		final long urlUntil;
+
+		/**
+		 * When the page was last invalidated, or 0.
+		 */
+		final long invalidated;
+
+		Entry(Boolean exists, long existsUntil, String url, long urlUntil,
+				long invalidated) {
+			this.exists = exists;
+			this.existsUntil = existsUntil;
+			this.url = url;
+			this.urlUntil = urlUntil;
+			this.invalidated = invalidated;
+		}
+
+	}
+
+	/**
+	 * Creates an empty cache in front of a wiki.
+	 *
+	 * @param wiki the provider to ask about pages which aren't cached.
+	 * @param maxPages the most pages remembered at once.
+	 * @param ttl how long to remember pages which exist, and their URLs.
+	 * @param missingTtl how long to remember that a page does not exist, and
+	 *		URLs for pages which don't or may not.
+	 * @since 0.2
+	 */
+	public CachingWikiProvider(WikiProvider wiki, int maxPages, long ttl,
+			long missingTtl, TimeUnit unit) {
+		if(wiki==null)
+			throw new IllegalArgumentException("wiki can't be null");
+		if(maxPages<1||ttl<0||missingTtl<0)
+			throw new IllegalArgumentException("maxPages has to be positive "
+					+ "and the TTLs can't be negative");
+		this.wiki = wiki;
+		this.maxPages = maxPages;
+		this.ttl = unit.toNanos(ttl);
+		this.missingTtl = unit.toNanos(missingTtl);
+	}
+
+	/**
+	 * Puts a cache in front of each of a set of wikis, keeping their names.
+	 *
+	 * @see #CachingWikiProvider(fscode.tags.WikiProvider, int, long, long,
+	 *		java.util.concurrent.TimeUnit)
+	 * @since 0.2
+	 */
+	public static Map<String, WikiProvider> wrapAll(
+			Map<String, ? extends WikiProvider> wikis, int maxPages, long ttl,
+			long missingTtl, TimeUnit unit) {
+		Map<String, WikiProvider> wrapped = new HashMap<String, WikiProvider>();
+		for(Map.Entry<String, ? extends WikiProvider> e:wikis.entrySet())
+			wrapped.put(e.getKey(), new CachingWikiProvider(e.getValue(),
+					maxPages, ttl, missingTtl, unit));
+		return wrapped;
+	}
+
+	/**
+	 * The provider being cached.
+	 *
+	 * @since 0.2
+	 */
+	public WikiProvider getWiki() {
+		return wiki;
+	}
+
+	/**
+	 * The current time in nanoseconds, for working out when answers run out.
+	 *
+	 * @since 0.2
+	 */
+	protected long now() {
+		return System.nanoTime();
+	}
+
+	public boolean hasPage(String page) {
+		Boolean exists = cachedExists(page, now());
+		if(exists!=null)
+			return exists;
+		long started = ticks.get();
+		boolean found = wiki.hasPage(page);
+		storeExists(page, found, started);
+		trim();
+		return found;
+	}
+
+	public String getUrlForPage(String page) {
+		String url = cachedUrl(page, now());
+		if(url!=null)
+			return url==NO_URL ? null : url;
+		long started = ticks.get();
+		url = wiki.getUrlForPage(page);
+		storeUrl(page, url, started);
+		trim();
+		return url;
+	}
+
+	@Override
+	public Map<String, String> getUrlsForPages(Collection<String> pages) {
+		Map<String, String> urls = new HashMap<String, String>();
+		List<String> missing = cachedUrls(pages, urls);
+		if(missing.isEmpty())
+			return urls;
+		long started = ticks.get();
+		Map<String, String> found;
+		if(wiki instanceof BulkWikiProvider)
+			found = ((BulkWikiProvider)wiki).getUrlsForPages(missing);
+		else {
+			found = new HashMap<String, String>();
+			for(String page:missing)
+				found.put(page, wiki.getUrlForPage(page));
+		}
+		storeUrls(found, started);
+		urls.putAll(found);
+		return urls;
+	}
+
+	@Override
+	public CompletableFuture<Map<String, String>> getUrlsForPagesAsync(
+			Collection<String> pages) {
+		if(!(wiki instanceof BulkWikiProvider))
+			return BulkWikiProvider.super.getUrlsForPagesAsync(pages);
+		final Map<String, String> urls = new HashMap<String, String>();
+		List<String> missing = cachedUrls(pages, urls);
+		if(missing.isEmpty())
+			return CompletableFuture.completedFuture(urls);
+		final long started = ticks.get();
+		return ((BulkWikiProvider)wiki).getUrlsForPagesAsync(missing)
+				.thenApply(new Function<Map<String, String>,
+				Map<String, String>>() {
+			public Map<String, String> apply(Map<String, String> found) {
+				storeUrls(found, started);
+				urls.putAll(found);
+				return urls;
+			}
+		});
+	}
+
+	@Override
+	public Map<String, Boolean> hasPages(Collection<String> pages) {
+		Map<String, Boolean> found = new HashMap<String, Boolean>();
+		List<String> missing = new ArrayList<String>();
+		long time = now();
+		Boolean exists;
+		for(String page:pages) {
+			exists = cachedExists(page, time);
+			if(exists==null)
+				missing.add(page);
+			else
+				found.put(page, exists);
+		}
+		if(missing.isEmpty())
+			return found;
+		long started = ticks.get();
+		Map<String, Boolean> asked;
+		if(wiki instanceof BulkWikiProvider)
+			asked = ((BulkWikiProvider)wiki).hasPages(missing);
+		else {
+			asked = new HashMap<String, Boolean>();
+			for(String page:missing)
+				asked.put(page, wiki.hasPage(page));
+		}
+		for(Map.Entry<String, Boolean> a:asked.entrySet())
+			if(a.getValue()!=null)
+				storeExists(a.getKey(), a.getValue(), started);
+		trim();
+		found.putAll(asked);
+		return found;
+	}
+
+	/**
+	 * Forgets everything about a page.  Call this when the page is created,
+	 * deleted, or renamed to or from.
+	 *
+	 * @since 0.2
+	 */
+	public void invalidate(String page) {
+		pages.put(page, new Entry(null, 0, null, 0, ticks.incrementAndGet()));
+		trim();
+	}
+
+	/**
+	 * Forgets everything about some pages.
+	 *
+	 * @see #invalidate(java.lang.String)
+	 * @since 0.2
+	 */
+	public void invalidate(Collection<String> pages) {
+		long tick = ticks.incrementAndGet();
+		for(String page:pages)
+			this.pages.put(page, new Entry(null, 0, null, 0, tick));
+		trim();
+	}
+
+	/**
+	 * Forgets every page, such as when the whole wiki has been restored.
+	 * The statistics are kept.
+	 *
+	 * @since 0.2
+	 */
+	public void invalidateAll() {
+		clearedAt = ticks.incrementAndGet();
+		pages.clear();
+	}
+
+	/**
+	 * How many pages are remembered, including ones which have run out but
+	 * have not been asked about since, and ones just invalidated.
+	 *
+	 * @since 0.2
+	 */
+	public int size() {
+		return pages.size();
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @since 0.2
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	private Boolean cachedExists(String page, long time) {
+		Entry e = pages.get(page);
+		if(e==null||e.exists==null||time-e.existsUntil>0) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return e.exists;
+	}
+
+	/**
+	 * The remembered URL for a page, <code>NO_URL</code> if it is
+	 * remembered to have none, or <code>null</code> if it isn't remembered.
+	 */
+	private String cachedUrl(String page, long time) {
+		Entry e = pages.get(page);
+		if(e==null||e.url==null||time-e.urlUntil>0) {
+			misses.increment();
+			return null;
+		}
+		hits.increment();
+		return e.url;
+	}
+
+	/**
+	 * Puts the cached URLs for some pages into <code>urls</code>.
+	 *
+	 * @return the pages which weren't cached.
+	 */
+	private List<String> cachedUrls(Collection<String> pages,
+			Map<String, String> urls) {
+		List<String> missing = new ArrayList<String>();
+		long time = now();
+		String url;
+		for(String page:pages) {
+			url = cachedUrl(page, time);
+			if(url==null)
+				missing.add(page);
+			else
+				urls.put(page, url==NO_URL ? null : url);
+		}
+		return missing;
+	}
+
+	/**
+	 * Whether an answer asked for at <code>started</code> is out of date,
+	 * given what is cached for the page now.
+	 */
+	private boolean isStale(Entry old, long started) {
+		if(started<clearedAt)
+			return true;
+		return old==null ? started<droppedAt.get() : started<old.invalidated;
+	}
+
+	private void storeExists(String page, final boolean exists,
+			final long started) {
+		final long until = now()+(exists ? ttl : missingTtl);
+		pages.compute(page, new BiFunction<String, Entry, Entry>() {
+			public Entry apply(String page, Entry old) {
+				if(isStale(old, started))
+					return old;
+				return new Entry(exists, until,
+						old==null ? null : old.url,
+						old==null ? 0 : old.urlUntil,
+						old==null ? 0 : old.invalidated);
+			}
+		});
+	}
+
+	private void storeUrl(String page, final String url, final long started) {
+		final long time = now();
+		pages.compute(page, new BiFunction<String, Entry, Entry>() {
+			public Entry apply(String page, Entry old) {
+				if(isStale(old, started))
+					return old;
+				boolean exists = url!=null&&old!=null
+						&&Boolean.TRUE.equals(old.exists)
+						&&time-old.existsUntil<=0;
+				return new Entry(old==null ? null : old.exists,
+						old==null ? 0 : old.existsUntil,
+						url==null ? NO_URL : url,
+						time+(exists ? ttl : missingTtl),
+						old==null ? 0 : old.invalidated);
+			}
+		});
+	}
+
+	private void storeUrls(Map<String, String> found, long started) {
+		for(Map.Entry<String, String> f:found.entrySet())
+			storeUrl(f.getKey(), f.getValue(), started);
+		trim();
+	}
+
+	/**
+	 * Drops arbitrary pages until there are few enough.  Threads doing this
+	 * at the same time may drop a few more than needed.
+	 */
+	private void trim() {
+		if(pages.size()<=maxPages)
+			return;
+		Iterator<Map.Entry<String, Entry>> it = pages.entrySet().iterator();
+		Map.Entry<String, Entry> e;
+		long seen;
+		while(pages.size()>maxPages&&it.hasNext()) {
+			e = it.next();
+			// noted before it goes, so that an answer for the page which is
+			// still on its way can't slip in after it
+			do {
+				seen = droppedAt.get();
+			} while(seen<e.getValue().invalidated
+					&&!droppedAt.compareAndSet(seen, e.getValue().invalidated));
+			pages.remove(e.getKey(), e.getValue());
+		}
+	}
+
+}
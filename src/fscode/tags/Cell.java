@@ -2,8 +2,8 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
+import fscode.Markup;
+import java.io.IOException;
 
 /**
  * Adds support for the addition of cells into tables.  Kind of important.
@@ -17,21 +17,20 @@ public class Cell extends Emitter implements HtmlEmitter {
 
 	private int colspan = 1;
 
-	public Cell(Emitter parent, Node contents) {
+	public Cell(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
 	@Override
 	public Emitter parse() {
 		// 1: parse attributes
-		NamedNodeMap nnm = contents.getAttributes();
-		Node n = null;
-		for(int i=0;i!=nnm.getLength();++i) {
-			n = nnm.item(i);
-			if(n.getNodeName().equalsIgnoreCase("rowspan"))
-				rowspan = Integer.parseInt(n.getTextContent());
-			else if(n.getNodeName().equalsIgnoreCase("colspan"))
-				colspan = Integer.parseInt(n.getTextContent());
+		String name;
+		for(int i=0;i!=contents.getAttributeCount();++i) {
+			name = contents.getAttributeName(i);
+			if(name.equalsIgnoreCase("rowspan"))
+				rowspan = Integer.parseInt(contents.getAttributeValue(i));
+			else if(name.equalsIgnoreCase("colspan"))
+				colspan = Integer.parseInt(contents.getAttributeValue(i));
 		}
 
 		// 2: parse children
@@ -40,33 +39,31 @@ public class Cell extends Emitter implements HtmlEmitter {
 		//return this;
 	}
 
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
+	public void emitHtml(Appendable out) throws IOException {
 		// opening tag
-		emission.append("<td");
+		out.append("<td");
 		if(rowspan!=1) {
-			emission.append(" rowspan=\"");
-			emission.append(rowspan);
-			emission.append("\"");
+			out.append(" rowspan=\"");
+			out.append(String.valueOf(rowspan));
+			out.append("\"");
 		}
 		if(colspan!=1) {
-			emission.append(" colspan=\"");
-			emission.append(colspan);
-			emission.append("\"");
+			out.append(" colspan=\"");
+			out.append(String.valueOf(colspan));
+			out.append("\"");
 		}
-		emission.append(">\n");
+		out.append(">\n");
 
 		// contents
-		for(Emitter em:getChildren()) {
-			if(em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
-		}
+		emitChildrenHtml(out);
 
 		// closing tag
-		emission.append("</td>\n");
-
-		return emission;
+		out.append("</td>\n");
 	}
 
 }
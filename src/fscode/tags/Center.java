@@ -2,7 +2,8 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
-import org.w3c.dom.Node;
+import fscode.Markup;
+import java.io.IOException;
 
 /**
  * Centers text.
@@ -12,21 +13,19 @@ import org.w3c.dom.Node;
  */
 public class Center extends Emitter implements HtmlEmitter {
 
-	public Center(Emitter parent, Node contents) {
+	public Center(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
-
-		emission.append("<center>");
-		for(Emitter em:getChildren()) {
-			if(em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
-		}
-		emission.append("</center>");
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
-		return emission;
+	public void emitHtml(Appendable out) throws IOException {
+		out.append("<center>");
+		emitChildrenHtml(out);
+		out.append("</center>");
 	}
 
 }
@@ -2,7 +2,8 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
-import org.w3c.dom.Node;
+import fscode.Markup;
+import java.io.IOException;
 
 /**
  * Adds support for code-style text.
@@ -12,21 +13,19 @@ import org.w3c.dom.Node;
  */
 public class Code extends Emitter implements HtmlEmitter {
 
-	public Code(Emitter parent, Node contents) {
+	public Code(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
-
-		emission.append("<code>");
-		for(Emitter em:getChildren()) {
-			if(em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
-		}
-		emission.append("</code>");
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
-		return emission;
+	public void emitHtml(Appendable out) throws IOException {
+		out.append("<code>");
+		emitChildrenHtml(out);
+		out.append("</code>");
 	}
 	
 	
@@ -3,11 +3,11 @@ package fscode.tags;
 import fscode.Const;
 import fscode.Emitter;
 import fscode.HtmlEmitter;
+import fscode.HtmlEscaper;
+import fscode.Markup;
 import fscode.exception.NonfatalException;
-import java.util.Collection;
+import java.io.IOException;
 import java.util.ResourceBundle;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 
 /**
  * Allows the embedding of images into stuff via the <code>image</code> tag.
@@ -43,37 +43,30 @@ right-margin optional Given in pixels, how much space to keep between the right
 	private int			margin_right	= 0;
 	private int			margin_bottom	= 0;
 
-	public EmbeddedImage(Emitter parent, Node contents) {
+	public EmbeddedImage(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
 	@Override
 	public Emitter parse() {
-		NamedNodeMap nnm = contents.getAttributes();
-		Node n; String str;
+		String n, str;
 		// image source url
-		n = nnm.getNamedItem("src");
+		n = contents.getAttribute("src");
 		if(n!=null) {
-			src = n.getTextContent();
-			Collection<String> forbiddenLinks = (Collection<String>)
-					getConfig().get("forbiddenLinks");
-			if(forbiddenLinks!=null)
-				for(String rgx:forbiddenLinks) {
-					if(src.matches(rgx)) {
-						src = "";
-						reportProblem("TAGS_IMAGE_ILLEGAL_URL");
-						break;
-					}
-				}
+			src = n;
+			if(getOptions().getLinkPolicy().isForbidden(src)) {
+				src = "";
+				reportProblem("TAGS_IMAGE_ILLEGAL_URL");
+			}
 		}
 		// alternate text
-		n = nnm.getNamedItem("alt");
+		n = contents.getAttribute("alt");
 		if(n!=null)
-			alt = n.getTextContent();
+			alt = n;
 		// width
-		n = nnm.getNamedItem("width");
+		n = contents.getAttribute("width");
 		if(n!=null) {
-			str = n.getTextContent();
+			str = n;
 			if(str.endsWith("%")) {
 				width_type=Const.WIDTH_PERCENT;
 				str = str.replaceAll("%", "");
@@ -103,9 +96,9 @@ right-margin optional Given in pixels, how much space to keep between the right
 			}
 		}
 		// height
-		n = nnm.getNamedItem("height");
+		n = contents.getAttribute("height");
 		if(n!=null) {
-			str = n.getTextContent();
+			str = n;
 			if(str.endsWith("%")) {
 				height_type=Const.HEIGHT_PERCENT;
 				str = str.replaceAll("%", "");
@@ -135,9 +128,9 @@ right-margin optional Given in pixels, how much space to keep between the right
 			}
 		}
 		// horizontal align
-		n = nnm.getNamedItem("horizontal-align");
+		n = contents.getAttribute("horizontal-align");
 		if(n!=null) {
-			str = n.getTextContent();
+			str = n;
 			if(str.equalsIgnoreCase("right"))
 				horizontal_align=Const.ALIGN_RIGHT;
 			else if(str.equalsIgnoreCase("left"))
@@ -148,9 +141,9 @@ right-margin optional Given in pixels, how much space to keep between the right
 				reportProblem("TAGS_IMAGE_BAD_HORIZONTAL_ALIGN");
 		}
 		// vertical align
-		n = nnm.getNamedItem("vertical-align");
+		n = contents.getAttribute("vertical-align");
 		if(n!=null) {
-			str = n.getTextContent();
+			str = n;
 			if(str.equalsIgnoreCase("top"))
 				vertical_align=Const.ALIGN_TOP;
 			else if(str.equalsIgnoreCase("middle"))
@@ -161,9 +154,9 @@ right-margin optional Given in pixels, how much space to keep between the right
 				reportProblem("TAGS_IMAGE_BAD_VERTICAL_ALIGN");
 		}
 		// margin right
-		n = nnm.getNamedItem("margin-right");
+		n = contents.getAttribute("margin-right");
 		if(n!=null) {
-			str = n.getTextContent();
+			str = n;
 			str = str.replaceAll("px", "");
 			try {
 				margin_right = Integer.parseInt(str);
@@ -172,9 +165,9 @@ right-margin optional Given in pixels, how much space to keep between the right
 			}
 		}
 		// margin left
-		n = nnm.getNamedItem("margin-left");
+		n = contents.getAttribute("margin-left");
 		if(n!=null) {
-			str = n.getTextContent();
+			str = n;
 			str = str.replaceAll("px", "");
 			try {
 				margin_left = Integer.parseInt(str);
@@ -183,9 +176,9 @@ right-margin optional Given in pixels, how much space to keep between the right
 			}
 		}
 		// margin top
-		n = nnm.getNamedItem("margin-top");
+		n = contents.getAttribute("margin-top");
 		if(n!=null) {
-			str = n.getTextContent();
+			str = n;
 			str = str.replaceAll("px", "");
 			try {
 				margin_top = Integer.parseInt(str);
@@ -194,9 +187,9 @@ right-margin optional Given in pixels, how much space to keep between the right
 			}
 		}
 		// margin bottom
-		n = nnm.getNamedItem("margin-bottom");
+		n = contents.getAttribute("margin-bottom");
 		if(n!=null) {
-			str = n.getTextContent();
+			str = n;
 			str = str.replaceAll("px", "");
 			try {
 				margin_bottom = Integer.parseInt(str);
@@ -208,48 +201,51 @@ right-margin optional Given in pixels, how much space to keep between the right
 		return super.parse();
 	}
 
-	public StringBuilder emitHtml() {
-		if(src.equals(""))
-			return new StringBuilder();
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
-		StringBuilder emission = new StringBuilder();
+	public void emitHtml(Appendable out) throws IOException {
+		if(src.equals(""))
+			return;
 
 		// opening tag and image source link
-		emission.append("<img src=\"" + src + "\"");
+		out.append("<img src=\"" + HtmlEscaper.escapeAttribute(src) + "\"");
 
 		// image alternate text
-		emission.append(" alt=\"");
+		out.append(" alt=\"");
 		if(alt!=null&&!alt.equals(""))
-			emission.append(alt);
-		emission.append("\"");
+			out.append(HtmlEscaper.escapeAttribute(alt));
+		out.append("\"");
 
 		// image height
 		if(!(height_type==Const.HEIGHT_PIXELS&&height==0.00)) {
-			emission.append(" height=\""+Double.toString(height));
+			out.append(" height=\""+Double.toString(height));
 			if(height_type==Const.HEIGHT_PERCENT)
-				emission.append("%");
+				out.append("%");
 			else
-				emission.append("px");
-			emission.append("\"");
+				out.append("px");
+			out.append("\"");
 		}
 
 		// image width
 		if(!(width_type==Const.WIDTH_PIXELS&&width==0.00)) {
-			emission.append(" width=\""+Double.toString(width));
+			out.append(" width=\""+Double.toString(width));
 			if(width_type==Const.WIDTH_PERCENT)
-				emission.append("%");
+				out.append("%");
 			else
-				emission.append("px");
-			emission.append("\"");
+				out.append("px");
+			out.append("\"");
 		}
 
 		// horizontal align
 		if(horizontal_align==Const.ALIGN_LEFT)
-			emission.append(" align=\"left\"");
+			out.append(" align=\"left\"");
 		else if(horizontal_align==Const.ALIGN_RIGHT)
-			emission.append(" align=\"right\"");
+			out.append(" align=\"right\"");
 		else if(horizontal_align==Const.ALIGN_CENTER)
-			emission.append(" align=\"center\"");
+			out.append(" align=\"center\"");
 
 		// style-based stuff
 		StringBuilder styles = new StringBuilder();
@@ -281,11 +277,9 @@ right-margin optional Given in pixels, how much space to keep between the right
 
 		// append relevant styles
 		if(styles.length()!=0)
-			emission.append(" style=\"" + styles + "\"");
-
-		emission.append("/>");
+			out.append(" style=\"" + styles + "\"");
 
-		return emission;
+		out.append("/>");
 	}
 
 }
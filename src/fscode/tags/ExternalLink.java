@@ -2,11 +2,11 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
+import fscode.HtmlEscaper;
+import fscode.Markup;
 import fscode.exception.NonfatalException;
-import java.util.Collection;
+import java.io.IOException;
 import java.util.ResourceBundle;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 
 /**
  * Supports linking to external pages via the <code>url</code> tag.
@@ -18,25 +18,18 @@ public class ExternalLink extends Emitter implements HtmlEmitter {
 
 	private String location;
 
-	public ExternalLink(Emitter parent, Node contents) {
+	public ExternalLink(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
 	@Override
 	public Emitter parse() {
-		NamedNodeMap nnm = contents.getAttributes();
-		Node n = nnm.getNamedItem("location");
-		if(n!=null) {
-			location = n.getTextContent();
-			Collection<String> illegalUrls = (Collection<String>)
-					getConfig().get("forbiddenLinks");
-			if(illegalUrls!=null)
-				for(String rgx:illegalUrls) {
-					if(location.matches(rgx)) {
-						location = "";
-						reportProblem("TAGS_EXTERNAL_LINK_ILLEGAL_URL");
-					}
-				}
+		location = contents.getAttribute("location");
+		if(location!=null) {
+			if(getOptions().getLinkPolicy().isForbidden(location)) {
+				location = "";
+				reportProblem("TAGS_EXTERNAL_LINK_ILLEGAL_URL");
+			}
 		} else {
 			location = "";
 			reportProblem("TAGS_EXTERNAL_LINK_NO_LINK_SUPPLIED");
@@ -44,22 +37,21 @@ public class ExternalLink extends Emitter implements HtmlEmitter {
 		return super.parse();
 	}
 
-	public StringBuilder emitHtml() {
-		if(location.equals(""))
-			return new StringBuilder();
-
-		StringBuilder emission = new StringBuilder();
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
-		emission.append("<a href=\"" + location + "\">");
+	public void emitHtml(Appendable out) throws IOException {
+		if(location.equals(""))
+			return;
 
-		for(Emitter em:getChildren()) {
-			if(em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
-		}
+		out.append("<a href=\"" + HtmlEscaper.escapeAttribute(location)
+				+ "\">");
 
-		emission.append("</a>");
+		emitChildrenHtml(out);
 
-		return emission;
+		out.append("</a>");
 	}
 
 }
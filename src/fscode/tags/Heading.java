@@ -2,9 +2,10 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
+import fscode.HtmlEscaper;
+import fscode.Markup;
 import fscode.macro.TOCElement;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import java.io.IOException;
 
 /**
  * Provides heading tag support for both named tags and the variable level
@@ -27,7 +28,7 @@ public class Heading extends Emitter implements HtmlEmitter, TOCElement {
 	 */
 	private String name;
 
-	public Heading(Emitter parent, Node contents) {
+	public Heading(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
@@ -36,48 +37,57 @@ public class Heading extends Emitter implements HtmlEmitter, TOCElement {
 	 */
 	@Override
 	public Heading parse() {
-		if(contents.getNodeName().equalsIgnoreCase("h")) {
+		if(contents.getName().equalsIgnoreCase("h")) {
 			// detect the level attribute
-			Node n = contents.getAttributes().getNamedItem("level");
+			String n = contents.getAttribute("level");
 			if(n != null)
-				level=Integer.parseInt(n.getTextContent());
+				level=Integer.parseInt(n);
 			// treat the child nodes, which should be one text node
 		} else
 			// detect which tag level this is (h1, h2, h3, etc)
-			if(contents.getNodeName().equalsIgnoreCase("h1"))
+			if(contents.getName().equalsIgnoreCase("h1"))
 				level = 1;
-			else if(contents.getNodeName().equalsIgnoreCase("h2"))
+			else if(contents.getName().equalsIgnoreCase("h2"))
 				level = 2;
-			else if(contents.getNodeName().equalsIgnoreCase("h3"))
+			else if(contents.getName().equalsIgnoreCase("h3"))
 				level = 3;
-			else if(contents.getNodeName().equalsIgnoreCase("h4"))
+			else if(contents.getName().equalsIgnoreCase("h4"))
 				level = 4;
-			else if(contents.getNodeName().equalsIgnoreCase("h5"))
+			else if(contents.getName().equalsIgnoreCase("h5"))
 				level = 5;
-			else if(contents.getNodeName().equalsIgnoreCase("h6"))
+			else if(contents.getName().equalsIgnoreCase("h6"))
 				level = 6;
 			else
 				level = -1;
 		// treat the child nodes, which should be one text node
-		NodeList nl = contents.getChildNodes();
-		if(nl.getLength()>0) {
-			Node n;
-			for(int i=0;i<nl.getLength();++i) {
-				n = nl.item(i);
-				if(n.getNodeType()==Node.TEXT_NODE) {
-					name = n.getNodeValue();
-					break;
-				}
+		for(Markup n:contents.getChildren()) {
+			if(n.isText()) {
+				name = n.getText();
+				break;
 			}
-		} else
+		}
+		if(name==null)
 			name = "Untitled";
 		return this;
 	}
 
+	/**
+	 * Tables of contents after it list it.
+	 */
+	@Override
+	public boolean isPositional() {
+		return true;
+	}
+
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
+
 	/**
 	 * @since 0.1
 	 */
-	public StringBuilder emitHtml() {
+	public void emitHtml(Appendable out) throws IOException {
 		String openingTag = null, closingTag = null;
 		switch(level) {
 			case 1:
@@ -86,23 +96,21 @@ public class Heading extends Emitter implements HtmlEmitter, TOCElement {
 			case 4:
 			case 5:
 			case 6:
-				openingTag = "<h" + level + " id=\"" + getHtmlAnchor() + "\">";
+				openingTag = "<h" + level + " id=\""
+						+ HtmlEscaper.escapeAttribute(getHtmlAnchor()) + "\">";
 				closingTag = "</h" + level + ">";
 				break;
 			default:
 				// nonstandard heading, just use a bold tag
-				openingTag = "<b><a name=\"" + getHtmlAnchor() + "\">";
+				openingTag = "<b><a name=\""
+						+ HtmlEscaper.escapeAttribute(getHtmlAnchor()) + "\">";
 				closingTag = "</a></b>";
 				break;
 		}
 
-		StringBuilder emission = new StringBuilder();
-
-		emission.append(openingTag);
-		emission.append(getName());
-		emission.append(closingTag);
-
-		return emission;
+		out.append(openingTag);
+		out.append(HtmlEscaper.escapeText(getName()));
+		out.append(closingTag);
 	}
 
 	/**
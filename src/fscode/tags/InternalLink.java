@@ -2,11 +2,19 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
+import fscode.HtmlEscaper;
+import fscode.Markup;
 import fscode.exception.NonfatalException;
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.ResourceBundle;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Used to link between pages in a wiki engine, or another page on another
@@ -20,52 +28,141 @@ public class InternalLink extends Emitter implements HtmlEmitter {
 	private WikiProvider wiki;
 	private String wikiPage;
 
-	public InternalLink(Emitter parent, Node contents) {
+	/**
+	 * The URL looked up for this link in bulk, only while the document is
+	 * being emitted.  It may be <code>null</code> if that is what the wiki
+	 * said, so whether it was looked up is kept apart.
+	 */
+	private String resolvedUrl;
+
+	private boolean resolved;
+
+	public InternalLink(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
 	@Override
 	public Emitter parse() {
-		NamedNodeMap nnm = contents.getAttributes();
-		Node n;
+		String n;
 		Map<String, WikiProvider> wikiProviders =
-			(Map<String, WikiProvider>)getConfig().get("wikiProviders");
-		n = nnm.getNamedItem("wiki");
+				getOptions().getWikiProviders();
+		n = contents.getAttribute("wiki");
 		if(n!=null)
-			wiki = wikiProviders.get(n.getTextContent());
+			wiki = wikiProviders.get(n);
 		else
 			wiki = wikiProviders.get("");
 		if(wiki==null) {
 			reportProblem("TAGS_INTERNAL_LINK_NO_SUCH_WIKI");
 			return super.parse();
 		}
-		n = nnm.getNamedItem("page");
-		if(n!=null) {
-			wikiPage = n.getTextContent();
-		} else {
+		wikiPage = contents.getAttribute("page");
+		if(wikiPage==null) {
 			reportProblem("TAGS_INTERNAL_LINK_NO_PAGE_PROVIDED");
 		}
 		return super.parse();
 	}
 
-	public StringBuilder emitHtml() {
-		if(wiki==null||wikiPage==null||((String)getConfig()
-				.get("isWiki")).matches("(NO)|(FALSE)"))
-			return new StringBuilder();
+	/**
+	 * The URL is asked of the wiki provider every time, since pages come and
+	 * go.
+	 */
+	@Override
+	public boolean isStatic() {
+		return false;
+	}
 
-		StringBuilder emission = new StringBuilder();
+	public void emitHtml(Appendable out) throws IOException {
+		if(wiki==null||wikiPage==null||!getOptions().isWiki())
+			return;
 
-		emission.append("<a href=\""+wiki.getUrlForPage(wikiPage)+"\">");
+		String url = resolved ? resolvedUrl : wiki.getUrlForPage(wikiPage);
+		out.append("<a href=\""+HtmlEscaper.escapeAttribute(url)+"\">");
+
+		emitChildrenHtml(out);
+
+		out.append("</a>");
+	}
 
-		for(Emitter em:getChildren()) {
-			if(em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
+	/**
+	 * Looks up the URLs for every link in a document in one batch per
+	 * <code>BulkWikiProvider</code>, asking every provider at the same time.
+	 * Links to other providers, and pages a provider leaves out, are looked
+	 * up one at a time as they are emitted.  The URLs are kept until
+	 * <code>forgetAll</code> is called, so that each emit sees the wiki as
+	 * it is at the time.
+	 *
+	 * @return whether anything was looked up.
+	 * @since 0.2
+	 */
+	public static boolean resolveAll(Emitter root) {
+		List<InternalLink> links = root.getIndex().getAll(InternalLink.class);
+		if(links.isEmpty())
+			return false;
+		Map<BulkWikiProvider, Set<String>> pages =
+				new IdentityHashMap<BulkWikiProvider, Set<String>>();
+		Set<String> forWiki;
+		for(InternalLink link:links) {
+			if(!(link.wiki instanceof BulkWikiProvider)||link.wikiPage==null)
+				continue;
+			forWiki = pages.get(link.wiki);
+			if(forWiki==null) {
+				forWiki = new LinkedHashSet<String>();
+				pages.put((BulkWikiProvider)link.wiki, forWiki);
+			}
+			forWiki.add(link.wikiPage);
 		}
+		if(pages.isEmpty())
+			return false;
 
-		emission.append("</a>");
+		Map<BulkWikiProvider, CompletableFuture<Map<String, String>>> pending =
+				new IdentityHashMap<BulkWikiProvider,
+				CompletableFuture<Map<String, String>>>();
+		for(Map.Entry<BulkWikiProvider, Set<String>> e:pages.entrySet()) {
+			try {
+				pending.put(e.getKey(),
+						e.getKey().getUrlsForPagesAsync(e.getValue()));
+			} catch (RuntimeException ex) {
+				bulkFailed(ex);
+			}
+		}
+		Map<WikiProvider, Map<String, String>> urls =
+				new IdentityHashMap<WikiProvider, Map<String, String>>();
+		for(Map.Entry<BulkWikiProvider,
+				CompletableFuture<Map<String, String>>> e:pending.entrySet()) {
+			try {
+				urls.put(e.getKey(), e.getValue().join());
+			} catch (RuntimeException ex) {
+				// failed or cancelled
+				bulkFailed(ex);
+			}
+		}
+		Map<String, String> found;
+		for(InternalLink link:links) {
+			found = link.wiki==null ? null : urls.get(link.wiki);
+			if(found!=null&&found.containsKey(link.wikiPage)) {
+				link.resolvedUrl = found.get(link.wikiPage);
+				link.resolved = true;
+			}
+		}
+		return true;
+	}
 
-		return emission;
+	private static void bulkFailed(RuntimeException ex) {
+		Logger.getLogger(InternalLink.class.getName()).log(Level.WARNING,
+				"Could not look up wiki links in bulk; asking for one page at "
+				+ "a time instead", ex);
 	}
 
+	/**
+	 * Forgets the URLs looked up by <code>resolveAll</code>.
+	 *
+	 * @since 0.2
+	 */
+	public static void forgetAll(Emitter root) {
+		for(InternalLink link:root.getIndex().getAll(InternalLink.class)) {
+			link.resolvedUrl = null;
+			link.resolved = false;
+		}
+	}
 
 }
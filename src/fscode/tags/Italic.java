@@ -2,7 +2,8 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
-import org.w3c.dom.Node;
+import fscode.Markup;
+import java.io.IOException;
 
 /**
  * Italicizes text.
@@ -12,21 +13,19 @@ import org.w3c.dom.Node;
  */
 public class Italic extends Emitter implements HtmlEmitter {
 
-	public Italic(Emitter parent, Node contents) {
+	public Italic(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
-
-		emission.append("<i>");
-		for(Emitter em:getChildren()) {
-			if(em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
-		}
-		emission.append("</i>");
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
-		return emission;
+	public void emitHtml(Appendable out) throws IOException {
+		out.append("<i>");
+		emitChildrenHtml(out);
+		out.append("</i>");
 	}
 
 }
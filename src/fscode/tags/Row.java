@@ -2,10 +2,10 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
+import fscode.Markup;
 import fscode.exception.NonfatalException;
+import java.io.IOException;
 import java.util.ResourceBundle;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 
 /**
  * Adds the ability to add rows to tables.  Kinda useful.
@@ -17,19 +17,16 @@ public class Row extends Emitter implements HtmlEmitter {
 
 	private int height = 0; // let HTML renderers size it
 
-	public Row(Emitter parent, Node contents) {
+	public Row(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
 	@Override
 	public Emitter parse() {
 		// 1: parse row attributes
-		NamedNodeMap nnm = contents.getAttributes();
-		Node n = null;
-		for(int i=0;i!=nnm.getLength();++i) {
-			n = nnm.item(i);
-			if(n.getNodeName().equalsIgnoreCase("height"))
-				height = Integer.parseInt(n.getTextContent());
+		for(int i=0;i!=contents.getAttributeCount();++i) {
+			if(contents.getAttributeName(i).equalsIgnoreCase("height"))
+				height = Integer.parseInt(contents.getAttributeValue(i));
 		}
 
 		// 2: parse child cells
@@ -40,7 +37,7 @@ public class Row extends Emitter implements HtmlEmitter {
 			if(!(em instanceof Cell)) {
 				getRootEmitter().appendProblem(
 						new NonfatalException(this, ResourceBundle
-						.getBundle((String)getConfig().get("lang"))
+						.getBundle(getOptions().getLang())
 						.getString("TAGS_ROW_INVALID_CHILD_NODE"))
 						);
 			}
@@ -49,28 +46,29 @@ public class Row extends Emitter implements HtmlEmitter {
 		//return this;
 	}
 
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
+	public void emitHtml(Appendable out) throws IOException {
 		// openining tag
-		emission.append("<tr");
+		out.append("<tr");
 		if(height!=0) {
-			emission.append(" height=\"");
-			emission.append(height);
-			emission.append("\"");
+			out.append(" height=\"");
+			out.append(String.valueOf(height));
+			out.append("\"");
 		}
-		emission.append(">\n");
+		out.append(">\n");
 
 		// contents
 		for(Emitter em:getChildren())
 			if(em instanceof Cell
 					&& em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
+				emitChildHtml(em, out);
 
 		// closing tag
-		emission.append("</tr>\n");
-
-		return emission;
+		out.append("</tr>\n");
 	}
 
 }
@@ -2,7 +2,8 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
-import org.w3c.dom.Node;
+import fscode.Markup;
+import java.io.IOException;
 
 /**
  * Allows users to subscript text.
@@ -12,21 +13,19 @@ import org.w3c.dom.Node;
  */
 public class Sub extends Emitter implements HtmlEmitter {
 
-	public Sub(Emitter parent, Node contents) {
+	public Sub(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
-
-		emission.append("<sub>");
-		for(Emitter em:getChildren()) {
-			if(em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
-		}
-		emission.append("</sub>");
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
-		return emission;
+	public void emitHtml(Appendable out) throws IOException {
+		out.append("<sub>");
+		emitChildrenHtml(out);
+		out.append("</sub>");
 	}
 
 }
@@ -2,7 +2,8 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
-import org.w3c.dom.Node;
+import fscode.Markup;
+import java.io.IOException;
 
 /**
  * Allows users to superscript text.
@@ -12,21 +13,19 @@ import org.w3c.dom.Node;
  */
 public class Super extends Emitter implements HtmlEmitter {
 
-	public Super(Emitter parent, Node contents) {
+	public Super(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
-
-		emission.append("<sup>");
-		for(Emitter em:getChildren()) {
-			if(em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
-		}
-		emission.append("</sup>");
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
-		return emission;
+	public void emitHtml(Appendable out) throws IOException {
+		out.append("<sup>");
+		emitChildrenHtml(out);
+		out.append("</sup>");
 	}
 
 }
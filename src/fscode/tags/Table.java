@@ -3,10 +3,10 @@ package fscode.tags;
 import fscode.Const;
 import fscode.Emitter;
 import fscode.HtmlEmitter;
+import fscode.Markup;
 import fscode.exception.NonfatalException;
+import java.io.IOException;
 import java.util.ResourceBundle;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
 
 /**
  * Support for the creation of tables using FSCode.
@@ -28,17 +28,16 @@ public class Table extends Emitter implements HtmlEmitter {
 
 	protected int columns = 0;
 
-	public Table(Emitter parent, Node contents) {
+	public Table(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
 	@Override
 	public Emitter parse() {
 		// 1: Parse table attributes
-		NamedNodeMap attrs = contents.getAttributes();
 		String attrStr;
-		if(attrs.getNamedItem("align")!=null) {
-			attrStr = attrs.getNamedItem("align").getTextContent();
+		if(contents.getAttribute("align")!=null) {
+			attrStr = contents.getAttribute("align");
 			if(attrStr!=null)
 				if(attrStr.equalsIgnoreCase("RIGHT"))
 					align = Const.ALIGN_RIGHT;
@@ -47,8 +46,8 @@ public class Table extends Emitter implements HtmlEmitter {
 				else if(attrStr.equalsIgnoreCase("CENTER"))
 					align = Const.ALIGN_CENTER;
 		}
-		if(attrs.getNamedItem("border")!=null) {
-			attrStr = attrs.getNamedItem("border").getTextContent();
+		if(contents.getAttribute("border")!=null) {
+			attrStr = contents.getAttribute("border");
 			if(attrStr!=null) {
 				border = Integer.parseInt(attrStr);
 
@@ -59,8 +58,8 @@ public class Table extends Emitter implements HtmlEmitter {
 
 			}
 		}
-		if(attrs.getNamedItem("width")!=null) {
-			attrStr = attrs.getNamedItem("width").getTextContent();
+		if(contents.getAttribute("width")!=null) {
+			attrStr = contents.getAttribute("width");
 			if(attrStr!=null) {
 				StringBuilder num = new StringBuilder();
 				StringBuilder type = new StringBuilder();
@@ -103,7 +102,7 @@ public class Table extends Emitter implements HtmlEmitter {
 			if(!em.getClass().isInstance(Row.class)) {
 				getRootEmitter().appendProblem(
 						new NonfatalException(this, ResourceBundle
-						.getBundle((String)getConfig().get("lang"))
+						.getBundle(getOptions().getLang())
 						.getString("TAGS_TABLE_INVALID_CHILD_NODE"))
 						);
 			}
@@ -112,43 +111,44 @@ public class Table extends Emitter implements HtmlEmitter {
 		//return this;
 	}
 
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
+	public void emitHtml(Appendable out) throws IOException {
 		// opening tag
-		emission.append("<table");
+		out.append("<table");
 		if(align == Const.ALIGN_CENTER)
-			emission.append(" align=\"center\"");
+			out.append(" align=\"center\"");
 		else if(align == Const.ALIGN_RIGHT)
-			emission.append(" align=\"right\"");
+			out.append(" align=\"right\"");
 		if(width_type == Const.WIDTH_PIXELS) {
-			emission.append(" width=\"");
-			emission.append(width);
-			emission.append("px\"");
+			out.append(" width=\"");
+			out.append(String.valueOf(width));
+			out.append("px\"");
 		} else {
 			if(width != 0) {
-				emission.append(" width=\"");
-				emission.append(width);
-				emission.append("%\"");
+				out.append(" width=\"");
+				out.append(String.valueOf(width));
+				out.append("%\"");
 			}
 		}
 		if(border != 0) {
-			emission.append(" border=\"");
-			emission.append(border);
-			emission.append("\"");
+			out.append(" border=\"");
+			out.append(String.valueOf(border));
+			out.append("\"");
 		}
-		emission.append(">\n");
+		out.append(">\n");
 
 		// contents
 		for(Emitter em:getChildren())
 			if(em instanceof Row
 					&&em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
+				emitChildHtml(em, out);
 
 		// closing tag
-		emission.append("</table>\n");
-
-		return emission;
+		out.append("</table>\n");
 	}
 
 	
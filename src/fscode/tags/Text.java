@@ -2,10 +2,9 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
-import java.util.HashMap;
-import java.util.LinkedList;
+import fscode.Markup;
+import java.io.IOException;
 import java.util.List;
-import org.w3c.dom.Node;
 
 /**
  * Childless text node used to emit simple textual elements.
@@ -16,15 +15,11 @@ import org.w3c.dom.Node;
 public class Text extends Emitter implements HtmlEmitter {
 
 	/**
-	 * HTML character replacement table.  Used to replace potentially dangerous
-	 * or annoying HTML characters/entities with the user-intended/safer
-	 * versions of those entities.
+	 * The text, once the markup has been let go of.
 	 *
-	 * Do not access this directly, use <code>getHtmlReplacementTable()</code>
-	 *
-	 * @see #getHtmlReplacementTable() 
+	 * @see #compact()
 	 */
-	private static HashMap<String, String> htmlReplacementTable;
+	private String text;
 
 	/**
 	 * Creates a new text node with the supplied node and parent
@@ -32,25 +27,134 @@ public class Text extends Emitter implements HtmlEmitter {
 	 *
 	 * @since 0.1
 	 */
-	public Text(Emitter parent, Node contents) {
+	public Text(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 	
-	public StringBuilder emitHtml() {
-		String toReturn = contents.getNodeValue();
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
-		for(String key:getHtmlReplacementTable().keySet()) {
-			toReturn = toReturn.replaceAll(key, getHtmlReplacementTable().get(key));
+	/**
+	 * Writes the text escaped for HTML, with every pair of spaces turned into
+	 * <code>&amp;nbsp;</code> and every blank line into a paragraph break.
+	 *
+	 * @since 0.1
+	 */
+	public void emitHtml(Appendable out) throws IOException {
+		writeHtml(getText(), out);
+	}
+
+	/**
+	 * The text, unescaped.
+	 *
+	 * @since 0.2
+	 */
+	public String getText() {
+		return contents==null ? text : contents.getText();
+	}
+
+	/**
+	 * Keeps the text itself in place of the markup.
+	 *
+	 * @since 0.2
+	 */
+	@Override
+	public void compact() {
+		if(contents!=null)
+			text = contents.getText();
+		super.compact();
+	}
+
+	/**
+	 * Does all of the replacements in a single pass over the text, copying
+	 * the runs in between straight to <code>out</code>.
+	 */
+	private static void writeHtml(String s, Appendable out)
+			throws IOException {
+		int n = s.length(), start = 0, next, end;
+		String replacement;
+		for(int i=0;i<n;i=next) {
+			next = i+1;
+			switch(s.charAt(i)) {
+				case '&':
+					replacement = "&amp;";
+					break;
+				case '<':
+					replacement = "&lt;";
+					break;
+				case '>':
+					replacement = "&gt;";
+					break;
+				case '"':
+					replacement = "&quot;";
+					break;
+				case ' ':
+					if(next<n&&s.charAt(next)==' ') {
+						replacement = "&nbsp;";
+						next++;
+					} else
+						replacement = null;
+					break;
+				case '\r':
+				case '\n':
+					end = paragraphEnd(s, i);
+					if(end>i) {
+						replacement = "<p/>";
+						next = end;
+					} else
+						replacement = null;
+					break;
+				default:
+					replacement = null;
+					break;
+			}
+			if(replacement!=null) {
+				out.append(s, start, i);
+				out.append(replacement);
+				start = next;
+			}
 		}
+		out.append(s, start, n);
+	}
 
-		return new StringBuilder(toReturn);
+	/**
+	 * If a blank line starts at <code>i</code>, where it ends.  Otherwise
+	 * <code>i</code>.  A blank line is two or more line breaks in a row, and
+	 * each may be followed by one character of indentation: a tab, or a space
+	 * which isn't the start of a <code>&amp;nbsp;</code>.  A CR LF pair is one
+	 * line break.
+	 */
+	private static int paragraphEnd(String s, int i) {
+		int n = s.length(), end = i, breaks = 0;
+		char c;
+		while(end<n) {
+			c = s.charAt(end);
+			if(c=='\r') {
+				end++;
+				if(end<n&&s.charAt(end)=='\n')
+					end++;
+			} else if(c=='\n')
+				end++;
+			else
+				break;
+			breaks++;
+			if(end<n) {
+				c = s.charAt(end);
+				if(c=='\t'||c=='\f'||c=='\u000B'||(c==' '
+						&&(end+1==n||s.charAt(end+1)!=' ')))
+					end++;
+			}
+		}
+		return breaks>=2 ? end : i;
 	}
 
 	@Override
 	public List<Emitter> getChildren() {
 		// the text tag is a filler - it can't support any kind of child
 		// node
-		return new LinkedList<Emitter>();
+		return NO_CHILDREN;
 	}
 	@Override
 	public void setChildren(List<Emitter> children) {
@@ -61,13 +165,4 @@ public class Text extends Emitter implements HtmlEmitter {
 		// just do nothing
 	}
 
-	private static HashMap<String, String> getHtmlReplacementTable() {
-		if(htmlReplacementTable==null) {
-			htmlReplacementTable = new HashMap<String, String>();
-			htmlReplacementTable.put("  ", "&nbsp;");
-			htmlReplacementTable.put("([\\r\\n][\\s]?){2,}", "<p/>");
-		}
-		return htmlReplacementTable;
-	}
-
 }
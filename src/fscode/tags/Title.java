@@ -2,10 +2,10 @@ package fscode.tags;
 
 import fscode.Emitter;
 import fscode.HtmlEmitter;
+import fscode.Markup;
 import fscode.exception.NonfatalException;
-import java.util.LinkedList;
+import java.io.IOException;
 import java.util.ResourceBundle;
-import org.w3c.dom.Node;
 
 /**
  * The title tag supports a document-level title.
@@ -15,7 +15,7 @@ import org.w3c.dom.Node;
  */
 public class Title extends Emitter implements HtmlEmitter {
 
-	public Title(Emitter parent, Node contents) {
+	public Title(Emitter parent, Markup contents) {
 		super(parent, contents);
 	}
 
@@ -25,29 +25,32 @@ public class Title extends Emitter implements HtmlEmitter {
 	 */
 	@Override
 	public Emitter parse() {
-		LinkedList<Emitter> allEmitters =
-				getRootEmitter().getAllChildEmitters();
-
-		for(Emitter em:allEmitters)
-			if(em instanceof Title) {
-				reportProblem("TAGS_TITLE_MULTIPLE_TITLE_TAGS");
-				return null;
-			}
+		// this title is in the index already, so any other is an earlier one
+		if(getIndex().count(Title.class)>1) {
+			reportProblem("TAGS_TITLE_MULTIPLE_TITLE_TAGS");
+			return null;
+		}
 
 		return super.parse();
 	}
 
-	public StringBuilder emitHtml() {
-		StringBuilder emission = new StringBuilder();
+	/**
+	 * Only the first title in a document is kept.
+	 */
+	@Override
+	public boolean isPositional() {
+		return true;
+	}
 
-		emission.append("<h1 id=\"top\">");
-		for(Emitter em:getChildren()) {
-			if(em instanceof HtmlEmitter)
-				emission.append(((HtmlEmitter)em).emitHtml());
-		}
-		emission.append("</h1>");
+	@Override
+	public boolean isStatic() {
+		return true;
+	}
 
-		return emission;
+	public void emitHtml(Appendable out) throws IOException {
+		out.append("<h1 id=\"top\">");
+		emitChildrenHtml(out);
+		out.append("</h1>");
 	}
 
 }
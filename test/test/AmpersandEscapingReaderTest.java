@@ -0,0 +1,99 @@
+package test;
+
+import fscode.AmpersandEscapingReader;
+import fscode.FSCodeEngine;
+import fscode.tags.BulkWikiProvider;
+import fscode.tags.WikiProvider;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks which ampersands get escaped on the way into the parser.
+ *
+ * @author cmiller
+ */
+public class AmpersandEscapingReaderTest {
+
+	public AmpersandEscapingReaderTest() {
+	}
+
+	private static String escape(String s) throws IOException {
+		Reader in = new AmpersandEscapingReader(new StringReader(s));
+		StringBuilder sb = new StringBuilder();
+		char[] buf = new char[7];
+		int read;
+		while((read = in.read(buf, 0, buf.length))!=-1)
+			sb.append(buf, 0, read);
+		return sb.toString();
+	}
+
+	@Test
+	public void escapesBareAmpersands() throws Exception {
+		assertEquals("AT&amp;T", escape("AT&T"));
+		assertEquals("tail &amp;", escape("tail &"));
+		assertEquals("&amp;nbsp;", escape("&nbsp;"));
+		assertEquals("&amp;#0;", escape("&#0;"));
+		assertEquals("&amp;#X41;", escape("&#X41;"));
+	}
+
+	@Test
+	public void leavesReferencesAlone() throws Exception {
+		assertEquals("a &lt; b &gt; c", escape("a &lt; b &gt; c"));
+		assertEquals("&amp;&quot;&apos;", escape("&amp;&quot;&apos;"));
+		assertEquals("&#65;&#x42;", escape("&#65;&#x42;"));
+	}
+
+	@Test
+	public void looksAheadAcrossBufferRefills() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for(int i=0;i!=8190;++i)
+			sb.append('x');
+		String tail = "&lt;y&z";
+		assertTrue(escape(sb + tail).endsWith("&lt;y&amp;z"));
+	}
+
+	@Test
+	public void entitiesRoundTripThroughTheEngine() throws Exception {
+		assertEquals("a &lt; b &amp; c",
+				new FSCodeEngine().render("<fscode>a &lt; b & c</fscode>"));
+	}
+
+	@Test
+	public void decodedPagesCantBreakOutOfLinks() throws Exception {
+		WikiProvider single = new WikiProvider() {
+			public boolean hasPage(String page) {
+				return true;
+			}
+
+			public String getUrlForPage(String page) {
+				return "/wiki/" + page;
+			}
+		};
+		BulkWikiProvider bulk = new BulkWikiProvider() {
+			public boolean hasPage(String page) {
+				return true;
+			}
+
+			public String getUrlForPage(String page) {
+				return "/wiki/" + page;
+			}
+		};
+		String doc = "<fscode><link page=\"x&quot; onmouseover=&quot;y\">a"
+				+ "</link></fscode>";
+		String expected = "<a href=\"/wiki/x&quot; onmouseover=&quot;y\">a"
+				+ "</a>";
+		for(WikiProvider wiki:new WikiProvider[] {single, bulk}) {
+			Map<String, Object> config = new HashMap<String, Object>();
+			config.put("isWiki", "yes");
+			config.put("wikiProviders", Collections.singletonMap("", wiki));
+			assertEquals(expected, new FSCodeEngine(config).render(doc));
+		}
+	}
+
+}
@@ -0,0 +1,112 @@
+package test;
+
+import fscode.BinaryDocument;
+import fscode.FSCode;
+import fscode.FSCodeEngine;
+import fscode.exception.NonfatalException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that documents loaded from their binary form come out the same as
+ * parsing their source.
+ *
+ * @author cmiller
+ */
+public class BinaryDocumentTest {
+
+	private final FSCodeEngine engine = new FSCodeEngine();
+
+	public BinaryDocumentTest() {
+	}
+
+	private static List<String> problemKeys(FSCode doc) {
+		List<String> keys = new ArrayList<String>();
+		if(doc.getProblems()!=null)
+			for(NonfatalException p:doc.getProblems())
+				keys.add(p.getKey());
+		return keys;
+	}
+
+	private static List<String> documents() throws IOException {
+		return Arrays.asList(new String(Files.readAllBytes(
+				new File("fscode_test_text.fscode.xml").toPath()),
+				StandardCharsets.UTF_8),
+				"<?xml version=\"1.0\"?><fscode><title>T</title><title>U"
+				+ "</title>a &lt; b &amp; c<![CDATA[ <d> ]]><!-- e -->"
+				+ "<url location=\"x&quot;y\">é中</url><table "
+				+ "border=\"-1\"><row><cell>z</cell></row></table></fscode>",
+				"<fscode/>");
+	}
+
+	@Test
+	public void loadsWhatWasParsed() throws Exception {
+		for(String code:documents()) {
+			FSCode parsed = engine.parse(code);
+			byte[] binary = BinaryDocument.compile(code);
+			FSCode loaded = engine.load(ByteBuffer.wrap(binary));
+			assertEquals(parsed.emitHtml().toString(),
+					loaded.emitHtml().toString());
+			assertEquals(problemKeys(parsed), problemKeys(loaded));
+			assertEquals(parsed.getIndex().size(), loaded.getIndex().size());
+		}
+	}
+
+	@Test
+	public void mapsFiles() throws Exception {
+		String code = documents().get(0);
+		Path file = Files.createTempFile("fscode", ".fscb");
+		try {
+			Files.write(file, BinaryDocument.compile(code));
+			assertEquals(engine.render(code),
+					engine.load(file).emitHtml().toString());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void rejectsOtherFormats() throws Exception {
+		byte[] binary = BinaryDocument.compile("<fscode><b>a</b></fscode>");
+		byte[] version = binary.clone();
+		version[5]++;
+		for(byte[] bad:new byte[][] {"<fscode/>".getBytes("UTF-8"), version,
+				Arrays.copyOf(binary, binary.length-2)}) {
+			try {
+				engine.load(ByteBuffer.wrap(bad));
+				fail("should not load");
+			} catch (IOException expected) {
+			}
+		}
+	}
+
+	@Test
+	public void rejectsBadCounts() throws Exception {
+		byte[] binary = BinaryDocument.compile("<fscode><b>a</b></fscode>");
+		byte[][] counts = {{(byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF,
+				0x0F}, {(byte)0xFF, (byte)0xFF, (byte)0xFF, 0x7F}};
+		for(int at:new int[] {8, 9})
+			for(byte[] count:counts) {
+				byte[] bad = new byte[binary.length+count.length-1];
+				System.arraycopy(binary, 0, bad, 0, at);
+				System.arraycopy(count, 0, bad, at, count.length);
+				System.arraycopy(binary, at+1, bad, at+count.length,
+						binary.length-at-1);
+				try {
+					engine.load(ByteBuffer.wrap(bad));
+					fail("should not load");
+				} catch (IOException expected) {
+				}
+			}
+	}
+
+}
@@ -0,0 +1,144 @@
+package test;
+
+import fscode.FSCode;
+import fscode.FSCodeEngine;
+import fscode.HtmlEmitter;
+import fscode.tags.BulkWikiProvider;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that wiki links are looked up in one batch per document.
+ *
+ * @author cmiller
+ */
+public class BulkWikiProviderTest {
+
+	public BulkWikiProviderTest() {
+	}
+
+	/**
+	 * Counts how it gets asked for URLs.
+	 */
+	private static class CountingWiki implements BulkWikiProvider {
+
+		int single, bulk, pages;
+
+		String prefix = "/wiki/";
+
+		public boolean hasPage(String page) {
+			return true;
+		}
+
+		public String getUrlForPage(String page) {
+			single++;
+			return prefix + page;
+		}
+
+		@Override
+		public Map<String, String> getUrlsForPages(Collection<String> pages) {
+			bulk++;
+			this.pages += pages.size();
+			Map<String, String> urls = new HashMap<String, String>();
+			for(String page:pages)
+				urls.put(page, prefix + page);
+			return urls;
+		}
+
+	}
+
+	@Test
+	public void linksAreLookedUpTogether() throws Exception {
+		CountingWiki wiki = new CountingWiki();
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("isWiki", "yes");
+		config.put("wikiProviders", Collections.singletonMap("", wiki));
+		StringBuilder code = new StringBuilder("<fscode>");
+		StringBuilder expected = new StringBuilder();
+		for(int i=0;i!=300;++i) {
+			code.append("<b><link page=\"P").append(i%30).append("\">x")
+					.append("</link></b>");
+			expected.append("<b><a href=\"/wiki/P").append(i%30)
+					.append("\">x</a></b>");
+		}
+		code.append("</fscode>");
+		FSCode doc = new FSCodeEngine(config).parse(code.toString());
+
+		assertEquals(expected.toString(), doc.emitHtml().toString());
+		assertEquals(1, wiki.bulk);
+		assertEquals(30, wiki.pages);
+		assertEquals(0, wiki.single);
+
+		// every emit sees the wiki as it is then
+		wiki.prefix = "/w/";
+		assertEquals(expected.toString().replace("/wiki/", "/w/"),
+				doc.emitHtml().toString());
+		assertEquals(2, wiki.bulk);
+
+		// links emitted on their own are looked up one at a time
+		((HtmlEmitter)doc.getChildren().get(0)).emitHtml();
+		assertEquals(1, wiki.single);
+	}
+
+	private static FSCode parse(BulkWikiProvider wiki, String code)
+			throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("isWiki", "yes");
+		config.put("wikiProviders", Collections.singletonMap("", wiki));
+		return new FSCodeEngine(config).parse(code);
+	}
+
+	@Test
+	public void failedLookupsFallBackToOnePageAtATime() throws Exception {
+		String code = "<fscode><link page=\"A\">a</link><link page=\"B\">b"
+				+ "</link></fscode>";
+		String expected = "<a href=\"/wiki/A\">a</a><a href=\"/wiki/B\">b</a>";
+		CountingWiki throwing = new CountingWiki() {
+			@Override
+			public CompletableFuture<Map<String, String>> getUrlsForPagesAsync(
+					Collection<String> pages) {
+				throw new IllegalStateException("down");
+			}
+		};
+		assertEquals(expected, parse(throwing, code).emitHtml().toString());
+		assertEquals(2, throwing.single);
+
+		CountingWiki cancelled = new CountingWiki() {
+			@Override
+			public CompletableFuture<Map<String, String>> getUrlsForPagesAsync(
+					Collection<String> pages) {
+				CompletableFuture<Map<String, String>> f =
+						new CompletableFuture<Map<String, String>>();
+				f.cancel(true);
+				return f;
+			}
+		};
+		assertEquals(expected, parse(cancelled, code).emitHtml().toString());
+		assertEquals(2, cancelled.single);
+	}
+
+	@Test
+	public void pagesWithoutUrlsAreNotAskedAgain() throws Exception {
+		CountingWiki wiki = new CountingWiki() {
+			@Override
+			public Map<String, String> getUrlsForPages(
+					Collection<String> pages) {
+				Map<String, String> urls = super.getUrlsForPages(pages);
+				urls.put("B", null);
+				return urls;
+			}
+		};
+		FSCode doc = parse(wiki, "<fscode><link page=\"A\">a</link>"
+				+ "<link page=\"B\">b</link></fscode>");
+		assertEquals("<a href=\"/wiki/A\">a</a><a href=\"null\">b</a>",
+				doc.emitHtml().toString());
+		assertEquals(1, wiki.bulk);
+		assertEquals(0, wiki.single);
+	}
+
+}
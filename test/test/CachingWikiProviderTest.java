@@ -0,0 +1,228 @@
+package test;
+
+import fscode.FSCodeEngine;
+import fscode.tags.BulkWikiProvider;
+import fscode.tags.CachingWikiProvider;
+import fscode.tags.WikiProvider;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks what a cached wiki remembers, for how long, and when it forgets.
+ *
+ * @author cmiller
+ */
+public class CachingWikiProviderTest {
+
+	public CachingWikiProviderTest() {
+	}
+
+	/**
+	 * A wiki which counts how often it is asked about pages.
+	 */
+	private static class Wiki implements BulkWikiProvider {
+
+		final Set<String> pages = new HashSet<String>();
+
+		int asked;
+
+		public boolean hasPage(String page) {
+			asked++;
+			return pages.contains(page);
+		}
+
+		public String getUrlForPage(String page) {
+			asked++;
+			return (pages.contains(page) ? "/view/" : "/edit/") + page;
+		}
+
+		@Override
+		public Map<String, String> getUrlsForPages(Collection<String> pages) {
+			Map<String, String> urls = new HashMap<String, String>();
+			for(String page:pages)
+				urls.put(page, getUrlForPage(page));
+			return urls;
+		}
+
+	}
+
+	/**
+	 * A cache whose clock only moves when told to.
+	 */
+	private static class Cache extends CachingWikiProvider {
+
+		long time;
+
+		Cache(WikiProvider wiki, int maxPages) {
+			super(wiki, maxPages, 60, 5, TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		protected long now() {
+			return time;
+		}
+
+	}
+
+	@Test
+	public void pagesAreRememberedUntilTheyRunOut() throws Exception {
+		Wiki wiki = new Wiki();
+		wiki.pages.add("Home");
+		Cache cache = new Cache(wiki, 100);
+
+		for(int i=0;i!=10;++i) {
+			assertTrue(cache.hasPage("Home"));
+			assertFalse(cache.hasPage("Nowhere"));
+			assertEquals("/view/Home", cache.getUrlForPage("Home"));
+		}
+		assertEquals(3, wiki.asked);
+		assertEquals(27, cache.getHits());
+
+		// missing pages run out sooner
+		cache.time = 10;
+		assertTrue(cache.hasPage("Home"));
+		assertFalse(cache.hasPage("Nowhere"));
+		assertEquals(4, wiki.asked);
+		cache.time = 100;
+		assertTrue(cache.hasPage("Home"));
+		assertEquals(5, wiki.asked);
+
+		// the wiki says when pages change
+		wiki.pages.add("Nowhere");
+		cache.invalidate("Nowhere");
+		assertTrue(cache.hasPage("Nowhere"));
+		assertEquals("/view/Nowhere", cache.getUrlForPage("Nowhere"));
+		assertEquals(7, wiki.asked);
+		wiki.pages.remove("Home");
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+		assertEquals("/edit/Home", cache.getUrlForPage("Home"));
+	}
+
+	@Test
+	public void onlyUncachedPagesAreAskedForInBulk() throws Exception {
+		Wiki wiki = new Wiki();
+		Cache cache = new Cache(wiki, 3);
+		assertEquals(2, cache.getUrlsForPages(Arrays.asList("A", "B")).size());
+		assertEquals(2, wiki.asked);
+		Map<String, String> urls = cache.getUrlsForPagesAsync(
+				Arrays.asList("A", "B", "C")).join();
+		assertEquals("/edit/C", urls.get("C"));
+		assertEquals(3, wiki.asked);
+		cache.getUrlForPage("D");
+		assertEquals(3, cache.size());
+		// one page had to go
+		cache.getUrlsForPages(Arrays.asList("A", "B", "C", "D"));
+		assertEquals(5, wiki.asked);
+	}
+
+	@Test
+	public void enginesUseTheCacheForLinks() throws Exception {
+		Wiki wiki = new Wiki();
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("isWiki", "yes");
+		config.put("wikiProviders", CachingWikiProvider.wrapAll(
+				Collections.singletonMap("", wiki), 100, 1,
+				1, TimeUnit.HOURS));
+		FSCodeEngine engine = new FSCodeEngine(config);
+		String doc = "<fscode><link page=\"A\">a</link><link page=\"B\">b"
+				+ "</link></fscode>";
+		for(int i=0;i!=5;++i)
+			assertEquals("<a href=\"/edit/A\">a</a><a href=\"/edit/B\">b</a>",
+					engine.render(doc));
+		assertEquals(2, wiki.asked);
+
+		wiki.pages.add("A");
+		((CachingWikiProvider)engine.getOptions().getWikiProviders().get(""))
+				.invalidate("A");
+		assertEquals("<a href=\"/view/A\">a</a><a href=\"/edit/B\">b</a>",
+				engine.render(doc));
+		assertEquals(3, wiki.asked);
+	}
+
+	@Test
+	public void linksLastLongerOncePagesAreKnownToExist() throws Exception {
+		Wiki wiki = new Wiki();
+		wiki.pages.add("A");
+		Cache cache = new Cache(wiki, 100);
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("isWiki", "yes");
+		config.put("wikiProviders",
+				Collections.<String, WikiProvider>singletonMap("", cache));
+		FSCodeEngine engine = new FSCodeEngine(config);
+		String doc = "<fscode><link page=\"A\">a</link><link page=\"B\">b"
+				+ "</link></fscode>";
+		// links don't ask whether their pages exist
+		assertEquals("<a href=\"/view/A\">a</a><a href=\"/edit/B\">b</a>",
+				engine.render(doc));
+		assertEquals(2, wiki.asked);
+		cache.time = 5;
+		engine.render(doc);
+		assertEquals(2, wiki.asked);
+
+		// so until something does, they run out as soon as missing pages
+		wiki.pages.add("B");
+		cache.time = 10;
+		assertEquals("<a href=\"/view/A\">a</a><a href=\"/view/B\">b</a>",
+				engine.render(doc));
+		assertEquals(4, wiki.asked);
+		cache.hasPages(Arrays.asList("A", "B"));
+		assertEquals(6, wiki.asked);
+		cache.time = 20;
+		engine.render(doc);
+		assertEquals(8, wiki.asked);
+		cache.time = 60;
+		engine.render(doc);
+		assertEquals(8, wiki.asked);
+	}
+
+	@Test
+	public void onlyInvalidatedPagesLoseAnswersOnTheirWay() throws Exception {
+		final Cache[] cache = new Cache[1];
+		Wiki wiki = new Wiki() {
+			@Override
+			public Map<String, String> getUrlsForPages(
+					Collection<String> pages) {
+				Map<String, String> urls = super.getUrlsForPages(pages);
+				cache[0].invalidate("A");
+				return urls;
+			}
+		};
+		cache[0] = new Cache(wiki, 100);
+		cache[0].getUrlsForPages(Arrays.asList("A", "B"));
+		assertEquals(2, wiki.asked);
+		wiki.pages.add("A");
+		assertEquals("/view/A", cache[0].getUrlForPage("A"));
+		assertEquals("/edit/B", cache[0].getUrlForPage("B"));
+		assertEquals(3, wiki.asked);
+	}
+
+	@Test
+	public void pagesWithoutUrlsAreRemembered() throws Exception {
+		Wiki wiki = new Wiki() {
+			@Override
+			public String getUrlForPage(String page) {
+				asked++;
+				return null;
+			}
+		};
+		Cache cache = new Cache(wiki, 100);
+		for(int i=0;i!=3;++i) {
+			assertNull(cache.getUrlForPage("A"));
+			assertTrue(cache.getUrlsForPages(Arrays.asList("A")).containsKey("A"));
+		}
+		assertEquals(1, wiki.asked);
+		cache.time = 10;
+		assertNull(cache.getUrlForPage("A"));
+		assertEquals(2, wiki.asked);
+	}
+
+}
@@ -0,0 +1,51 @@
+package test;
+
+import fscode.Emitter;
+import fscode.FSCode;
+import fscode.FSCodeEngine;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that trimming parsed documents down for keeping doesn't change what
+ * they do.
+ *
+ * @author cmiller
+ */
+public class CompactTest {
+
+	public CompactTest() {
+	}
+
+	@Test
+	public void childrenOnlyChangeThroughTheEmitter() throws Exception {
+		FSCode doc = new FSCodeEngine().parse(
+				"<fscode><b>a</b><br/></fscode>");
+		Emitter bold = doc.getChildren().get(0);
+		Emitter leaf = doc.getChildren().get(1);
+		for(Emitter em:new Emitter[] {doc, bold, leaf})
+			try {
+				em.getChildren().add(leaf);
+				fail("child list of " + em + " can be changed");
+			} catch (UnsupportedOperationException ex) {
+			}
+
+		leaf.appendChild(bold.getChildren().get(0));
+		assertEquals(1, leaf.getChildren().size());
+		leaf.setChildren(Collections.<Emitter>emptyList());
+		assertTrue(leaf.getChildren().isEmpty());
+	}
+
+	@Test
+	public void compactedDocumentsRenderTheSame() throws Exception {
+		for(String code:FSCodeEngineTest.documents()) {
+			FSCode doc = new FSCode(code).parse();
+			String html = doc.emitHtml().toString();
+			doc.compact();
+			assertNull(doc.getMarkup());
+			assertEquals(html, doc.emitHtml().toString());
+		}
+	}
+
+}
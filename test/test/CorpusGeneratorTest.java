@@ -0,0 +1,93 @@
+package test;
+
+import fscode.CorpusGenerator;
+import fscode.Emitter;
+import fscode.FSCode;
+import fscode.FSCodeEngine;
+import fscode.exception.NonfatalException;
+import fscode.macro.TOCMacro;
+import fscode.tags.Heading;
+import fscode.tags.Row;
+import fscode.tags.Table;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that generated documents can be made again from their seed, parse,
+ * and have the shape asked for.
+ *
+ * @author cmiller
+ */
+public class CorpusGeneratorTest {
+
+	private final FSCodeEngine engine = new FSCodeEngine();
+
+	public CorpusGeneratorTest() {
+	}
+
+	/**
+	 * Problems other than links to a wiki, which there isn't one of here.
+	 */
+	private static int malformed(FSCode doc) {
+		int n = 0;
+		if(doc.getProblems()!=null)
+			for(NonfatalException p:doc.getProblems())
+				if(!"TAGS_INTERNAL_LINK_NO_SUCH_WIKI".equals(p.getKey()))
+					n++;
+		return n;
+	}
+
+	@Test
+	public void seedsMakeTheSameDocument() throws Exception {
+		CorpusGenerator gen = new CorpusGenerator(7);
+		String first = gen.generate();
+		assertEquals(first, new CorpusGenerator(7).generate());
+		gen.setSeed(8);
+		assertFalse(first.equals(gen.generate()));
+	}
+
+	@Test
+	public void sizesSweepByOrdersOfMagnitude() throws Exception {
+		CorpusGenerator gen = new CorpusGenerator(1);
+		for(long size=1024;size<=1024*1024;size*=32) {
+			gen.setSize(size);
+			String code = gen.generate();
+			assertTrue(code.length()>=size);
+			assertTrue(code.length()<size+16*1024);
+			assertEquals(0, malformed(engine.parse(code)));
+		}
+	}
+
+	@Test
+	public void shapeFollowsTheKnobs() throws Exception {
+		CorpusGenerator gen = new CorpusGenerator(3);
+		gen.setSize(256*1024);
+		gen.setHeadingInterval(1024);
+		gen.setTocs(4);
+		gen.setTableInterval(8*1024);
+		gen.setTableSize(3, 2);
+		gen.setMalformedShare(0.5);
+		FSCode doc = engine.parse(gen.generate());
+		assertEquals(4, doc.getIndex().count(TOCMacro.class));
+		int headings = doc.getIndex().count(Heading.class);
+		assertTrue(headings>150&&headings<300);
+		assertTrue(doc.getIndex().count(Table.class)>10);
+		int rows = 0;
+		for(Emitter em:doc.getIndex().getAll(Table.class).get(0)
+				.getChildren())
+			if(em instanceof Row)
+				rows++;
+		assertEquals(3, rows);
+		assertTrue(malformed(doc)>50);
+
+		gen.setDepth(0);
+		gen.setLinkDensity(0);
+		gen.setHeadingInterval(0);
+		gen.setTableInterval(0);
+		gen.setTocs(0);
+		assertFalse(gen.generate().contains("<b>"));
+		assertEquals(0, engine.parse(gen.generate()).getIndex()
+				.count(Heading.class));
+	}
+
+}
@@ -0,0 +1,36 @@
+package test;
+
+import fscode.Dialect;
+import fscode.Emitter;
+import fscode.FSCodeEngine;
+import fscode.RenderOptions;
+import fscode.tags.Bold;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that each engine parses with its own set of tags.
+ *
+ * @author cmiller
+ */
+public class DialectTest {
+
+	public DialectTest() {
+	}
+
+	@Test
+	public void enginesKeepTheirOwnDialects() throws Exception {
+		String doc = "<fscode><strong>a</strong><b>b</b></fscode>";
+		FSCodeEngine forum = new FSCodeEngine(RenderOptions.DEFAULT,
+				Dialect.DEFAULT.with("strong", Bold::new));
+		FSCodeEngine wiki = new FSCodeEngine();
+		assertEquals("<b>a</b><b>b</b>", forum.render(doc));
+		assertEquals("<b>b</b>", wiki.render(doc));
+
+		wiki.setDialect(forum.getDialect().without("b"));
+		assertEquals("<b>a</b>", wiki.render(doc));
+		assertEquals("<b>a</b><b>b</b>", forum.render(doc));
+		assertFalse(Emitter.getGlobalDialect().contains("strong"));
+	}
+
+}
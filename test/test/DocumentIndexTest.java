@@ -0,0 +1,92 @@
+package test;
+
+import fscode.DocumentIndex;
+import fscode.Emitter;
+import fscode.FSCode;
+import fscode.FSCodeEngine;
+import fscode.HtmlEmitter;
+import fscode.Outline;
+import fscode.macro.TOCElement;
+import fscode.tags.Bold;
+import fscode.tags.Heading;
+import fscode.tags.Title;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the index each document keeps of its emitters.
+ *
+ * @author cmiller
+ */
+public class DocumentIndexTest {
+
+	public DocumentIndexTest() {
+	}
+
+	@Test
+	public void indexesInDocumentOrder() throws Exception {
+		FSCode doc = new FSCodeEngine().parse("<fscode><b>a</b><h1>One</h1>"
+				+ "<i><b>b</b></i><h2>Two</h2></fscode>");
+		DocumentIndex index = doc.getIndex();
+		assertEquals(doc.getAllChildEmitters(), index.getAll());
+		assertEquals(2, index.count(Bold.class));
+		assertEquals(2, index.getAll(Heading.class).size());
+		assertEquals("One", index.getAll(TOCElement.class).get(0).getName());
+		assertEquals(index.size(), index.count(Emitter.class));
+		assertEquals(index.size(), index.getAll(Emitter.class).size());
+		assertEquals(index.size(), index.count(HtmlEmitter.class));
+	}
+
+	@Test
+	public void compactedIndexesRebuildTheFullList() throws Exception {
+		FSCode doc = new FSCodeEngine().parse("<fscode><b>a</b><h1>One</h1>"
+				+ "<i><b>b</b></i><h2>Two</h2></fscode>");
+		int size = doc.getIndex().size();
+		doc.compact();
+		DocumentIndex index = doc.getIndex();
+		assertEquals(size, index.size());
+		assertEquals(2, index.count(Bold.class));
+		assertEquals(2, index.getAll(Heading.class).size());
+		assertEquals(doc.getAllChildEmitters(), index.getAll());
+		assertEquals(size, index.getAll(HtmlEmitter.class).size());
+	}
+
+	@Test
+	public void rejectedTitlesLeaveTheIndex() throws Exception {
+		FSCode doc = new FSCodeEngine().parse("<fscode><title>One</title>"
+				+ "<title>Two <b>2</b></title></fscode>");
+		assertEquals(1, doc.getIndex().count(Title.class));
+		assertEquals(0, doc.getIndex().count(Bold.class));
+		assertEquals(doc.getAllChildEmitters(), doc.getIndex().getAll());
+		assertEquals(1, doc.getProblems().size());
+		assertSame(doc, doc.getIndex().getAll().get(0).getRootEmitter());
+	}
+
+	@Test
+	public void outlineSectionsEndAtTheNextPeer() throws Exception {
+		FSCode doc = new FSCodeEngine().parse("<fscode><h1>A</h1><h2>B</h2>"
+				+ "<h3>C</h3><h2>D</h2><h1>E</h1><h3>F</h3></fscode>");
+		Outline outline = doc.getIndex().getOutline();
+		assertEquals(6, outline.size());
+		assertEquals(4, outline.getSectionEnd(0));
+		assertEquals(3, outline.getSectionEnd(1));
+		assertEquals(3, outline.getSectionEnd(2));
+		assertEquals(4, outline.getSectionEnd(3));
+		assertEquals(6, outline.getSectionEnd(4));
+		assertEquals(6, outline.getSectionEnd(5));
+		assertEquals(2, outline.getSection(0, 2).size());
+	}
+
+	@Test
+	public void tocCoversTheRestOfTheSectionAndHonorsDepth()
+			throws Exception {
+		String html = new FSCodeEngine().render("<fscode><h1>A</h1>"
+				+ "<macro:toc depth=\"2\"/><h2>B</h2><h3>C</h3><h2>D</h2>"
+				+ "</fscode>");
+		assertTrue(html.contains("#B"));
+		assertFalse(html.contains("#C"));
+		assertTrue(html.contains("#D"));
+		assertFalse(html.contains("<li><a href=\"#A\""));
+	}
+
+}
@@ -0,0 +1,56 @@
+package test;
+
+import fscode.Emitter;
+import fscode.FSCodeEngine;
+import fscode.tags.Bold;
+import fscode.tags.Italic;
+import java.util.TreeMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that tags are made through factories, and that the old class-based
+ * tag list still works.
+ *
+ * @author cmiller
+ */
+public class EmitterFactoryTest {
+
+	public EmitterFactoryTest() {
+	}
+
+	@Test
+	public void customTagsRegisterThroughFactories() throws Exception {
+		try {
+			Emitter.addEmitter("strong", Bold::new);
+			Emitter.addEmitter("em", Italic.class);
+			assertEquals("<b>a</b><i>b</i>", new FSCodeEngine().render(
+					"<fscode><strong>a</strong><em>b</em></fscode>"));
+		} finally {
+			Emitter.resetEmitterList();
+		}
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void emitterClassesCanStillBeSwapped() throws Exception {
+		try {
+			TreeMap<String, Class<? extends Emitter>> saved =
+					Emitter.getEmitters();
+			assertEquals(Bold.class, saved.get("b"));
+			assertEquals(Emitter.getEmitterFactories().size(), saved.size());
+			TreeMap<String, Class<? extends Emitter>> swapped =
+					new TreeMap<String, Class<? extends Emitter>>(saved);
+			swapped.put("b", Italic.class);
+			Emitter.setEmitters(swapped);
+			assertEquals("<i>a</i>", new FSCodeEngine().render(
+					"<fscode><b>a</b></fscode>"));
+			Emitter.setEmitters(saved);
+			assertEquals("<b>a</b>", new FSCodeEngine().render(
+					"<fscode><b>a</b></fscode>"));
+		} finally {
+			Emitter.resetEmitterList();
+		}
+	}
+
+}
@@ -0,0 +1,193 @@
+package test;
+
+import fscode.FSCode;
+import fscode.FSCodeEngine;
+import fscode.Rendering;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Hammers one shared engine from many threads and checks that every thread
+ * gets exactly the same output as a single-threaded render.
+ *
+ * @author cmiller
+ */
+public class FSCodeEngineTest {
+
+	private static final int THREADS =
+			Math.max(4, Runtime.getRuntime().availableProcessors()*2);
+
+	private static final int ROUNDS = 200;
+
+	public FSCodeEngineTest() {
+	}
+
+	private static String readTestText() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		Reader in = new InputStreamReader(
+				new FileInputStream(new File("fscode_test_text.fscode.xml")),
+				"UTF-8");
+		try {
+			char[] buf = new char[4096];
+			int read;
+			while((read = in.read(buf))!=-1)
+				sb.append(buf, 0, read);
+		} finally {
+			in.close();
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * The test text and a few documents with problems in them, which the
+	 * other rendering tests run through as well.
+	 */
+	static List<String> documents() throws IOException {
+		List<String> docs = new ArrayList<String>();
+		docs.add(readTestText());
+		docs.add("<fscode><title>Other</title><macro:toc/>"
+				+ "<h1>One</h1>text  with  spaces<h2>Two</h2>"
+				+ "<table border=\"-1\"><row><cell>a</cell></row></table>"
+				+ "<url>no location</url></fscode>");
+		docs.add("<fscode><b><i>nested <code>deeply</code></i></b>"
+				+ "<image src=\"a.png\" width=\"bogus\"/></fscode>");
+		return docs;
+	}
+
+	/**
+	 * Renders every document on many threads at once and compares against
+	 * the output from this thread.
+	 */
+	private void stress(final Renderer renderer) throws Exception {
+		final List<String> docs = documents();
+		final List<String> expected = new ArrayList<String>();
+		for(String doc:docs)
+			expected.add(renderer.render(doc));
+
+		ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+		final CountDownLatch start = new CountDownLatch(1);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			for(int t=0;t!=THREADS;++t) {
+				final int offset = t;
+				results.add(pool.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						start.await();
+						int rendered = 0;
+						for(int i=0;i!=ROUNDS;++i) {
+							int which = (i+offset)%docs.size();
+							assertEquals(expected.get(which),
+									renderer.render(docs.get(which)));
+							rendered++;
+						}
+						return rendered;
+					}
+				}));
+			}
+			start.countDown();
+			for(Future<Integer> f:results)
+				assertEquals(ROUNDS, f.get().intValue());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private interface Renderer {
+		public String render(String code) throws Exception;
+	}
+
+	@Test
+	public void sharedEngineIsByteIdenticalUnderContention()
+			throws Exception {
+		final FSCodeEngine engine = new FSCodeEngine();
+		stress(new Renderer() {
+			public String render(String code) throws Exception {
+				return engine.render(code);
+			}
+		});
+	}
+
+	@Test
+	public void renderAllKeepsInputOrder() throws Exception {
+		FSCodeEngine engine = new FSCodeEngine();
+		List<String> docs = new ArrayList<String>();
+		for(int i=0;i!=100;++i)
+			docs.add(i==37 ? "<fscode><b></fscode>"
+					: "<fscode><b>" + i + "</b></fscode>");
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Rendering> forked = engine.renderAll(docs, pool);
+			List<Rendering> executed = engine.renderAll(
+					(Iterable<String>)docs, executor);
+			assertEquals(docs.size(), forked.size());
+			assertEquals(docs.size(), executed.size());
+			for(int i=0;i!=docs.size();++i) {
+				if(i==37) {
+					assertFalse(forked.get(i).isParsed());
+					assertFalse(executed.get(i).isParsed());
+				} else {
+					assertEquals("<b>" + i + "</b>", forked.get(i).getHtml());
+					assertEquals("<b>" + i + "</b>",
+							executed.get(i).getHtml());
+				}
+			}
+		} finally {
+			pool.shutdown();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void renderAllSurvivesTagsWhichThrow() throws Exception {
+		FSCodeEngine engine = new FSCodeEngine();
+		List<String> docs = new ArrayList<String>();
+		for(int i=0;i!=20;++i)
+			docs.add(i==7 ? "<fscode><table><row><cell rowspan=\"x\">c"
+					+ "</cell></row></table></fscode>"
+					: "<fscode><i>" + i + "</i></fscode>");
+
+		ForkJoinPool pool = new ForkJoinPool(4);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for(List<Rendering> done:Arrays.asList(
+					engine.renderAll(docs, pool),
+					engine.renderAll((Iterable<String>)docs, executor))) {
+				assertEquals(docs.size(), done.size());
+				assertFalse(done.get(7).isParsed());
+				assertTrue(done.get(7).getError()
+						instanceof NumberFormatException);
+				assertEquals("<i>8</i>", done.get(8).getHtml());
+			}
+		} finally {
+			pool.shutdown();
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void domConstructorsAreByteIdenticalUnderContention()
+			throws Exception {
+		stress(new Renderer() {
+			public String render(String code) throws Exception {
+				return new FSCode(code).parse().emitHtml().toString();
+			}
+		});
+	}
+
+}
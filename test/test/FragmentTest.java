@@ -0,0 +1,98 @@
+package test;
+
+import fscode.Dialect;
+import fscode.Emitter;
+import fscode.FSCode;
+import fscode.FSCodeEngine;
+import fscode.HtmlEmitter;
+import fscode.Markup;
+import fscode.tags.WikiProvider;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that static parts of a kept document are only rendered once while
+ * the dynamic ones are rendered every time.
+ *
+ * @author cmiller
+ */
+public class FragmentTest {
+
+	/**
+	 * How many times a <code>Counted</code> tag has been emitted.
+	 */
+	private static int emits;
+
+	public FragmentTest() {
+	}
+
+	/**
+	 * A static tag which counts how often it is really emitted.
+	 */
+	public static class Counted extends Emitter implements HtmlEmitter {
+
+		public Counted(Emitter parent, Markup contents) {
+			super(parent, contents);
+		}
+
+		@Override
+		public boolean isStatic() {
+			return true;
+		}
+
+		public void emitHtml(Appendable out) throws IOException {
+			emits++;
+			out.append("<i>");
+			emitChildrenHtml(out);
+			out.append("</i>");
+		}
+
+	}
+
+	@Test
+	public void onlyDynamicTagsAreEmittedAgain() throws Exception {
+		final Map<String, String> pages = new HashMap<String, String>();
+		pages.put("Home", "/wiki/Home");
+		WikiProvider wiki = new WikiProvider() {
+			public boolean hasPage(String page) {
+				return pages.containsKey(page);
+			}
+
+			public String getUrlForPage(String page) {
+				return pages.get(page);
+			}
+		};
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("isWiki", Boolean.TRUE);
+		config.put("wikiProviders", Collections.singletonMap("", wiki));
+		FSCodeEngine engine = new FSCodeEngine(config,
+				Dialect.DEFAULT.with("counted", Counted::new));
+		FSCode doc = engine.parse(new StringReader("<fscode><counted>a"
+				+ "</counted><b><link page=\"Home\"><counted>b</counted></link>"
+				+ "</b></fscode>"));
+
+		emits = 0;
+		String html = "<i>a</i><b><a href=\"/wiki/Home\"><i>b</i></a></b>";
+		for(int i=0;i!=3;++i)
+			assertEquals(html, doc.emitHtml().toString());
+		// once straight out, and once more to keep the HTML
+		assertEquals(4, emits);
+
+		pages.put("Home", "/wiki/Start");
+		assertEquals(html.replace("Home", "Start"),
+				doc.emitHtml().toString());
+		assertEquals(4, emits);
+
+		Emitter first = doc.getChildren().get(0);
+		first.appendChild(new Counted(first, null));
+		assertEquals("<i>a<i></i></i><b><a href=\"/wiki/Start\"><i>b</i></a>"
+				+ "</b>", doc.emitHtml().toString());
+		assertEquals(6, emits);
+	}
+
+}
@@ -0,0 +1,126 @@
+package test;
+
+import fscode.Emitter;
+import fscode.FSCode;
+import fscode.FSCodeEngine;
+import fscode.IncrementalDocument;
+import fscode.exception.NonfatalException;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.xml.sax.SAXException;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that editing a document bit by bit ends up with the same document as
+ * parsing the edited text from scratch.
+ *
+ * @author cmiller
+ */
+public class IncrementalDocumentTest {
+
+	private final FSCodeEngine engine = new FSCodeEngine();
+
+	public IncrementalDocumentTest() {
+	}
+
+	private static List<String> problemKeys(FSCode doc) {
+		List<String> keys = new ArrayList<String>();
+		if(doc.getProblems()!=null)
+			for(NonfatalException p:doc.getProblems())
+				keys.add(p.getKey());
+		return keys;
+	}
+
+	private void assertSameAsFreshParse(IncrementalDocument inc)
+			throws Exception {
+		FSCode fresh = engine.parse(inc.getText());
+		FSCode doc = inc.getDocument();
+		assertEquals(fresh.emitHtml().toString(), doc.emitHtml().toString());
+		assertEquals(problemKeys(fresh), problemKeys(doc));
+		assertEquals(fresh.getIndex().size(), doc.getIndex().size());
+		for(Emitter em:doc.getDescendants())
+			assertSame(doc, em.getRootEmitter());
+	}
+
+	@Test
+	public void onlyChangedSegmentsAreParsed() throws Exception {
+		IncrementalDocument inc = engine.parseIncrementally("<fscode>"
+				+ "<h1>One</h1><macro:toc/>first <b>bold</b> second "
+				+ "<table border=\"-1\"><row><cell>c</cell></row></table>"
+				+ "last</fscode>");
+		Emitter bold = inc.getDocument().getChildren().get(3);
+		String text = inc.getText();
+
+		inc.edit(text.indexOf("second"), "second".length(), "2nd");
+		assertSame(bold, inc.getDocument().getChildren().get(3));
+		assertEquals(1, inc.getParsedSegments());
+		assertSameAsFreshParse(inc);
+
+		text = inc.getText();
+		inc.edit(text.indexOf("-1"), 2, "2");
+		assertSame(bold, inc.getDocument().getChildren().get(3));
+		assertEquals(3, inc.getParsedSegments());
+		assertSameAsFreshParse(inc);
+
+		// a new heading changes the table of contents
+		text = inc.getText();
+		inc.edit(text.indexOf("last"), 0, "<h2>Two</h2>");
+		assertEquals(0, inc.getReusedSegments());
+		assertSameAsFreshParse(inc);
+		assertTrue(inc.getDocument().emitHtml().toString()
+				.contains("<a href=\"#Two\">"));
+
+		text = inc.getText();
+		try {
+			inc.edit(text.indexOf("<b>"), 1, "");
+			fail("a broken tag should not parse");
+		} catch (SAXException expected) {
+		}
+		assertEquals(text, inc.getText());
+		assertSameAsFreshParse(inc);
+	}
+
+	@Test
+	public void randomEditsMatchAFreshParse() throws Exception {
+		String text = new String(Files.readAllBytes(
+				new File("fscode_test_text.fscode.xml").toPath()),
+				StandardCharsets.UTF_8);
+		IncrementalDocument inc = engine.parseIncrementally(text);
+		String[] inserts = {"x", "  ", "\n\n", "<b>y</b>", "<i>",
+				"<url location=\"a\">z</url>", "&amp;", "<!-- c -->"};
+		Random random = new Random(42);
+		int parsed = 0, reused = 0;
+		for(int i=0;i!=200;++i) {
+			text = inc.getText();
+			int at = random.nextInt(text.length());
+			int removed = Math.min(random.nextInt(3), text.length()-at);
+			String inserted = inserts[random.nextInt(inserts.length)];
+			String edited = text.substring(0, at) + inserted
+					+ text.substring(at+removed);
+			boolean valid;
+			try {
+				engine.parse(edited);
+				valid = true;
+			} catch (SAXException ex) {
+				valid = false;
+			}
+			try {
+				inc.edit(at, removed, inserted);
+				assertTrue(valid);
+				parsed += inc.getParsedSegments();
+				reused += inc.getReusedSegments();
+			} catch (SAXException ex) {
+				assertFalse(valid);
+				assertEquals(text, inc.getText());
+			}
+			assertSameAsFreshParse(inc);
+		}
+		assertTrue(reused>parsed);
+	}
+
+}
@@ -0,0 +1,148 @@
+package test;
+
+import fscode.LinkPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that a compiled link policy agrees with matching each rule on its
+ * own.
+ *
+ * @author cmiller
+ */
+public class LinkPolicyTest {
+
+	private static final String[] RULES = {
+		"http://spam\\.example\\.com/",
+		"http://ads\\.example\\.com/.*",
+		".*casino.*",
+		"\\Qhttp://a.b/?x=\\E.*",
+		"https?://(www\\.)?pills\\.example/.*",
+		"(?i).*VIAGRA.*",
+		"http://(\\w+)\\.mirror\\.example/\\1",
+		"http://evil\\.*",
+	};
+
+	private static final String[] URLS = {
+		"http://spam.example.com/",
+		"http://spam.example.com/x",
+		"http://ads.example.com/",
+		"http://ads.example.com/banner",
+		"http://ads.example.co",
+		"http://example.com/online-casino",
+		"http://a.b/?x=1",
+		"http://aXb/?x=1",
+		"https://www.pills.example/buy",
+		"http://pills.example/",
+		"http://example.com/Viagra",
+		"http://foo.mirror.example/foo",
+		"http://foo.mirror.example/bar",
+		"http://evil...",
+		"http://evilx",
+		"http://example.com/",
+		"http://ads.example.com/a\nb",
+		"http://a/\ncasino",
+		"http://a/\r\ncasino\u2028",
+		"",
+	};
+
+	public LinkPolicyTest() {
+	}
+
+	@Test
+	public void agreesWithStringMatches() {
+		LinkPolicy policy = LinkPolicy.compile(Arrays.asList(RULES));
+		boolean expected;
+		for(int round=0;round!=2;++round)
+			for(String url:URLS) {
+				expected = false;
+				for(String rule:RULES)
+					expected |= url.matches(rule);
+				assertEquals(url, expected, policy.isForbidden(url));
+			}
+	}
+
+	@Test
+	public void givesUpOnCatastrophicBacktracking() {
+		LinkPolicy policy = LinkPolicy.compile(Arrays.asList("(.*a){20}"));
+		StringBuilder url = new StringBuilder();
+		for(int i=0;i!=20;++i)
+			url.append('a');
+		assertTrue(policy.isForbidden(url.toString()));
+		assertFalse(policy.isForbidden("aaac"));
+		// takes seconds to fail without the limit
+		url.append("aaaaaaac");
+		long start = System.nanoTime();
+		assertTrue(policy.isForbidden(url.toString()));
+		assertTrue(System.nanoTime()-start<1000000000L);
+	}
+
+	@Test
+	public void manyRulesDoNotRunOutOfSteps() {
+		List<String> rules = new ArrayList<String>();
+		for(int i=0;i!=3000;++i)
+			rules.add("https?://([a-z]+\\.)*ads" + i + "\\.net(/.*)?");
+		LinkPolicy policy = LinkPolicy.compile(rules);
+		assertFalse(policy.isForbidden("http://www.example.org/wiki/Page"));
+		assertTrue(policy.isForbidden("http://www.ads2999.net/x"));
+	}
+
+	@Test
+	public void badRulesAreCutOffAmongMany() {
+		List<String> rules = new ArrayList<String>();
+		for(int i=0;i!=5000;++i)
+			rules.add("https?://([a-z]+\\.)*ads" + i + "\\.net(/.*)?");
+		rules.add(2500, "(.*a){20}");
+		LinkPolicy policy = LinkPolicy.compile(rules);
+		StringBuilder url = new StringBuilder();
+		for(int i=0;i!=20;++i)
+			url.append('a');
+		url.append("aaaaaaac");
+		long start = System.nanoTime();
+		assertTrue(policy.isForbidden(url.toString()));
+		assertTrue(System.nanoTime()-start<1000000000L);
+		assertFalse(policy.isForbidden("http://www.example.org/wiki/Page"));
+	}
+
+	@Test
+	public void rulesWhichOnlyWorkAloneStillCompile() {
+		String[][] sets = {
+			{"(?x) https?://spam\\.example/.*  # spam host"},
+			{"[a-z]+\\Q.example/ads"},
+			{"(?x) a+ # c", "b+"},
+			{"(?ix: a+ ) # c", "b+", "\\Qx\\E+"},
+		};
+		String[] urls = {"http://spam.example/x", "https://spam.example/",
+			"abc.example/ads", "aaa", "bbb", "ab", "xx", "# c", ""};
+		for(String[] rules:sets) {
+			LinkPolicy policy = LinkPolicy.compile(Arrays.asList(rules));
+			boolean expected;
+			for(String url:urls) {
+				expected = false;
+				for(String rule:rules)
+					expected |= url.matches(rule);
+				assertEquals(rules[0] + " on " + url, expected,
+						policy.isForbidden(url));
+			}
+		}
+	}
+
+	@Test
+	public void verdictsAreRightOnceTheCacheFills() {
+		LinkPolicy policy = LinkPolicy.compile(Arrays.asList(RULES));
+		for(int round=0;round!=2;++round)
+			for(int i=0;i!=10000;++i) {
+				assertEquals(i%7==0, policy.isForbidden(i%7==0
+						? "http://x/casino" + i : "http://x/" + i));
+			}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void rejectsBadRules() {
+		LinkPolicy.compile(Arrays.asList("(unclosed"));
+	}
+
+}
@@ -0,0 +1,35 @@
+package test;
+
+import fscode.FSCodeEngine;
+import fscode.Rendering;
+import fscode.exception.NonfatalException;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that problems are only looked up in their bundle when read.
+ *
+ * @author cmiller
+ */
+public class NonfatalExceptionTest {
+
+	public NonfatalExceptionTest() {
+	}
+
+	@Test
+	public void problemsAreLocalizedWhenRead() throws Exception {
+		StringBuilder doc = new StringBuilder("<fscode>");
+		for(int i=0;i!=1000;++i)
+			doc.append("<table border=\"-1\"><row><cell>a</cell></row>"
+					+ "</table>");
+		doc.append("</fscode>");
+		Rendering r = new FSCodeEngine().renderDocument(doc.toString());
+		assertEquals(1000, r.getProblems().size());
+		NonfatalException problem = r.getProblems().get(999);
+		assertEquals("TAGS_TABLE_INVALID_BORDER", problem.getKey());
+		assertTrue(problem.getMessage().startsWith(
+				"You tried to set a negative border."));
+		assertSame(problem.getMessage(), problem.getMessage());
+	}
+
+}
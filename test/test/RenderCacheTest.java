@@ -0,0 +1,177 @@
+package test;
+
+import fscode.Dialect;
+import fscode.EmitterFactory;
+import fscode.FSCodeEngine;
+import fscode.RenderCache;
+import fscode.RenderOptions;
+import fscode.Rendering;
+import fscode.tags.Bold;
+import fscode.tags.CachingWikiProvider;
+import fscode.tags.WikiProvider;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks what an engine's render cache keeps and when it lets go.
+ *
+ * @author cmiller
+ */
+public class RenderCacheTest {
+
+	public RenderCacheTest() {
+	}
+
+	@Test
+	public void popularPagesAreRenderedOnce() throws Exception {
+		FSCodeEngine engine = new FSCodeEngine();
+		RenderCache cache = new RenderCache(16, 1<<20);
+		engine.setCache(cache);
+		String doc = "<fscode><b>a</b><table border=\"-1\"><row><cell>b"
+				+ "</cell></row></table></fscode>";
+		Rendering first = engine.renderDocument(doc);
+		for(int i=0;i!=10;++i)
+			assertSame(first, engine.renderDocument(doc));
+		assertEquals(first.getHtml(), engine.render(doc));
+		assertEquals(11, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, first.getProblems().size());
+		assertNull(first.getProblems().get(0).getSource());
+		assertEquals("TAGS_TABLE_INVALID_BORDER",
+				first.getProblems().get(0).getKey());
+
+		engine.setDialect(engine.getDialect().with("strong", Bold::new));
+		assertNotSame(first, engine.renderDocument(doc));
+		assertEquals(2, cache.size());
+
+		assertFalse(engine.renderDocument("<fscode><b></fscode>").isParsed());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void leastRecentlyUsedPagesAreDropped() throws Exception {
+		RenderCache cache = new RenderCache(3, 1<<20);
+		RenderCache.Key[] keys = new RenderCache.Key[4];
+		for(int i=0;i!=keys.length;++i) {
+			keys[i] = RenderCache.key("<fscode>" + i + "</fscode>",
+					RenderOptions.DEFAULT, Dialect.DEFAULT);
+			if(i==3)
+				cache.get(keys[0]);
+			cache.put(keys[i], new Rendering(String.valueOf(i), null));
+		}
+		assertEquals(3, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertNotNull(cache.get(keys[0]));
+		assertNull(cache.get(keys[1]));
+
+		StringBuilder big = new StringBuilder();
+		for(int i=0;i!=1000;++i)
+			big.append("0123456789");
+		RenderCache small = new RenderCache(100, 30000);
+		for(int i=0;i!=keys.length;++i)
+			small.put(keys[i], new Rendering(big.toString(), null));
+		assertTrue(small.getBytes()<=30000);
+		assertEquals(1, small.size());
+		assertNotNull(small.get(keys[3]));
+	}
+
+	@Test
+	public void bigCachesKeepToTheirLimits() throws Exception {
+		RenderCache cache = new RenderCache(1000, 1<<20);
+		RenderCache.Key[] keys = new RenderCache.Key[2000];
+		for(int i=0;i!=keys.length;++i) {
+			keys[i] = RenderCache.key("<fscode>" + i + "</fscode>",
+					RenderOptions.DEFAULT, Dialect.DEFAULT);
+			cache.put(keys[i], new Rendering(String.valueOf(i), null));
+		}
+		assertTrue(cache.size()<=1000);
+		assertTrue(cache.size()>900);
+		assertEquals(2000-cache.size(), cache.getEvictions());
+		int found = 0;
+		for(RenderCache.Key key:keys)
+			if(cache.get(key)!=null)
+				++found;
+		assertEquals(cache.size(), found);
+		assertEquals(found, cache.getHits());
+		assertEquals(2000-found, cache.getMisses());
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+	}
+
+	@Test
+	public void equalSettingsShareRenderings() throws Exception {
+		RenderCache cache = new RenderCache(16, 1<<20);
+		EmitterFactory strong = Bold::new;
+		String doc = "<fscode><strong>a</strong><table border=\"-1\"><row>"
+				+ "<cell>b</cell></row></table></fscode>";
+		Rendering first = null;
+		for(int i=0;i!=3;++i) {
+			Map<String, Object> config = new HashMap<String, Object>();
+			config.put("forbiddenLinks", Arrays.asList("^javascript:"));
+			config.put("lang", "en_us");
+			FSCodeEngine engine = new FSCodeEngine(config);
+			engine.setDialect(Dialect.DEFAULT.with("strong", strong));
+			engine.setCache(cache);
+			Rendering r = engine.renderDocument(doc);
+			if(first==null)
+				first = r;
+			assertSame(first, r);
+		}
+		assertEquals(1, cache.getMisses());
+		assertEquals(2, cache.getHits());
+		assertEquals(1, first.getProblems().size());
+		assertNotNull(first.getProblems().get(0).getMessage());
+
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("forbiddenLinks", Arrays.asList("^data:"));
+		FSCodeEngine engine = new FSCodeEngine(config);
+		engine.setDialect(Dialect.DEFAULT.with("strong", strong));
+		engine.setCache(cache);
+		assertNotSame(first, engine.renderDocument(doc));
+
+		engine.setDialect(Dialect.DEFAULT.with("strong", Bold::new));
+		engine.renderDocument(doc);
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void wikiLinksAreNotCached() throws Exception {
+		final Set<String> pages = new HashSet<String>();
+		WikiProvider wiki = new WikiProvider() {
+			public boolean hasPage(String page) {
+				return pages.contains(page);
+			}
+
+			public String getUrlForPage(String page) {
+				return (pages.contains(page) ? "/view/" : "/edit/") + page;
+			}
+		};
+		CachingWikiProvider cached = new CachingWikiProvider(wiki, 100, 1, 1,
+				TimeUnit.HOURS);
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("isWiki", "yes");
+		config.put("wikiProviders",
+				Collections.<String, WikiProvider>singletonMap("", cached));
+		FSCodeEngine engine = new FSCodeEngine(config);
+		RenderCache cache = new RenderCache(16, 1<<20);
+		engine.setCache(cache);
+		String doc = "<fscode><link page=\"A\">a</link></fscode>";
+		assertEquals("<a href=\"/edit/A\">a</a>", engine.render(doc));
+		pages.add("A");
+		cached.invalidate("A");
+		assertEquals("<a href=\"/view/A\">a</a>", engine.render(doc));
+		assertEquals(0, cache.size());
+
+		engine.render("<fscode><b>a</b></fscode>");
+		assertEquals(1, cache.size());
+	}
+
+}
@@ -0,0 +1,50 @@
+package test;
+
+import fscode.Dialect;
+import fscode.FSCodeEngine;
+import fscode.RenderOptions;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that configuration maps are checked and compiled once, up front.
+ *
+ * @author cmiller
+ */
+public class RenderOptionsTest {
+
+	public RenderOptionsTest() {
+	}
+
+	@Test
+	public void optionsAreCheckedOnce() throws Exception {
+		Map<String, Object> config = new HashMap<String, Object>();
+		config.put("isWiki", "yes");
+		config.put("forbiddenLinks", Arrays.asList(".*spam.*"));
+		RenderOptions options = RenderOptions.fromMap(config);
+		assertTrue(options.isWiki());
+		assertEquals("en_us", options.getLang());
+		assertEquals("<a href=\"http://ok\">a</a>", new FSCodeEngine(
+				options, Dialect.DEFAULT).render("<fscode><url "
+				+ "location=\"http://ok\">a</url><url location=\"http://spam"
+				+ "\">b</url></fscode>"));
+
+		config.put("isWiki", "maybe");
+		try {
+			new FSCodeEngine(config);
+			fail("isWiki=maybe should be rejected");
+		} catch (IllegalArgumentException expected) {
+		}
+		config.put("isWiki", Boolean.FALSE);
+		config.put("forbiddenLinks", Arrays.asList("(unclosed"));
+		try {
+			RenderOptions.fromMap(config);
+			fail("a bad regex should be rejected");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+}
@@ -0,0 +1,30 @@
+package test;
+
+import fscode.FSCodeEngine;
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that rendering straight into a writer gives the same HTML as
+ * rendering into a string.
+ *
+ * @author cmiller
+ */
+public class StreamEmitTest {
+
+	public StreamEmitTest() {
+	}
+
+	@Test
+	public void streamsToAWriter() throws Exception {
+		FSCodeEngine engine = new FSCodeEngine();
+		for(String doc:FSCodeEngineTest.documents()) {
+			StringWriter out = new StringWriter();
+			engine.render(new StringReader(doc), out);
+			assertEquals(engine.render(doc), out.toString());
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+package test;
+
+import fscode.Emitter;
+import fscode.FSCode;
+import fscode.FSCodeEngine;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import javax.xml.parsers.DocumentBuilderFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Checks that building the Emitter tree off of a streaming parser gives the
+ * same output as going through the DOM tree.
+ *
+ * @author cmiller
+ */
+public class StreamParseTest {
+
+	public StreamParseTest() {
+	}
+
+	private static String readTestText() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		Reader in = new InputStreamReader(
+				new FileInputStream(new File("fscode_test_text.fscode.xml")),
+				"UTF-8");
+		try {
+			char[] buf = new char[4096];
+			int read;
+			while((read = in.read(buf))!=-1)
+				sb.append(buf, 0, read);
+		} finally {
+			in.close();
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void streamMatchesDom() throws Exception {
+		String code = readTestText();
+
+		String dom = new FSCode(code).parse().emitHtml().toString();
+		String stream = FSCode.parseStream(code, null).emitHtml().toString();
+
+		assertEquals(dom, stream);
+	}
+
+	@Test
+	public void skipsChildrenTagsIgnore() throws Exception {
+		String code = "<fscode><macro:toc><b>ignored</b></macro:toc>"
+				+ "<h1><b>x</b>Name<i>y</i></h1>after</fscode>";
+
+		String dom = new FSCode(code).parse().emitHtml().toString();
+		String stream = FSCode.parseStream(code, null).emitHtml().toString();
+
+		assertEquals(dom, stream);
+	}
+
+	@Test
+	public void decodesStreamsInTheirEncoding() throws Exception {
+		byte[] code = "<fscode>caf\u00e9 &amp; cr\u00e8me</fscode>"
+				.getBytes(StandardCharsets.UTF_8);
+
+		String dom = new FSCode(new ByteArrayInputStream(code),
+				StandardCharsets.UTF_8).parse().emitHtml().toString();
+		String stream = new FSCodeEngine().parse(
+				new ByteArrayInputStream(code), StandardCharsets.UTF_8)
+				.emitHtml().toString();
+
+		assertEquals("caf\u00e9 &amp; cr\u00e8me", dom);
+		assertEquals(dom, stream);
+	}
+
+	@Test(expected=SAXException.class)
+	public void malformedInputThrows() throws Exception {
+		FSCode.parseStream("<fscode><b>unclosed</fscode>", null);
+	}
+
+	@Test(expected=IOException.class)
+	public void unreadableFilesThrow() throws Exception {
+		new FSCode(new File("no such file.fscode.xml").toPath(),
+				StandardCharsets.UTF_8);
+	}
+
+	@Test(expected=IOException.class)
+	public void failingStreamsThrow() throws Exception {
+		new FSCode(new Reader() {
+			@Override
+			public int read(char[] buf, int off, int len) throws IOException {
+				throw new IOException("gone");
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+	}
+
+	/**
+	 * A tag written the way they were before <code>Markup</code>.
+	 */
+	private static class OldTag extends Emitter {
+
+		@SuppressWarnings("deprecation")
+		OldTag(Emitter parent, Node contents) {
+			super(parent, contents);
+		}
+
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void tagsMadeFromNodesStillWork() throws Exception {
+		Node node = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new InputSource(new StringReader(
+				"<x a=\"1\"><b>y</b></x>"))).getDocumentElement();
+		OldTag tag = new OldTag(null, node);
+		assertSame(node, tag.getContents());
+		assertEquals("1", tag.getMarkup().getAttribute("a"));
+		assertEquals(1, tag.parse().getChildren().size());
+
+		Emitter parsed = Emitter.parse(null, node.getFirstChild());
+		assertSame(node.getFirstChild(), parsed.getContents());
+		assertEquals("b", parsed.getMarkup().getName());
+	}
+
+}
@@ -0,0 +1,51 @@
+package test;
+
+import fscode.FSCodeEngine;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks how text nodes are written out.
+ *
+ * @author cmiller
+ */
+public class TextTest {
+
+	private final FSCodeEngine engine = new FSCodeEngine();
+
+	public TextTest() {
+	}
+
+	private String render(String text) throws Exception {
+		return engine.render("<fscode>" + text + "</fscode>");
+	}
+
+	@Test
+	public void escapesMarkupCharacters() throws Exception {
+		assertEquals("&lt;b&gt; &amp; &quot;q&quot;",
+				render("&lt;b&gt; & &quot;q&quot;"));
+	}
+
+	@Test
+	public void pairsOfSpacesBecomeNonBreaking() throws Exception {
+		assertEquals("a b&nbsp;c&nbsp; d&nbsp;&nbsp;e",
+				render("a b  c   d    e"));
+	}
+
+	@Test
+	public void blankLinesBecomeParagraphs() throws Exception {
+		assertEquals("a\nb", render("a\nb"));
+		assertEquals("a<p/>b", render("a\n\nb"));
+		assertEquals("a<p/>b", render("a\n \n\tb"));
+		assertEquals("a<p/>&nbsp; b", render("a\n\n   b"));
+		assertEquals("a\n&nbsp;\nb", render("a\n  \nb"));
+		assertEquals("a&nbsp;<p/>b", render("a  \n\n\n\nb"));
+	}
+
+	@Test
+	public void crLfIsOneLineBreak() throws Exception {
+		assertEquals("a\r\nb", render("a&#13;\nb"));
+		assertEquals("a<p/>b", render("a&#13;\n&#13;\nb"));
+	}
+
+}
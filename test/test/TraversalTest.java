@@ -0,0 +1,77 @@
+package test;
+
+import fscode.Emitter;
+import fscode.EmitterVisitor;
+import fscode.FSCode;
+import fscode.FSCodeEngine;
+import fscode.tags.Bold;
+import fscode.tags.Heading;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the ways of walking an emitter tree against one another.
+ *
+ * @author cmiller
+ */
+public class TraversalTest {
+
+	public TraversalTest() {
+	}
+
+	private static FSCode testDocument() throws Exception {
+		FileInputStream in = new FileInputStream(
+				new File("fscode_test_text.fscode.xml"));
+		try {
+			return new FSCodeEngine().parse(in, Charset.forName("UTF-8"));
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void walksInDocumentOrder() throws Exception {
+		FSCode doc = testDocument();
+		List<Emitter> walked = new ArrayList<Emitter>();
+		for(Emitter em:doc.getDescendants())
+			walked.add(em);
+		assertEquals(doc.getIndex().getAll(), walked);
+		assertEquals(walked, doc.streamDescendants()
+				.collect(Collectors.toList()));
+		assertEquals(walked, doc.streamDescendants().parallel()
+				.collect(Collectors.toList()));
+
+		List<Heading> headings = new ArrayList<Heading>();
+		for(Heading h:doc.getDescendants(Heading.class))
+			headings.add(h);
+		assertEquals(doc.getIndex().getAll(Heading.class), headings);
+	}
+
+	@Test
+	public void visitorsCanSkipAndStop() throws Exception {
+		FSCode doc = new FSCodeEngine().parse("<fscode><b>a<i>b</i></b>"
+				+ "<i>c</i><b>d</b></fscode>");
+		final List<Emitter> seen = new ArrayList<Emitter>();
+		assertFalse(doc.accept(new EmitterVisitor() {
+			private int bolds = 0;
+
+			public Result visit(Emitter em) {
+				seen.add(em);
+				if(em instanceof Bold&&++bolds==2)
+					return Result.STOP;
+				return em instanceof Bold ? Result.SKIP_CHILDREN
+						: Result.CONTINUE;
+			}
+		}));
+		// the document, the first bold, the italic and its text, the last bold
+		assertEquals(5, seen.size());
+		assertSame(doc, seen.get(0));
+	}
+
+}